@@ -0,0 +1,293 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.managedsynonyms.capacity;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.util.CharsRef;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.managedsynonyms.plugin.analyzer.ManagedSynonymFilter;
+import org.elasticsearch.managedsynonyms.plugin.analyzer.ManagedSynonymMapHolder;
+import org.elasticsearch.managedsynonyms.plugin.analyzer.ManagedSynonymParser;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymFile;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymSet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Ramps a synonym file up through increasing sizes and measures, at every step, what the plugin does with it:
+ * loading the sets, building the synonym map the way the token filter factory does, the heap both take, the store
+ * calls behind the list, search and create REST endpoints, and filter throughput over a query mix.
+ *
+ * Every measurement is checked against capacity-thresholds.properties, keyed by step and metric. The runner exits
+ * with a failure if any threshold is exceeded, so a scale limit that regresses fails the build.
+ *
+ * <pre>
+ * ./gradlew capacity -Pcapacity.steps=10000,100000,1000000,10000000 -Pcapacity.heap=31g
+ * </pre>
+ *
+ * The thresholds are not hand-picked: a calibration run measures a baseline on the reference machine and writes every
+ * metric back as baseline &times; margin, together with where the baseline came from. A thresholds file without that
+ * record is rejected, so loose guesses can't creep back in.
+ *
+ * <pre>
+ * ./gradlew capacity -Pcapacity.steps=10000,100000,1000000 -Pcapacity.calibrate=1.5
+ * </pre>
+ */
+public class ManagedSynonymCapacityRunner {
+    private static final long SEED = 0x5eed_5eedL;
+    private static final int LATENCY_SAMPLES = 200;
+    private static final int QUERIES = 20_000;
+    static final String BASELINE_SOURCE = "baseline.source";
+    static final String BASELINE_MARGIN = "baseline.margin";
+
+    private final SynonymCorpusGenerator generator = SynonymCorpusGenerator.realistic(SEED);
+    private final Properties thresholds;
+    private final List<String> violations = new ArrayList<String>();
+    private final Map<String, Double> measured = new LinkedHashMap<>();
+    private final ExecutorService analyzeExecutor;
+    private final int parallelism = Runtime.getRuntime().availableProcessors();
+
+    ManagedSynonymCapacityRunner(Properties thresholds) {
+        this.thresholds = thresholds;
+        this.analyzeExecutor = Executors.newFixedThreadPool(parallelism);
+    }
+
+    /**
+     * Arguments: the comma separated steps, the file to write the json report to, and optionally a margin and the
+     * thresholds file to calibrate. Calibrating skips the checks and rewrites the thresholds from this run.
+     */
+    public static void main(String[] args) throws Exception {
+        var stepList = args.length > 0 ? args[0] : "10000,100000,1000000";
+        var steps = Arrays.stream(stepList.split(",")).mapToInt(Integer::parseInt).toArray();
+        var calibrate = args.length > 3;
+        var thresholds = new Properties();
+        if (calibrate == false) {
+            try (InputStream in = ManagedSynonymCapacityRunner.class.getResourceAsStream("/capacity-thresholds.properties")) {
+                if (in != null) thresholds.load(in);
+            }
+        }
+
+        var runner = new ManagedSynonymCapacityRunner(thresholds);
+        if (calibrate == false && thresholds.getProperty(BASELINE_SOURCE) == null) {
+            runner.violations.add("capacity-thresholds.properties has no " + BASELINE_SOURCE + ", calibrate it with -Pcapacity.calibrate");
+        }
+        var results = new ArrayList<Map<String, Object>>();
+        try {
+            for (int step : steps) {
+                results.add(runner.runStep(step));
+            }
+        } finally {
+            runner.analyzeExecutor.shutdownNow();
+        }
+
+        XContentBuilder builder = XContentFactory.jsonBuilder().prettyPrint().startObject();
+        builder.field(BASELINE_SOURCE, calibrate ? baselineSource() : thresholds.getProperty(BASELINE_SOURCE));
+        builder.field("steps", results);
+        builder.array("violations", runner.violations.toArray(new String[0]));
+        builder.endObject();
+        var report = Strings.toString(builder);
+        System.out.println(report);
+        if (args.length > 1) {
+            Files.writeString(Path.of(args[1]), report, StandardCharsets.UTF_8);
+        }
+        if (calibrate) {
+            var margin = Double.parseDouble(args[2]);
+            if (margin < 1) throw new IllegalArgumentException("the calibration margin must be at least 1 but was " + margin);
+            Files.writeString(Path.of(args[3]), runner.calibratedThresholds(margin), StandardCharsets.UTF_8);
+            return;
+        }
+        if (runner.violations.isEmpty() == false) {
+            System.exit(1);
+        }
+    }
+
+    Map<String, Object> runStep(int sets) throws IOException {
+        var result = new LinkedHashMap<String, Object>();
+        result.put("sets", sets);
+
+        var file = new ManagedSynonymFile("capacity");
+        long start = System.nanoTime();
+        for (int from = 0; from < sets; from += 10_000) {
+            file.syncItems(generator.sets(from, Math.min(10_000, sets - from)), false);
+        }
+        check(result, sets, "load_ms", (System.nanoTime() - start) / 1e6);
+        result.put("terms", file.getTermCount());
+        check(result, sets, "store_heap_mb", file.ramBytesUsed() / 1048576.0);
+
+        check(result, sets, "list_first_page_p99_ms", p99(() -> file.listSets(1, 20, null)));
+        check(result, sets, "list_deep_page_p99_ms", p99(() -> file.listSets(Math.max(1, sets / 20 / 2), 20, null)));
+        check(result, sets, "search_p99_ms", p99(() -> file.listSets(1, 20, "ab")));
+        int[] nextSet = { sets };
+        check(result, sets, "create_p99_ms", p99(() -> {
+            try {
+                return file.createSynonymSet(generator.terms(nextSet[0]++, 3));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }));
+
+        try (var analyzer = analyzer()) {
+            var analyzedTerms = ManagedSynonymParser.newAnalyzedTermCache(ByteSizeValue.parseBytesSizeValue("64mb", "cache"));
+            start = System.nanoTime();
+            var holder = new ManagedSynonymMapHolder(file, snapshot -> build(analyzer, analyzedTerms, snapshot));
+            check(result, sets, "build_ms", (System.nanoTime() - start) / 1e6);
+            check(result, sets, "map_heap_mb", holder.ramBytesUsed() / 1048576.0);
+            check(result, sets, "filter_ns_per_query", filterNanosPerQuery(holder, generator.queries(QUERIES, sets)));
+        }
+
+        System.gc();
+        var heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        result.put("jvm_heap_used_mb", heap.getUsed() / 1048576.0);
+        System.err.println("capacity step " + result);
+        return result;
+    }
+
+    private ManagedSynonymMapHolder.BuiltMap build(
+        Analyzer analyzer,
+        Cache<String, CharsRef> analyzedTerms,
+        Collection<ManagedSynonymSet> sets
+    ) {
+        try {
+            var parser = new ManagedSynonymParser(true, true, Integer.MAX_VALUE, analyzer, analyzedTerms);
+            parser.addAll(sets, analyzeExecutor, parallelism);
+            return new ManagedSynonymMapHolder.BuiltMap(parser.build(), null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private double filterNanosPerQuery(ManagedSynonymMapHolder holder, List<String> queries) throws IOException {
+        try (var analyzer = new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                Tokenizer tokenizer = new WhitespaceTokenizer();
+                return new TokenStreamComponents(tokenizer, new ManagedSynonymFilter(new LowerCaseFilter(tokenizer), holder));
+            }
+        }) {
+            // the first pass warms up, the second is measured
+            long tokens = 0;
+            long start = 0;
+            for (int pass = 0; pass < 2; pass++) {
+                start = System.nanoTime();
+                for (String query : queries) {
+                    try (var stream = analyzer.tokenStream("field", query)) {
+                        stream.reset();
+                        while (stream.incrementToken()) {
+                            tokens++;
+                        }
+                        stream.end();
+                    }
+                }
+            }
+            if (tokens == 0) throw new IllegalStateException("no tokens produced");
+            return (System.nanoTime() - start) / (double) queries.size();
+        }
+    }
+
+    private static double p99(Supplier<?> call) {
+        long[] latencies = new long[LATENCY_SAMPLES];
+        for (int i = 0; i < LATENCY_SAMPLES; i++) {
+            long start = System.nanoTime();
+            call.get();
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        return latencies[(int) Math.ceil(0.99 * LATENCY_SAMPLES) - 1] / 1e6;
+    }
+
+    private void check(Map<String, Object> result, int sets, String metric, double value) {
+        result.put(metric, value);
+        measured.put(sets + "." + metric, value);
+        var threshold = thresholds.getProperty(sets + "." + metric);
+        if (threshold != null && value > Double.parseDouble(threshold)) {
+            violations.add(sets + " sets: " + metric + " was " + value + ", the limit is " + threshold);
+        }
+    }
+
+    /**
+     * Renders every metric measured by this run as a threshold of value &times; margin, rounded up to two significant
+     * digits, headed by the machine and JVM the baseline was measured on.
+     */
+    String calibratedThresholds(double margin) {
+        var out = new StringBuilder();
+        out.append("# Upper limits for ManagedSynonymCapacityRunner, as <sets>.<metric>=<max>.\n");
+        out.append("# Durations are in milliseconds unless the metric says otherwise, heap in megabytes.\n");
+        out.append("# Generated by a calibration run: every limit is the measured baseline times ").append(BASELINE_MARGIN).append(".\n");
+        out.append("# Recalibrate on the reference machine rather than editing limits by hand:\n");
+        out.append("# ./gradlew capacity -Pcapacity.steps=<steps> -Pcapacity.calibrate=<margin>\n\n");
+        out.append(BASELINE_SOURCE).append('=').append(baselineSource()).append('\n');
+        out.append(BASELINE_MARGIN).append('=').append(margin).append('\n');
+        String step = null;
+        for (var entry : measured.entrySet()) {
+            var key = entry.getKey();
+            var keyStep = key.substring(0, key.indexOf('.'));
+            if (keyStep.equals(step) == false) {
+                out.append('\n');
+                step = keyStep;
+            }
+            var limit = new BigDecimal(entry.getValue() * margin).round(new MathContext(2, RoundingMode.UP));
+            out.append(key).append('=').append(limit.toPlainString()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static String baselineSource() {
+        return LocalDate.now(ZoneOffset.UTC)
+            + ", "
+            + System.getProperty("os.name")
+            + " "
+            + System.getProperty("os.arch")
+            + ", "
+            + Runtime.getRuntime().availableProcessors()
+            + " cpus, "
+            + Runtime.getRuntime().maxMemory() / 1048576
+            + "mb heap, java "
+            + System.getProperty("java.version")
+            + " "
+            + System.getProperty("java.vm.name");
+    }
+
+    private static Analyzer analyzer() {
+        return new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                Tokenizer tokenizer = new WhitespaceTokenizer();
+                return new TokenStreamComponents(tokenizer, new LowerCaseFilter(tokenizer));
+            }
+        };
+    }
+}
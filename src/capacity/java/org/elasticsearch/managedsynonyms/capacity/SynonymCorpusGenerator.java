@@ -0,0 +1,138 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.managedsynonyms.capacity;
+
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic synonym corpora that look like real ones: most sets have two or three terms, with a long
+ * tail of large sets following a Zipfian distribution, some multi-word terms, and some terms in non-Latin scripts.
+ * Every term is unique to its set, as the store requires, and the same seed always gives the same corpus.
+ */
+public class SynonymCorpusGenerator {
+    private static final String[] ALPHABETS = {
+        "abcdefghijklmnopqrstuvwxyz",
+        "àáâäçèéêëìíîïñòóôöùúûüß",
+        "абвгдежзийклмнопрстуфхцчшщыэюя",
+        "あいうえおかきくけこさしすせそたちつてとなにぬねの" };
+
+    private final Random random;
+    private final int maxSetSize;
+    private final double[] sizeCumulative;
+    private final double multiWordRatio;
+    private final double unicodeRatio;
+
+    /**
+     * @param maxSetSize     the largest set generated
+     * @param zipfExponent   how fast larger sets get rarer, 1.0 to 2.0 is realistic
+     * @param multiWordRatio the share of terms made of two or three words
+     * @param unicodeRatio   the share of terms written with a non-ASCII alphabet
+     */
+    public SynonymCorpusGenerator(long seed, int maxSetSize, double zipfExponent, double multiWordRatio, double unicodeRatio) {
+        if (maxSetSize < 2) throw new IllegalArgumentException("maxSetSize must be at least 2");
+        this.random = new Random(seed);
+        this.maxSetSize = maxSetSize;
+        this.multiWordRatio = multiWordRatio;
+        this.unicodeRatio = unicodeRatio;
+        // rank 1 is a set of two terms, rank n one of n + 1 terms
+        this.sizeCumulative = new double[maxSetSize - 1];
+        double total = 0;
+        for (int rank = 1; rank < maxSetSize; rank++) {
+            total += 1.0 / Math.pow(rank, zipfExponent);
+            sizeCumulative[rank - 1] = total;
+        }
+        for (int i = 0; i < sizeCumulative.length; i++) {
+            sizeCumulative[i] /= total;
+        }
+    }
+
+    public static SynonymCorpusGenerator realistic(long seed) {
+        return new SynonymCorpusGenerator(seed, 50, 1.5, 0.1, 0.1);
+    }
+
+    public int getMaxSetSize() {
+        return maxSetSize;
+    }
+
+    public List<ManagedSynonymSet> sets(int from, int count) {
+        var sets = new ArrayList<ManagedSynonymSet>(count);
+        for (int i = from; i < from + count; i++) {
+            sets.add(new ManagedSynonymSet("set-" + i, terms(i, nextSetSize())));
+        }
+        return sets;
+    }
+
+    public List<String> terms(int set, int size) {
+        var terms = new ArrayList<String>(size);
+        for (int position = 0; position < size; position++) {
+            terms.add(term(set, position));
+        }
+        return terms;
+    }
+
+    /**
+     * The term at a position of a set. Its last word encodes the set and position, which makes it unique.
+     */
+    public String term(int set, int position) {
+        var alphabet = random.nextDouble() < unicodeRatio ? ALPHABETS[1 + random.nextInt(ALPHABETS.length - 1)] : ALPHABETS[0];
+        var term = new StringBuilder();
+        if (random.nextDouble() < multiWordRatio) {
+            int extraWords = 1 + random.nextInt(2);
+            for (int w = 0; w < extraWords; w++) {
+                term.append(encode(random.nextInt(5000), alphabet)).append(' ');
+            }
+        }
+        return term.append(encode((long) set * maxSetSize + position, alphabet)).toString();
+    }
+
+    /**
+     * Queries of one to five words, where roughly one word in five is a synonym term of a set below maxSet,
+     * with lower sets being queried more often.
+     */
+    public List<String> queries(int count, int maxSet) {
+        var queries = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            var query = new StringBuilder();
+            int words = 1 + random.nextInt(5);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) query.append(' ');
+                if (random.nextInt(5) == 0) {
+                    int set = (int) (Math.pow(random.nextDouble(), 3) * maxSet);
+                    query.append(encode((long) set * maxSetSize, ALPHABETS[0]));
+                } else {
+                    query.append(encode(random.nextInt(20_000), ALPHABETS[0])).append("x");
+                }
+            }
+            queries.add(query.toString());
+        }
+        return queries;
+    }
+
+    private int nextSetSize() {
+        double r = random.nextDouble();
+        for (int rank = 0; rank < sizeCumulative.length; rank++) {
+            if (r <= sizeCumulative[rank]) return rank + 2;
+        }
+        return maxSetSize;
+    }
+
+    private static String encode(long value, String alphabet) {
+        var word = new StringBuilder();
+        int base = alphabet.length();
+        do {
+            word.append(alphabet.charAt((int) (value % base)));
+            value /= base;
+        } while (value > 0);
+        return word.toString();
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.managedsynonyms.plugin;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.synonym.SolrSynonymParser;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.managedsynonyms.plugin.analyzer.ManagedSynonymMapCache;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymSet;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymStore;
+import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.test.ESIntegTestCase;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+
+/**
+ * Compares end-to-end query latency of managed_synonyms against the stock synonym and synonym_graph filters loaded
+ * with the same rules. Each filter gets its own index over the same catalog, and the same query mix is run through
+ * all of them. Only runs when {@code tests.managed_synonyms.benchmark} is set, e.g.
+ * {@code ./gradlew internalClusterTest -Dtests.managed_synonyms.benchmark=true}.
+ *
+ * Results are logged as one JSON object per filter: throughput, latency percentiles and the heap held by the synonym
+ * map. The stock filters do not expose their maps, so their heap is that of the same rules parsed with the same analysis.
+ */
+@ESIntegTestCase.ClusterScope(scope = ESIntegTestCase.Scope.SUITE, numDataNodes = 3)
+public class SynonymQueryLatencyBenchmarkIT extends ESIntegTestCase {
+    private static final String ENABLED = "tests.managed_synonyms.benchmark";
+    private static final String FILTER_NAME = "bench_managed_synonyms";
+    private static final long SEED = 0x5eed_5eedL;
+
+    private static final int SETS = Integer.getInteger(ENABLED + ".sets", 10_000);
+    private static final int DOCS = Integer.getInteger(ENABLED + ".docs", 50_000);
+    private static final int QUERIES = Integer.getInteger(ENABLED + ".queries", 20_000);
+    private static final int CLIENTS = Integer.getInteger(ENABLED + ".clients", 4);
+
+    @Override
+    protected Collection<Class<? extends Plugin>> nodePlugins() {
+        return Arrays.asList(ManagedSynonymsPlugin.class);
+    }
+
+    public void testQueryLatency() throws Exception {
+        assumeTrue("set -D" + ENABLED + "=true to run the query latency benchmark", Boolean.getBoolean(ENABLED));
+
+        var sets = synonymSets();
+        var rules = new ArrayList<String>(sets.size());
+        for (var set : sets) {
+            rules.add(set.synonymsToString());
+        }
+        // the store is a singleton shared by every node in this JVM, load it before the analyzers are built
+        ManagedSynonymStore.getInstance().getOrCreateSynonymFile(FILTER_NAME).syncItems(sets, true);
+
+        createCatalogIndex("catalog_managed", "managed_synonyms", null);
+        createCatalogIndex("catalog_synonym", "synonym", rules);
+        createCatalogIndex("catalog_synonym_graph", "synonym_graph", rules);
+        for (String index : new String[] { "catalog_managed", "catalog_synonym", "catalog_synonym_graph" }) {
+            indexCatalog(index);
+        }
+        ensureGreen();
+
+        var queries = queries();
+        long builtInMapBytes = builtInMapBytes(rules);
+        report("managed_synonyms", run("catalog_managed", queries), managedMapBytes());
+        report("synonym", run("catalog_synonym", queries), builtInMapBytes);
+        report("synonym_graph", run("catalog_synonym_graph", queries), builtInMapBytes);
+    }
+
+    private void createCatalogIndex(String index, String filterType, List<String> rules) {
+        var settings = Settings.builder()
+            .put("index.number_of_shards", 3)
+            .put("index.number_of_replicas", 1)
+            .put("index.analysis.analyzer.catalog.tokenizer", "whitespace")
+            .putList("index.analysis.analyzer.catalog.filter", "lowercase")
+            .put("index.analysis.analyzer.catalog_search.tokenizer", "whitespace")
+            .putList("index.analysis.analyzer.catalog_search.filter", "lowercase", FILTER_NAME)
+            .put("index.analysis.filter." + FILTER_NAME + ".type", filterType);
+        if (rules != null) settings.putList("index.analysis.filter." + FILTER_NAME + ".synonyms", rules);
+        assertAcked(
+            prepareCreate(index).setSettings(settings).setMapping("title", "type=text,analyzer=catalog,search_analyzer=catalog_search")
+        );
+    }
+
+    private void indexCatalog(String index) throws Exception {
+        var random = new Random(SEED);
+        BulkRequestBuilder bulk = client().prepareBulk();
+        for (int i = 0; i < DOCS; i++) {
+            XContentBuilder doc = XContentFactory.jsonBuilder()
+                .startObject()
+                .field("title", text(random, 4 + random.nextInt(8)))
+                .endObject();
+            bulk.add(client().prepareIndex(index).setId(Integer.toString(i)).setSource(doc));
+            if (bulk.numberOfActions() == 1000 || i == DOCS - 1) {
+                assertNoFailures(bulk.get());
+                bulk = client().prepareBulk();
+            }
+        }
+        client().admin().indices().prepareRefresh(index).get();
+        client().admin().indices().prepareForceMerge(index).setMaxNumSegments(1).get();
+    }
+
+    private Stats run(String index, List<String> queries) throws Exception {
+        // one pass to warm up caches and the JIT, then the measured pass
+        for (int i = 0; i < queries.size() / 10; i++) {
+            search(index, queries.get(i));
+        }
+        long[] latencies = new long[queries.size()];
+        ExecutorService executor = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            long start = System.nanoTime();
+            var futures = new ArrayList<Future<?>>(CLIENTS);
+            for (int c = 0; c < CLIENTS; c++) {
+                int client = c;
+                futures.add(executor.submit(() -> {
+                    for (int i = client; i < queries.size(); i += CLIENTS) {
+                        long queryStart = System.nanoTime();
+                        search(index, queries.get(i));
+                        latencies[i] = System.nanoTime() - queryStart;
+                    }
+                }));
+            }
+            for (var future : futures) {
+                future.get();
+            }
+            return new Stats(latencies, System.nanoTime() - start);
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private void search(String index, String query) {
+        var response = client().prepareSearch(index).setQuery(QueryBuilders.matchQuery("title", query)).setSize(10).get();
+        assertNoFailures(response);
+    }
+
+    private long managedMapBytes() {
+        long bytes = 0;
+        for (var holder : ManagedSynonymMapCache.getInstance().getHolders()) {
+            if (holder.getFile().getName().equals(FILTER_NAME)) bytes += holder.ramBytesUsed();
+        }
+        return bytes;
+    }
+
+    private static long builtInMapBytes(List<String> rules) throws Exception {
+        try (var analyzer = new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                Tokenizer tokenizer = new WhitespaceTokenizer();
+                return new TokenStreamComponents(tokenizer, new LowerCaseFilter(tokenizer));
+            }
+        }) {
+            var parser = new SolrSynonymParser(true, true, analyzer);
+            parser.parse(new StringReader(String.join("\n", rules)));
+            return parser.build().fst.ramBytesUsed();
+        }
+    }
+
+    private void report(String filter, Stats stats, long mapBytes) throws Exception {
+        var builder = XContentFactory.jsonBuilder().startObject();
+        builder.field("filter", filter);
+        builder.field("sets", SETS);
+        builder.field("docs", DOCS);
+        builder.field("queries", stats.latencies.length);
+        builder.field("clients", CLIENTS);
+        builder.field("throughput_per_sec", stats.latencies.length / (stats.elapsedNanos / 1e9));
+        builder.field("p50_micros", stats.percentile(50) / 1000);
+        builder.field("p99_micros", stats.percentile(99) / 1000);
+        builder.field("p999_micros", stats.percentile(99.9) / 1000);
+        builder.field("map_heap_bytes", mapBytes);
+        builder.endObject();
+        logger.info("managed synonyms query benchmark: {}", Strings.toString(builder));
+    }
+
+    private static List<ManagedSynonymSet> synonymSets() {
+        var random = new Random(SEED);
+        var sets = new ArrayList<ManagedSynonymSet>(SETS);
+        for (int i = 0; i < SETS; i++) {
+            int size = 2 + random.nextInt(4);
+            var terms = new ArrayList<String>(size);
+            for (int t = 0; t < size; t++) {
+                terms.add(term(i, t));
+            }
+            sets.add(new ManagedSynonymSet(Integer.toString(i), terms));
+        }
+        return sets;
+    }
+
+    private static List<String> queries() {
+        var random = new Random(SEED + 1);
+        var queries = new ArrayList<String>(QUERIES);
+        for (int i = 0; i < QUERIES; i++) {
+            queries.add(text(random, 1 + random.nextInt(5)).toUpperCase(Locale.ROOT));
+        }
+        return queries;
+    }
+
+    /**
+     * Words from a skewed vocabulary, with roughly one in five taken from the synonym sets.
+     */
+    private static String text(Random random, int words) {
+        var text = new StringBuilder();
+        for (int w = 0; w < words; w++) {
+            if (w > 0) text.append(' ');
+            if (random.nextInt(5) == 0) {
+                text.append(term(skewed(random, SETS), random.nextInt(2)));
+            } else {
+                text.append("word").append(skewed(random, 20_000));
+            }
+        }
+        return text.toString();
+    }
+
+    private static String term(int set, int position) {
+        return "t" + Integer.toString(set, 36) + "_" + position;
+    }
+
+    private static int skewed(Random random, int bound) {
+        double r = random.nextDouble();
+        return (int) (r * r * r * bound);
+    }
+
+    private static class Stats {
+        final long[] latencies;
+        final long elapsedNanos;
+
+        Stats(long[] latencies, long elapsedNanos) {
+            this.latencies = latencies.clone();
+            this.elapsedNanos = elapsedNanos;
+            Arrays.sort(this.latencies);
+        }
+
+        long percentile(double percentile) {
+            int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(latencies.length - 1, index))];
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.managedsynonyms.benchmark;
+
+import org.elasticsearch.managedsynonyms.plugin.ManagedSynonymException;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymFile;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes and reads against a single synonym file from several threads at once. Writers serialize on the file's
+ * write lock while readers work off its snapshot, so list throughput should hold up while writes are going on.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Group)
+public class ManagedSynonymFileBenchmark {
+
+    @Param({ "1000", "100000" })
+    public int initialSets;
+
+    private ManagedSynonymFile file;
+    private List<ManagedSynonymSet> existing;
+    private final AtomicInteger nextSet = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        file = new ManagedSynonymFile("benchmark");
+        existing = SynonymBenchmarkData.sets(initialSets);
+        file.syncItems(existing, true);
+        nextSet.set(initialSets);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public ManagedSynonymSet create() throws ManagedSynonymException {
+        return file.createSynonymSet(SynonymBenchmarkData.terms(nextSet.getAndIncrement(), 3));
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public ManagedSynonymSet update(Cursor cursor) throws ManagedSynonymException {
+        var set = new ManagedSynonymSet(file.getSet(pick(cursor)));
+        set.setList(SynonymBenchmarkData.terms(nextSet.getAndIncrement(), 3));
+        return file.updateSynonymSet(set);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public boolean delete() throws ManagedSynonymException {
+        // delete what create just added, so the file stays about the same size throughout the run
+        var created = file.createSynonymSet(SynonymBenchmarkData.terms(nextSet.getAndIncrement(), 3));
+        return file.deleteSynonymSet(created.getId());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(4)
+    public List<ManagedSynonymSet> list(Cursor cursor) {
+        return file.listSets(1 + (cursor.next++ % 10), 20, null);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(4)
+    public List<ManagedSynonymSet> search() {
+        return file.listSets(1, 20, "t1a");
+    }
+
+    private String pick(Cursor cursor) {
+        // updates only touch the initial sets, which the delete benchmark never removes
+        return existing.get(cursor.next++ % existing.size()).getId();
+    }
+}
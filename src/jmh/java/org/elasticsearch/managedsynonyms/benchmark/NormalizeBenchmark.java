@@ -0,0 +1,68 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.managedsynonyms.benchmark;
+
+import org.elasticsearch.managedsynonyms.plugin.ManagedSynonymTokenHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Normalizes every term of a request's worth of synonym sets, the work done on each create, update and lookup.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class NormalizeBenchmark {
+
+    @Param({ "ascii", "mixed_case", "unicode" })
+    public String input;
+
+    private String[] terms;
+
+    @Setup
+    public void setup() {
+        terms = new String[1000];
+        for (int i = 0; i < terms.length; i++) {
+            var term = SynonymBenchmarkData.term(i, i % 3);
+            switch (input) {
+                case "mixed_case":
+                    term = " " + term.toUpperCase() + ", \n";
+                    break;
+                case "unicode":
+                    term = "Straße " + term + " ÉTÉ";
+                    break;
+                default:
+                    break;
+            }
+            terms[i] = term;
+        }
+    }
+
+    @Benchmark
+    public void normalize(Blackhole blackhole) {
+        for (String term : terms) {
+            blackhole.consume(ManagedSynonymTokenHelper.normalize(term));
+        }
+    }
+}
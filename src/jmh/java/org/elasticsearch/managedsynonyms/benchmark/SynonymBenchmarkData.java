@@ -0,0 +1,98 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.managedsynonyms.benchmark;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Deterministic synonym sets and queries shared by the benchmarks, so runs on different commits see the same input.
+ */
+final class SynonymBenchmarkData {
+    static final long SEED = 0x5eed_5eedL;
+
+    private SynonymBenchmarkData() {}
+
+    /**
+     * A term unique to the given set and position, e.g. {@code t12ab_1}. Multi-word terms are mixed in at one in ten.
+     */
+    static String term(int set, int position) {
+        var term = "t" + Integer.toString(set, 36) + "_" + position;
+        return set % 10 == 0 && position == 0 ? term + " phrase" : term;
+    }
+
+    static List<String> terms(int set, int size) {
+        var terms = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            terms.add(term(set, i));
+        }
+        return terms;
+    }
+
+    /**
+     * Sets of two to five terms each.
+     */
+    static List<ManagedSynonymSet> sets(int count) {
+        var random = new Random(SEED);
+        var sets = new ArrayList<ManagedSynonymSet>(count);
+        for (int i = 0; i < count; i++) {
+            sets.add(new ManagedSynonymSet(Integer.toString(i), terms(i, 2 + random.nextInt(4))));
+        }
+        return sets;
+    }
+
+    /**
+     * Queries of one to six words where roughly one word in five is a synonym term, the rest plain vocabulary
+     * following a skewed distribution the way real query logs do.
+     */
+    static List<String> queries(int count, int setCount) {
+        var random = new Random(SEED);
+        var queries = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            var query = new StringBuilder();
+            int words = 1 + random.nextInt(6);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) query.append(' ');
+                if (random.nextInt(5) == 0) {
+                    query.append(term(skewed(random, setCount), 0).toUpperCase(Locale.ROOT));
+                } else {
+                    query.append("word").append(skewed(random, 50_000));
+                }
+            }
+            queries.add(query.toString());
+        }
+        return queries;
+    }
+
+    private static int skewed(Random random, int bound) {
+        double r = random.nextDouble();
+        return (int) (r * r * r * bound);
+    }
+
+    /**
+     * The analysis in front of the synonym filter: whitespace tokenizing and lowercasing.
+     */
+    static Analyzer analyzer() {
+        return new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                Tokenizer tokenizer = new WhitespaceTokenizer();
+                return new TokenStreamComponents(tokenizer, new LowerCaseFilter(tokenizer));
+            }
+        };
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.managedsynonyms.benchmark;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.elasticsearch.managedsynonyms.plugin.analyzer.ManagedSynonymFilter;
+import org.elasticsearch.managedsynonyms.plugin.analyzer.ManagedSynonymMapHolder;
+import org.elasticsearch.managedsynonyms.plugin.analyzer.ManagedSynonymParser;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Analyzes queries through the managed synonym filter, reusing token streams as search does. Reported per query.
+ */
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g" })
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class SynonymFilterBenchmark {
+    private static final int QUERIES = 10_000;
+
+    @Param({ "1000", "100000" })
+    public int sets;
+
+    /** every Nth token stream records hits, 0 to not track hits */
+    @Param({ "0", "16" })
+    public int hitSampleInterval;
+
+    private List<String> queries;
+    private Analyzer analyzer;
+    private Analyzer synonymAnalyzer;
+    private int next;
+
+    @Setup
+    public void setup() {
+        queries = SynonymBenchmarkData.queries(QUERIES, sets);
+        analyzer = SynonymBenchmarkData.analyzer();
+        var file = new ManagedSynonymFile("benchmark");
+        file.syncItems(SynonymBenchmarkData.sets(sets), true);
+        var holder = new ManagedSynonymMapHolder(file, synonymSets -> {
+            try {
+                var parser = new ManagedSynonymParser(true, analyzer);
+                if (hitSampleInterval > 0) parser.trackSetOutputs();
+                parser.addAll(synonymSets);
+                return new ManagedSynonymMapHolder.BuiltMap(parser.build(), parser.getSetIdsByOutput());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        synonymAnalyzer = new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                Tokenizer tokenizer = new WhitespaceTokenizer();
+                TokenStream stream = new LowerCaseFilter(tokenizer);
+                return new TokenStreamComponents(tokenizer, new ManagedSynonymFilter(stream, holder, hitSampleInterval));
+            }
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        synonymAnalyzer.close();
+        analyzer.close();
+    }
+
+    @Benchmark
+    public void analyzeQuery(Blackhole blackhole) throws IOException {
+        var query = queries.get(next++ % QUERIES);
+        try (var stream = synonymAnalyzer.tokenStream("field", query)) {
+            stream.reset();
+            while (stream.incrementToken()) {
+                blackhole.consume(stream);
+            }
+            stream.end();
+        }
+    }
+}
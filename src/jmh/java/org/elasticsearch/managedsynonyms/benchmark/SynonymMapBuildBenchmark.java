@@ -0,0 +1,84 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.managedsynonyms.benchmark;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.synonym.SynonymMap;
+import org.apache.lucene.util.CharsRef;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.managedsynonyms.plugin.analyzer.ManagedSynonymParser;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds a synonym map from the whole file the way the token filter factory does on a full rebuild: parallel
+ * analysis, then the FST. Cold builds start with an empty analyzed term cache, warm ones reuse the last build's.
+ */
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g" })
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class SynonymMapBuildBenchmark {
+
+    @Param({ "1000", "100000", "1000000" })
+    public int sets;
+
+    @Param({ "true", "false" })
+    public boolean warmCache;
+
+    private List<ManagedSynonymSet> synonymSets;
+    private Analyzer analyzer;
+    private ExecutorService executor;
+    private int parallelism;
+    private Cache<String, CharsRef> analyzedTerms;
+
+    @Setup
+    public void setup() throws IOException {
+        synonymSets = SynonymBenchmarkData.sets(sets);
+        analyzer = SynonymBenchmarkData.analyzer();
+        parallelism = Runtime.getRuntime().availableProcessors();
+        executor = Executors.newFixedThreadPool(parallelism);
+        analyzedTerms = ManagedSynonymParser.newAnalyzedTermCache(ByteSizeValue.parseBytesSizeValue("256mb", "cache"));
+        if (warmCache) build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+        analyzer.close();
+    }
+
+    @Benchmark
+    public SynonymMap build() throws IOException {
+        if (warmCache == false) analyzedTerms.invalidateAll();
+        var parser = new ManagedSynonymParser(true, true, Integer.MAX_VALUE, analyzer, analyzedTerms);
+        parser.addAll(synonymSets, executor, parallelism);
+        return parser.build();
+    }
+}
@@ -1,9 +1,25 @@
 package org.elasticsearch.managedsynonyms.plugin;
 
+import org.elasticsearch.rest.RestStatus;
+
 public class ManagedSynonymException extends Exception {
     private static final long serialVersionUID = 1L;
 
+    private final RestStatus status;
+
     public ManagedSynonymException(String message) {
+        this(message, RestStatus.BAD_REQUEST);
+    }
+
+    public ManagedSynonymException(String message, RestStatus status) {
         super(message);
+        this.status = status;
+    }
+
+    /**
+     * @return the status to report to REST clients, BAD_REQUEST unless the cause is something other than the request
+     */
+    public RestStatus getStatus() {
+        return status;
     }
 }
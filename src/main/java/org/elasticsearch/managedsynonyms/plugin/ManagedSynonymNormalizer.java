@@ -0,0 +1,62 @@
+package org.elasticsearch.managedsynonyms.plugin;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * How synonym terms are normalized before they are stored, looked up and analyzed. Every normalizer starts from
+ * {@link ManagedSynonymTokenHelper#normalize}, so the result never contains line breaks or commas. Filters pick one
+ * with the {@code normalizer} setting. A term the normalizer leaves as it is comes back as the same instance.
+ */
+public enum ManagedSynonymNormalizer {
+    /** strips line breaks and commas, lowercases and trims */
+    LOWERCASE {
+        @Override
+        public String normalize(String term) {
+            return ManagedSynonymTokenHelper.normalize(term);
+        }
+    },
+    /** also folds case the Unicode way, so {@code Straße} and {@code STRASSE} are the same term */
+    CASE_FOLD {
+        @Override
+        public String normalize(String term) {
+            var normalized = ManagedSynonymTokenHelper.normalize(term);
+            if (ManagedSynonymTokenHelper.isAscii(normalized)) return normalized;
+            var folded = normalized.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+            return folded.equals(normalized) ? normalized : folded;
+        }
+    },
+    /** also strips diacritics, so {@code café} and {@code cafe} are the same term */
+    ASCII_FOLDING {
+        @Override
+        public String normalize(String term) {
+            var normalized = ManagedSynonymTokenHelper.normalize(term);
+            if (ManagedSynonymTokenHelper.isAscii(normalized)) return normalized;
+            var decomposed = Normalizer.isNormalized(normalized, Normalizer.Form.NFD)
+                ? normalized
+                : Normalizer.normalize(normalized, Normalizer.Form.NFD);
+            var marks = COMBINING_MARKS.matcher(decomposed);
+            return marks.find() ? marks.replaceAll("") : decomposed;
+        }
+    };
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    public abstract String normalize(String term);
+
+    public String getLowercase() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    public static ManagedSynonymNormalizer fromString(String normalizer) {
+        if (normalizer == null) return LOWERCASE;
+        try {
+            return valueOf(normalizer.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(
+                "Unknown synonym normalizer [" + normalizer + "], expected one of [lowercase, case_fold, ascii_folding]"
+            );
+        }
+    }
+}
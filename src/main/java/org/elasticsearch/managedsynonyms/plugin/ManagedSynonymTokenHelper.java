@@ -9,6 +9,7 @@ import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 import com.fasterxml.jackson.core.JsonFactory;
@@ -18,8 +19,53 @@ import com.fasterxml.jackson.core.JsonToken;
 
 public final class ManagedSynonymTokenHelper {
 
+    /**
+     * Strips line breaks and commas, lowercases and trims a term. Terms that are already normalized are returned
+     * as they are; ASCII terms are normalized in a single pass over the characters, anything else falls back to
+     * {@link String#toLowerCase(Locale)} for its full case mappings.
+     */
     public static String normalize(String term) {
-        return term.replaceAll("[\n\r,]", "").toLowerCase().trim();
+        int length = term.length();
+        boolean changes = length > 0 && (term.charAt(0) <= ' ' || term.charAt(length - 1) <= ' ');
+        for (int i = 0; i < length; i++) {
+            char c = term.charAt(i);
+            if (c >= 0x80) return normalizeUnicode(term);
+            if (c == '\n' || c == '\r' || c == ',' || (c >= 'A' && c <= 'Z')) changes = true;
+        }
+        if (changes == false) return term;
+
+        var normalized = new char[length];
+        int end = 0;
+        for (int i = 0; i < length; i++) {
+            char c = term.charAt(i);
+            if (c == '\n' || c == '\r' || c == ',') continue;
+            normalized[end++] = c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        int start = 0;
+        while (start < end && normalized[start] <= ' ') start++;
+        while (end > start && normalized[end - 1] <= ' ') end--;
+        return new String(normalized, start, end - start);
+    }
+
+    private static String normalizeUnicode(String term) {
+        var stripped = term;
+        if (term.indexOf('\n') >= 0 || term.indexOf('\r') >= 0 || term.indexOf(',') >= 0) {
+            var builder = new StringBuilder(term.length());
+            for (int i = 0; i < term.length(); i++) {
+                char c = term.charAt(i);
+                if (c != '\n' && c != '\r' && c != ',') builder.append(c);
+            }
+            stripped = builder.toString();
+        }
+        // both hand back the same instance when there is nothing to change
+        return stripped.toLowerCase(Locale.ROOT).trim();
+    }
+
+    public static boolean isAscii(String term) {
+        for (int i = 0; i < term.length(); i++) {
+            if (term.charAt(i) >= 0x80) return false;
+        }
+        return true;
     }
 
     public static String getErrorMessageFromResponse(AcknowledgedResponse response) {
@@ -14,11 +14,15 @@ import org.elasticsearch.common.xcontent.XContentHelper;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.env.Environment;
 import org.elasticsearch.managedsynonyms.plugin.response.SynonymsErrorResponse;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymSet;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymStore;
 import org.elasticsearch.rest.BaseRestHandler;
 import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestChannel;
 import org.elasticsearch.rest.RestRequest;
 import org.elasticsearch.rest.RestStatus;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -31,6 +35,46 @@ public abstract class ManagedSynonymsBaseAction extends BaseRestHandler {
         this.environment = env;
     }
 
+    /**
+     * Times every request from parsing until the response has been sent, for the stats API, and records it for
+     * replay if recording is on. Both happen when the response is sent, which can be well after the consumer
+     * returned for actions that wait on a listener.
+     */
+    @Override
+    protected final RestChannelConsumer prepareRequest(RestRequest restRequest, NodeClient client) throws IOException {
+        long timestamp = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        var consumer = prepareSynonymsRequest(restRequest, client);
+        return channel -> {
+            var store = ManagedSynonymStore.getInstance();
+            var recordingChannel = new RecordingRestChannel(
+                channel,
+                getName(),
+                store.getOperationStats(),
+                store.getRequestRecorder(),
+                recordsResponseBody(),
+                timestamp,
+                startNanos
+            );
+            try {
+                consumer.accept(recordingChannel);
+            } catch (Exception e) {
+                // answer here rather than in the rest controller, so the failure is timed and recorded too
+                recordingChannel.sendResponse(new BytesRestResponse(recordingChannel, e));
+            }
+        };
+    }
+
+    /**
+     * @return true if the recording should keep response bodies, for actions whose responses hold ids that later
+     * requests refer to
+     */
+    protected boolean recordsResponseBody() {
+        return false;
+    }
+
+    protected abstract RestChannelConsumer prepareSynonymsRequest(RestRequest restRequest, NodeClient client) throws IOException;
+
     protected RestChannelConsumer returnErrorResponse(RestRequest restRequest, NodeClient client, RestStatus status) {
         return returnErrorResponse(Collections.emptyList(), restRequest, client, status);
     }
@@ -49,19 +93,36 @@ public abstract class ManagedSynonymsBaseAction extends BaseRestHandler {
     }
 
     protected RestChannelConsumer returnResponse(ToXContentObject responseItem, RestRequest restRequest, NodeClient client) {
-        return channel -> {
-            try {
-                var builder = channel.newBuilder();
-                responseItem.toXContent(builder, restRequest);
-                channel.sendResponse(new BytesRestResponse(RestStatus.OK, builder));
-            } catch (final Exception ex) {
-                channel.sendResponse(new BytesRestResponse(channel, ex));
-            }
-        };
+        return channel -> sendResponse(channel, RestStatus.OK, responseItem, restRequest);
+    }
+
+    protected void sendResponse(RestChannel channel, RestStatus status, ToXContentObject responseItem, RestRequest restRequest)
+        throws IOException {
+        try {
+            var builder = channel.newBuilder();
+            responseItem.toXContent(builder, restRequest);
+            channel.sendResponse(new BytesRestResponse(status, builder));
+        } catch (final Exception ex) {
+            channel.sendResponse(new BytesRestResponse(channel, ex));
+        }
     }
 
     protected Map<String, Object> contentAsMap(BytesReference content, XContentType contentType) {
         return XContentHelper.convertToMap(content, false, contentType).v2();
     }
 
+    protected ManagedSynonymSet.Mode modeFromContent(Map<String, Object> content) throws ManagedSynonymException {
+        var mode = content.get("mode");
+        if (mode != null && (mode instanceof String) == false) throw new ManagedSynonymException("body parameter 'mode' must be a string");
+        return ManagedSynonymSet.Mode.fromString((String) mode);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected List<String> targetsFromContent(Map<String, Object> content) throws ManagedSynonymException {
+        var targets = content.get("targets");
+        if (targets == null) return null;
+        if ((targets instanceof List) == false) throw new ManagedSynonymException("body parameter 'targets' must be an array");
+        return (List<String>) targets;
+    }
+
 }
@@ -0,0 +1,234 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+package org.elasticsearch.managedsynonyms.plugin;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContent;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.managedsynonyms.plugin.response.SynonymBulkResponse;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymBulkOperation;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymBulkOperation.OpType;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymSet;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymStore;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestStatus;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Applies many synonym set changes in one request. The body is newline delimited JSON in the same shape
+ * as the Elasticsearch bulk API: an action line, followed by a source line for creates and updates.
+ *
+ * <pre>
+ * { "create": { } }
+ * { "synonyms": [ "tv", "television" ] }
+ * { "update": { "id": "..." } }
+ * { "synonyms": [ "laptop", "notebook" ], "mode": "contract" }
+ * { "create": { } }
+ * { "synonyms": [ "ipod", "i-pod" ], "mode": "explicit", "targets": [ "ipod" ] }
+ * { "delete": { "id": "..." } }
+ * </pre>
+ *
+ * An invalid source line, such as an unknown mode or targets that are not an array, only fails its own item. The
+ * request as a whole is only rejected when the body can't be split into actions: a malformed or unknown action line,
+ * or an action without its source line.
+ */
+public class ManagedSynonymsBulkAction extends ManagedSynonymsBaseAction {
+    private static final Logger logger = LogManager.getLogger(ManagedSynonymsBulkAction.class);
+
+    ManagedSynonymsBulkAction(Environment env) {
+        super(env);
+    }
+
+    @Override
+    public List<Route> routes() {
+        return List.of(new Route(RestRequest.Method.POST, "/_synonyms/{filter}/_bulk"));
+    }
+
+    @Override
+    public String getName() {
+        return "managed_synonyms_bulk_action";
+    }
+
+    @Override
+    protected boolean recordsResponseBody() {
+        // the ids of created sets, so a replay can follow them
+        return true;
+    }
+
+    @Override
+    public boolean supportsContentStream() {
+        return true;
+    }
+
+    @Override
+    protected RestChannelConsumer prepareSynonymsRequest(RestRequest restRequest, NodeClient client) throws IOException {
+        var filterName = restRequest.param("filter");
+        var synonyms = ManagedSynonymStore.getInstance().getSynonymFile(filterName);
+        if (synonyms == null) return returnErrorResponse(Collections.emptyList(), restRequest, client, RestStatus.NOT_FOUND);
+
+        if (restRequest.hasContent() == false) {
+            return returnErrorResponse(Collections.singletonList("request body is required"), restRequest, client, RestStatus.BAD_REQUEST);
+        }
+
+        try {
+            ManagedSynonymStore.getInstance().ensureCanAcceptWrites(synonyms);
+        } catch (ManagedSynonymException ex) {
+            return returnErrorResponse(Collections.singletonList(ex.getMessage()), restRequest, client, ex.getStatus());
+        }
+
+        long startTime = System.nanoTime();
+        List<ManagedSynonymBulkOperation> operations;
+        try {
+            operations = parseOperations(restRequest.content(), restRequest.getXContentType().xContent());
+        } catch (ManagedSynonymException | IOException | IllegalArgumentException ex) {
+            logger.error("Could not parse managed synonyms bulk request", ex);
+            return returnErrorResponse(Collections.singletonList(ex.getMessage()), restRequest, client, RestStatus.BAD_REQUEST);
+        }
+
+        synonyms.bulk(operations);
+        long tookInMillis = (System.nanoTime() - startTime) / 1_000_000L;
+        return returnResponse(new SynonymBulkResponse(operations, tookInMillis), restRequest, client);
+    }
+
+    /**
+     * Parses the body one line at a time, without converting it into an intermediate map. Items whose source is
+     * invalid are returned already failed.
+     * @throws ManagedSynonymException if the body can't be split into actions
+     */
+    static List<ManagedSynonymBulkOperation> parseOperations(BytesReference data, XContent xContent) throws IOException,
+        ManagedSynonymException {
+        var operations = new ArrayList<ManagedSynonymBulkOperation>();
+        byte marker = xContent.streamSeparator();
+        int from = 0;
+        int lineNumber = 0;
+        while (from < data.length()) {
+            int nextMarker = findNextMarker(marker, from, data);
+            var line = data.slice(from, nextMarker - from);
+            from = nextMarker + 1;
+            lineNumber++;
+            if (line.length() == 0) continue;
+
+            var opType = OpType.CREATE;
+            String setId = null;
+            try (XContentParser parser = createParser(xContent, line)) {
+                if (parser.nextToken() != XContentParser.Token.START_OBJECT
+                    || parser.nextToken() != XContentParser.Token.FIELD_NAME) {
+                    throw new ManagedSynonymException("Malformed action on line [" + lineNumber + "], expected an action object");
+                }
+                opType = parseOpType(parser.currentName(), lineNumber);
+                if (parser.nextToken() != XContentParser.Token.START_OBJECT) {
+                    throw new ManagedSynonymException("Malformed action on line [" + lineNumber + "], expected an object");
+                }
+                XContentParser.Token token;
+                while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                    if (token == XContentParser.Token.FIELD_NAME && "id".equals(parser.currentName())) {
+                        parser.nextToken();
+                        setId = parser.text();
+                    } else if (token.isValue() == false) {
+                        parser.skipChildren();
+                    }
+                }
+            }
+
+            if (opType == OpType.DELETE) {
+                operations.add(new ManagedSynonymBulkOperation(opType, setId, null));
+                continue;
+            }
+
+            if (from >= data.length()) {
+                throw new ManagedSynonymException("Missing source for action on line [" + lineNumber + "]");
+            }
+            nextMarker = findNextMarker(marker, from, data);
+            var source = data.slice(from, nextMarker - from);
+            from = nextMarker + 1;
+            lineNumber++;
+            try (XContentParser parser = createParser(xContent, source)) {
+                operations.add(parseSource(parser, opType, setId, lineNumber));
+            } catch (ManagedSynonymException | IOException | IllegalArgumentException | IllegalStateException ex) {
+                // the source line is framed, so only this item is invalid
+                operations.add(ManagedSynonymBulkOperation.invalid(opType, setId, ex.getMessage()));
+            }
+        }
+        return operations;
+    }
+
+    private static ManagedSynonymBulkOperation parseSource(XContentParser parser, OpType opType, String setId, int lineNumber)
+        throws IOException, ManagedSynonymException {
+        if (parser.nextToken() != XContentParser.Token.START_OBJECT) {
+            throw new ManagedSynonymException("Malformed source on line [" + lineNumber + "], expected an object");
+        }
+        List<String> synonyms = null;
+        List<String> targets = null;
+        var mode = ManagedSynonymSet.Mode.EQUIVALENT;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME && "synonyms".equals(parser.currentName())) {
+                synonyms = parseStringArray(parser, "synonyms", lineNumber);
+            } else if (token == XContentParser.Token.FIELD_NAME && "targets".equals(parser.currentName())) {
+                targets = parseStringArray(parser, "targets", lineNumber);
+            } else if (token == XContentParser.Token.FIELD_NAME && "mode".equals(parser.currentName())) {
+                parser.nextToken();
+                mode = ManagedSynonymSet.Mode.fromString(parser.textOrNull());
+            } else if (token.isValue() == false) {
+                parser.skipChildren();
+            }
+        }
+        if (synonyms == null) {
+            throw new ManagedSynonymException("Missing body parameter 'synonyms' on line [" + lineNumber + "]");
+        }
+        return new ManagedSynonymBulkOperation(opType, setId, synonyms, mode, targets);
+    }
+
+    private static List<String> parseStringArray(XContentParser parser, String field, int lineNumber) throws IOException,
+        ManagedSynonymException {
+        if (parser.nextToken() != XContentParser.Token.START_ARRAY) {
+            throw new ManagedSynonymException("Malformed source on line [" + lineNumber + "], '" + field + "' must be an array");
+        }
+        var values = new ArrayList<String>();
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+            if (token != XContentParser.Token.VALUE_STRING) {
+                throw new ManagedSynonymException("Malformed source on line [" + lineNumber + "], '" + field + "' must hold strings");
+            }
+            values.add(parser.text());
+        }
+        return values;
+    }
+
+    private static OpType parseOpType(String action, int lineNumber) throws ManagedSynonymException {
+        switch (action) {
+            case "create":
+                return OpType.CREATE;
+            case "update":
+                return OpType.UPDATE;
+            case "delete":
+                return OpType.DELETE;
+            default:
+                throw new ManagedSynonymException("Unknown action [" + action + "] on line [" + lineNumber + "]");
+        }
+    }
+
+    private static XContentParser createParser(XContent xContent, BytesReference line) throws IOException {
+        return xContent.createParser(NamedXContentRegistry.EMPTY, DeprecationHandler.THROW_UNSUPPORTED_OPERATION, line.streamInput());
+    }
+
+    private static int findNextMarker(byte marker, int from, BytesReference data) {
+        int nextMarker = data.indexOf(marker, from);
+        return nextMarker == -1 ? data.length() : nextMarker;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+package org.elasticsearch.managedsynonyms.plugin;
+
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.managedsynonyms.plugin.response.SynonymChangesResponse;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymStore;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestStatus;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lists the journaled changes to a filter after a given sequence number, so clients can catch up
+ * incrementally instead of reloading every set.
+ */
+public class ManagedSynonymsChangesAction extends ManagedSynonymsBaseAction {
+    private static final int DEFAULT_SIZE = 1000;
+
+    ManagedSynonymsChangesAction(Environment env) {
+        super(env);
+    }
+
+    @Override
+    public List<Route> routes() {
+        return List.of(new Route(RestRequest.Method.GET, "/_synonyms/{filter}/_changes"));
+    }
+
+    @Override
+    public String getName() {
+        return "managed_synonyms_changes_action";
+    }
+
+    @Override
+    protected RestChannelConsumer prepareSynonymsRequest(RestRequest restRequest, NodeClient client) throws IOException {
+        var filterName = restRequest.param("filter");
+        var synonyms = ManagedSynonymStore.getInstance().getSynonymFile(filterName);
+        if (synonyms == null) return returnErrorResponse(Collections.emptyList(), restRequest, client, RestStatus.NOT_FOUND);
+
+        long since = restRequest.paramAsLong("since", 0L);
+        int size = restRequest.paramAsInt("size", DEFAULT_SIZE);
+        if (since < 0 || size <= 0) {
+            return returnErrorResponse(
+                Collections.singletonList("since must be 0 or greater and size must be greater than 0"),
+                restRequest,
+                client,
+                RestStatus.BAD_REQUEST
+            );
+        }
+
+        var response = new SynonymChangesResponse(synonyms.getChangesSince(since, size), since);
+        return returnResponse(response, restRequest, client);
+    }
+}
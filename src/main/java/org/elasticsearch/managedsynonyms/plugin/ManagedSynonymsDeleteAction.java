@@ -35,7 +35,7 @@ public class ManagedSynonymsDeleteAction extends ManagedSynonymsBaseAction {
     }
 
     @Override
-    protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client) throws IOException {
+    protected RestChannelConsumer prepareSynonymsRequest(RestRequest request, NodeClient client) throws IOException {
         String filterName = request.param("filter");
         if (filterName == null || filterName.length() == 0) {
             return returnErrorResponse(Collections.emptyList(), request, client, RestStatus.NOT_FOUND);
@@ -51,6 +51,12 @@ public class ManagedSynonymsDeleteAction extends ManagedSynonymsBaseAction {
             return returnErrorResponse(Collections.emptyList(), request, client, RestStatus.NOT_FOUND);
         }
 
+        try {
+            ManagedSynonymStore.getInstance().ensureCanAcceptWrites(synonyms);
+        } catch (ManagedSynonymException ex) {
+            return returnErrorResponse(Collections.singletonList(ex.getMessage()), request, client, ex.getStatus());
+        }
+
         if (synonyms.deleteSynonymSet(filterId) == false) {
             return returnErrorResponse(Collections.emptyList(), request, client, RestStatus.NOT_FOUND);
         }
@@ -0,0 +1,110 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+package org.elasticsearch.managedsynonyms.plugin;
+
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.io.Streams;
+import org.elasticsearch.common.io.stream.BytesStream;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymFormat;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymStore;
+import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestStatus;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes every set of a filter out in Solr or WordNet format. Sets are written straight into the
+ * channel's output buffer one at a time, without building the whole file up as a string first.
+ *
+ * The REST layer only sends complete responses, so the whole export is still held in memory before it
+ * goes out. Exports larger than {@link #EXPORT_MAX_SIZE_SETTING} are rejected; page through the list
+ * API with search_after for filters of that size.
+ */
+public class ManagedSynonymsExportAction extends ManagedSynonymsBaseAction {
+
+    public static final Setting<ByteSizeValue> EXPORT_MAX_SIZE_SETTING = Setting.byteSizeSetting(
+        "managed_synonyms.export.max_size",
+        new ByteSizeValue(64, ByteSizeUnit.MB),
+        Setting.Property.NodeScope
+    );
+
+    // how many sets are written between two checks of the buffered size
+    private static final int SIZE_CHECK_INTERVAL = 256;
+
+    ManagedSynonymsExportAction(Environment env) {
+        super(env);
+    }
+
+    @Override
+    public List<Route> routes() {
+        return List.of(new Route(RestRequest.Method.GET, "/_synonyms/{filter}/_export"));
+    }
+
+    @Override
+    public String getName() {
+        return "managed_synonyms_export_action";
+    }
+
+    @Override
+    protected RestChannelConsumer prepareSynonymsRequest(RestRequest restRequest, NodeClient client) throws IOException {
+        var filterName = restRequest.param("filter");
+        var synonyms = ManagedSynonymStore.getInstance().getSynonymFile(filterName);
+        if (synonyms == null) return returnErrorResponse(Collections.emptyList(), restRequest, client, RestStatus.NOT_FOUND);
+
+        ManagedSynonymFormat format;
+        try {
+            format = ManagedSynonymFormat.fromString(restRequest.param("format", "solr"));
+        } catch (ManagedSynonymException ex) {
+            return returnErrorResponse(Collections.singletonList(ex.getMessage()), restRequest, client, RestStatus.BAD_REQUEST);
+        }
+
+        var sets = synonyms.getSnapshotSets();
+        long maxBytes = EXPORT_MAX_SIZE_SETTING.get(environment.settings()).getBytes();
+        return channel -> {
+            try {
+                BytesStreamOutput buffer = channel.bytesOutput();
+                BytesStream bytesOut = Streams.flushOnCloseStream(buffer);
+                try (Writer writer = new OutputStreamWriter(bytesOut, StandardCharsets.UTF_8)) {
+                    long ordinal = 0;
+                    for (var set : sets) {
+                        format.writeSet(writer, set, ordinal++);
+                        if (ordinal % SIZE_CHECK_INTERVAL == 0) {
+                            writer.flush();
+                            ensureWithinMaxSize(filterName, buffer, maxBytes);
+                        }
+                    }
+                }
+                ensureWithinMaxSize(filterName, buffer, maxBytes);
+                channel.sendResponse(new BytesRestResponse(RestStatus.OK, format.getContentType(), bytesOut.bytes()));
+            } catch (ManagedSynonymException ex) {
+                channel.sendResponse(new BytesRestResponse(ex.getStatus(), ex.getMessage()));
+            } catch (final Exception ex) {
+                channel.sendResponse(new BytesRestResponse(channel, ex));
+            }
+        };
+    }
+
+    private static void ensureWithinMaxSize(String filterName, BytesStreamOutput buffer, long maxBytes) throws ManagedSynonymException {
+        if (buffer.size() <= maxBytes) return;
+        throw new ManagedSynonymException(
+            "Export of [" + filterName + "] exceeds [" + EXPORT_MAX_SIZE_SETTING.getKey() + "] of [" + new ByteSizeValue(maxBytes) + "]",
+            RestStatus.REQUEST_ENTITY_TOO_LARGE
+        );
+    }
+}
@@ -9,20 +9,31 @@ package org.elasticsearch.managedsynonyms.plugin;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.client.node.NodeClient;
 import org.elasticsearch.env.Environment;
+import org.elasticsearch.managedsynonyms.plugin.action.SynonymHitsAction;
+import org.elasticsearch.managedsynonyms.plugin.analyzer.ManagedSynonymMapCache;
+import org.elasticsearch.managedsynonyms.plugin.response.SynonymHitsResponse;
 import org.elasticsearch.managedsynonyms.plugin.response.SynonymSetItemResponse;
 import org.elasticsearch.managedsynonyms.plugin.response.SynonymSetListResponse;
+import org.elasticsearch.managedsynonyms.plugin.response.SynonymStatsResponse;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymFile;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymSet;
 import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymStore;
+import org.elasticsearch.rest.BytesRestResponse;
 import org.elasticsearch.rest.RestRequest;
 import org.elasticsearch.rest.RestStatus;
 
 import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class ManagedSynonymsGetAction extends ManagedSynonymsBaseAction {
     private static final Logger logger = LogManager.getLogger(ManagedSynonymsPlugin.class);
+    private static final String STATS_ID = "_stats";
+    private static final String HITS_ID = "_hits";
 
     public ManagedSynonymsGetAction(Environment env) {
         super(env);
@@ -42,13 +53,16 @@ public class ManagedSynonymsGetAction extends ManagedSynonymsBaseAction {
     }
 
     @Override
-    protected RestChannelConsumer prepareRequest(RestRequest restRequest, NodeClient client) throws IOException {
+    protected RestChannelConsumer prepareSynonymsRequest(RestRequest restRequest, NodeClient client) throws IOException {
         String filterName = restRequest.param("filter");
         if (filterName == null || filterName.length() == 0) {
             return returnErrorResponse(Collections.emptyList(), restRequest, client, RestStatus.NOT_FOUND);
         }
 
         var filterId = restRequest.param("id", "");
+        if (filterName.equals(STATS_ID) && filterId.length() == 0) {
+            return handleGetNodeStats(restRequest, client);
+        }
         if (filterId.length() > 0) {
             return handleGetFilter(filterName, filterId, restRequest, client);
         }
@@ -63,7 +77,18 @@ public class ManagedSynonymsGetAction extends ManagedSynonymsBaseAction {
             return returnErrorResponse(restRequest, client, RestStatus.NOT_FOUND);
         }
 
-        // TODO: if filterId == '_stats' return the stats
+        if (filterId.equals(STATS_ID)) {
+            var response = new SynonymStatsResponse(
+                Collections.singletonList(synonyms),
+                ManagedSynonymMapCache.getInstance().getHolders(),
+                null
+            );
+            return returnResponse(response, restRequest, client);
+        }
+
+        if (filterId.equals(HITS_ID)) {
+            return handleGetHits(synonyms, restRequest, client);
+        }
 
         var synonymSet = synonyms.getSet(filterId);
         if (synonymSet == null) {
@@ -73,21 +98,97 @@ public class ManagedSynonymsGetAction extends ManagedSynonymsBaseAction {
         return returnResponse(response, restRequest, client);
     }
 
+    /**
+     * Lists the least used sets of a filter. Hits are summed over every node, for filters with track_hits enabled,
+     * and counted since each node started; the response is flagged incomplete if unused_days reaches back further.
+     */
+    private RestChannelConsumer handleGetHits(ManagedSynonymFile synonyms, RestRequest restRequest, NodeClient client) {
+        int unusedDays;
+        int size;
+        try {
+            unusedDays = restRequest.paramAsInt("unused_days", 0);
+            size = restRequest.paramAsInt("size", 100);
+        } catch (IllegalArgumentException ex) {
+            return returnErrorResponse(Collections.singletonList(ex.getMessage()), restRequest, client, RestStatus.BAD_REQUEST);
+        }
+        if (unusedDays < 0 || size < 0) {
+            return returnErrorResponse(restRequest, client, RestStatus.BAD_REQUEST);
+        }
+        long unusedSince = unusedDays > 0 ? System.currentTimeMillis() - TimeUnit.DAYS.toMillis(unusedDays) : 0;
+        var request = new SynonymHitsAction.Request(synonyms.getName());
+        return channel -> client.execute(
+            SynonymHitsAction.INSTANCE,
+            request,
+            ActionListener.wrap(
+                hits -> sendResponse(channel, RestStatus.OK, new SynonymHitsResponse(synonyms, hits, unusedSince, size), restRequest),
+                e -> channel.sendResponse(new BytesRestResponse(channel, e))
+            )
+        );
+    }
+
+    /**
+     * Rolls the stats up over every filter on this node. The node stats API cannot be extended by plugins, so
+     * this is served under {@code /_synonyms/_stats} instead.
+     */
+    private RestChannelConsumer handleGetNodeStats(RestRequest restRequest, NodeClient client) {
+        var store = ManagedSynonymStore.getInstance();
+        var response = new SynonymStatsResponse(
+            store.getSynonymFiles(),
+            ManagedSynonymMapCache.getInstance().getHolders(),
+            store.getOperationStats()
+        );
+        return returnResponse(response, restRequest, client);
+    }
+
     private RestChannelConsumer handleGetFilterList(String filterName, RestRequest restRequest, NodeClient client) throws IOException {
         var synonyms = ManagedSynonymStore.getInstance().getSynonymFile(filterName);
         if (synonyms == null) {
             return returnErrorResponse(restRequest, client, RestStatus.NOT_FOUND);
         }
 
-        int currentPage = Integer.parseInt(restRequest.param("page", "1"));
-        int pageSize = Integer.parseInt(restRequest.param("size", "25"));
+        int currentPage;
+        int pageSize;
+        try {
+            currentPage = restRequest.paramAsInt("page", 1);
+            pageSize = restRequest.paramAsInt("size", 25);
+        } catch (IllegalArgumentException ex) {
+            return returnErrorResponse(Collections.singletonList(ex.getMessage()), restRequest, client, RestStatus.BAD_REQUEST);
+        }
         String queryFilter = restRequest.param("query", null);
+        String searchAfter = restRequest.param("search_after", null);
+        ManagedSynonymFile.QueryMode queryMode;
+        try {
+            queryMode = ManagedSynonymFile.QueryMode.fromString(restRequest.param("query_mode"));
+        } catch (ManagedSynonymException ex) {
+            return returnErrorResponse(Collections.singletonList(ex.getMessage()), restRequest, client, RestStatus.BAD_REQUEST);
+        }
+        if (currentPage < 1 || pageSize < 1) {
+            return returnErrorResponse(
+                Collections.singletonList("page and size must be at least 1"),
+                restRequest,
+                client,
+                RestStatus.BAD_REQUEST
+            );
+        }
+
+        ManagedSynonymFile.Page page;
+        try {
+            page = searchAfter == null
+                ? synonyms.listPage(currentPage, pageSize, queryFilter, queryMode)
+                : synonyms.listPageAfter(searchAfter, pageSize, queryFilter, queryMode);
+        } catch (ManagedSynonymException ex) {
+            return returnErrorResponse(Collections.singletonList(ex.getMessage()), restRequest, client, RestStatus.BAD_REQUEST);
+        }
+        List<ManagedSynonymSet> resultItems = page.getSets();
+        int totalCount = page.getTotalCount();
+        int pageCount = (int) ((totalCount + (long) pageSize - 1) / pageSize);
 
-        int totalCount = synonyms.getCount(queryFilter);
-        var resultItems = synonyms.listSets(currentPage, pageSize, queryFilter);
-        int pageCount = (totalCount / pageSize) + 1;
+        // only hand out a cursor when there may be more results to page through
+        String nextSearchAfter = resultItems.isEmpty() || resultItems.size() < pageSize
+            ? null
+            : resultItems.get(resultItems.size() - 1).getSortCursor();
 
-        var response = new SynonymSetListResponse(resultItems, currentPage, pageSize, pageCount, totalCount);
+        var response = new SynonymSetListResponse(resultItems, currentPage, pageSize, pageCount, totalCount, nextSearchAfter);
         return this.returnResponse(response, restRequest, client);
     }
 
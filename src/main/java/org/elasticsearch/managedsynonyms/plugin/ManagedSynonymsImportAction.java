@@ -0,0 +1,108 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+package org.elasticsearch.managedsynonyms.plugin;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymFormat;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymStore;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestStatus;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Imports a synonym file in Solr or WordNet format into a managed filter.
+ *
+ * The import runs as a task on the generic thread pool. By default the request waits for it to finish;
+ * with wait_for_completion=false the task is returned right away and can be polled or cancelled through
+ * /_synonyms/{filter}/_import/{task_id}.
+ */
+public class ManagedSynonymsImportAction extends ManagedSynonymsBaseAction {
+    private static final Logger logger = LogManager.getLogger(ManagedSynonymsImportAction.class);
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+
+    ManagedSynonymsImportAction(Environment env) {
+        super(env);
+    }
+
+    @Override
+    public List<Route> routes() {
+        return List.of(
+            new Route(RestRequest.Method.POST, "/_synonyms/{filter}/_import"),
+            new Route(RestRequest.Method.GET, "/_synonyms/{filter}/_import/{task_id}"),
+            new Route(RestRequest.Method.DELETE, "/_synonyms/{filter}/_import/{task_id}")
+        );
+    }
+
+    @Override
+    public String getName() {
+        return "managed_synonyms_import_action";
+    }
+
+    @Override
+    protected RestChannelConsumer prepareSynonymsRequest(RestRequest restRequest, NodeClient client) throws IOException {
+        var filterName = restRequest.param("filter");
+        var synonyms = ManagedSynonymStore.getInstance().getSynonymFile(filterName);
+        if (synonyms == null) return returnErrorResponse(Collections.emptyList(), restRequest, client, RestStatus.NOT_FOUND);
+
+        if (restRequest.method() != RestRequest.Method.POST) {
+            var task = ManagedSynonymStore.getInstance().getImportTask(filterName, restRequest.param("task_id"));
+            if (task == null) return returnErrorResponse(restRequest, client, RestStatus.NOT_FOUND);
+            if (restRequest.method() == RestRequest.Method.DELETE) {
+                task.cancel();
+            }
+            return returnResponse(task, restRequest, client);
+        }
+
+        ManagedSynonymFormat format;
+        try {
+            format = ManagedSynonymFormat.fromString(restRequest.param("format", "solr"));
+        } catch (ManagedSynonymException ex) {
+            return returnErrorResponse(Collections.singletonList(ex.getMessage()), restRequest, client, RestStatus.BAD_REQUEST);
+        }
+        int batchSize = restRequest.paramAsInt("batch_size", DEFAULT_BATCH_SIZE);
+        if (batchSize <= 0) {
+            return returnErrorResponse(
+                Collections.singletonList("batch_size must be greater than 0"),
+                restRequest,
+                client,
+                RestStatus.BAD_REQUEST
+            );
+        }
+        boolean waitForCompletion = restRequest.paramAsBoolean("wait_for_completion", true);
+
+        if (restRequest.hasContent() == false) {
+            return returnErrorResponse(Collections.singletonList("request body is required"), restRequest, client, RestStatus.BAD_REQUEST);
+        }
+
+        var content = restRequest.content();
+        var task = ManagedSynonymStore.getInstance().createImportTask(filterName, format, batchSize, content.length());
+        logger.info("Starting managed synonyms import [" + task.getTaskId() + "] into [" + filterName + "]");
+
+        return channel -> {
+            if (waitForCompletion == false) {
+                sendResponse(channel, RestStatus.ACCEPTED, task, restRequest);
+            }
+            client.threadPool().generic().execute(() -> {
+                try {
+                    task.run(synonyms, content.streamInput());
+                    if (waitForCompletion) {
+                        sendResponse(channel, RestStatus.OK, task, restRequest);
+                    }
+                } catch (IOException e) {
+                    logger.error("Could not send managed synonyms import response", e);
+                }
+            });
+        };
+    }
+}
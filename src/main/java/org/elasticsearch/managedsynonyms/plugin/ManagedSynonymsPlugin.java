@@ -12,33 +12,54 @@ import static java.util.Collections.singletonMap;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionResponse;
 import org.elasticsearch.bootstrap.BootstrapCheck;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.client.OriginSettingClient;
 import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
 import org.elasticsearch.cluster.node.DiscoveryNodes;
 import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.breaker.CircuitBreaker;
 import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
 import org.elasticsearch.common.settings.ClusterSettings;
 import org.elasticsearch.common.settings.IndexScopedSettings;
+import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.settings.SettingsFilter;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.core.TimeValue;
 import org.elasticsearch.env.Environment;
 import org.elasticsearch.env.NodeEnvironment;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.IndexModule;
+import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.analysis.TokenFilterFactory;
+import org.elasticsearch.index.shard.IndexEventListener;
 import org.elasticsearch.indices.SystemIndexDescriptor;
 import org.elasticsearch.indices.analysis.AnalysisModule.AnalysisProvider;
+import org.elasticsearch.indices.breaker.BreakerSettings;
+import org.elasticsearch.indices.cluster.IndicesClusterStateService.AllocatedIndices.IndexRemovalReason;
+import org.elasticsearch.managedsynonyms.plugin.action.SynonymHitsAction;
+import org.elasticsearch.managedsynonyms.plugin.action.TransportSynonymHitsAction;
+import org.elasticsearch.managedsynonyms.plugin.analyzer.ManagedSynonymMapCache;
 import org.elasticsearch.managedsynonyms.plugin.analyzer.ManagedSynonymTokenFilterFactory;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymIndexFlusher;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymRequestRecorder;
 import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymStore;
 import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymsInitializer;
 import org.elasticsearch.plugins.ActionPlugin;
 import org.elasticsearch.plugins.AnalysisPlugin;
+import org.elasticsearch.plugins.CircuitBreakerPlugin;
 import org.elasticsearch.plugins.Plugin;
 import org.elasticsearch.plugins.SystemIndexPlugin;
 import org.elasticsearch.repositories.RepositoriesService;
 import org.elasticsearch.rest.RestController;
 import org.elasticsearch.rest.RestHandler;
 import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.threadpool.ExecutorBuilder;
+import org.elasticsearch.threadpool.ScalingExecutorBuilder;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.watcher.ResourceWatcherService;
 
@@ -51,11 +72,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.function.Supplier;
 
-public class ManagedSynonymsPlugin extends Plugin implements ActionPlugin, AnalysisPlugin, SystemIndexPlugin {
+public class ManagedSynonymsPlugin extends Plugin implements ActionPlugin, AnalysisPlugin, CircuitBreakerPlugin, SystemIndexPlugin {
     private List<RestHandler> handlers = new ArrayList<RestHandler>();
 
     private static final Logger logger = LogManager.getLogger(ManagedSynonymsPlugin.class);
     public static final String MANAGED_SYNONYMS_ORIGIN = "ManagedSynonyms";
+    private static final TimeValue FINAL_FLUSH_TIMEOUT = TimeValue.timeValueSeconds(30);
     private static ManagedSynonymsInitializer initializer;
 
     @Override
@@ -85,14 +107,79 @@ public class ManagedSynonymsPlugin extends Plugin implements ActionPlugin, Analy
                 new ManagedSynonymsGetAction(environment),
                 new ManagedSynonymsPostAction(environment),
                 new ManagedSynonymsUpdateAction(environment),
-                new ManagedSynonymsDeleteAction(environment)
+                new ManagedSynonymsDeleteAction(environment),
+                new ManagedSynonymsBulkAction(environment),
+                new ManagedSynonymsImportAction(environment),
+                new ManagedSynonymsExportAction(environment),
+                new ManagedSynonymsChangesAction(environment)
             )
         );
 
+        ManagedSynonymStore.getInstance().setThreadPool(threadPool);
+        ManagedSynonymStore.getInstance().setRequestRecorder(ManagedSynonymRequestRecorder.create(environment, environment.settings()));
+        ManagedSynonymStore.getInstance()
+            .startIndexFlusher(new OriginSettingClient(client, MANAGED_SYNONYMS_ORIGIN), threadPool, environment.settings());
+
         initializer = new ManagedSynonymsInitializer(client);
         return Collections.singletonList(initializer);
     }
 
+    @Override
+    public List<Setting<?>> getSettings() {
+        return List.of(
+            ManagedSynonymIndexFlusher.FLUSH_INTERVAL_SETTING,
+            ManagedSynonymIndexFlusher.FLUSH_MAX_ACTIONS_SETTING,
+            ManagedSynonymIndexFlusher.MAX_PENDING_CHANGES_SETTING,
+            ManagedSynonymTokenFilterFactory.ANALYZED_TERM_CACHE_SIZE_SETTING,
+            ManagedSynonymRequestRecorder.RECORDING_PATH_SETTING,
+            ManagedSynonymStore.BREAKER_LIMIT_SETTING,
+            ManagedSynonymStore.BREAKER_OVERHEAD_SETTING,
+            ManagedSynonymsExportAction.EXPORT_MAX_SIZE_SETTING
+        );
+    }
+
+    @Override
+    public BreakerSettings getCircuitBreaker(Settings settings) {
+        return new BreakerSettings(
+            ManagedSynonymStore.BREAKER_NAME,
+            ManagedSynonymStore.BREAKER_LIMIT_SETTING.get(settings).getBytes(),
+            ManagedSynonymStore.BREAKER_OVERHEAD_SETTING.get(settings),
+            CircuitBreaker.Type.MEMORY,
+            CircuitBreaker.Durability.TRANSIENT
+        );
+    }
+
+    @Override
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        ManagedSynonymStore.getInstance().setBreaker(circuitBreaker);
+    }
+
+    @Override
+    public void onIndexModule(IndexModule indexModule) {
+        indexModule.addIndexEventListener(new IndexEventListener() {
+            @Override
+            public void afterIndexRemoved(Index index, IndexSettings indexSettings, IndexRemovalReason reason) {
+                ManagedSynonymMapCache.getInstance().release(index.getUUID());
+                ManagedSynonymStore.getInstance().releaseIndex(index.getUUID());
+            }
+        });
+    }
+
+    @Override
+    public List<ExecutorBuilder<?>> getExecutorBuilders(Settings settings) {
+        // synonym maps are rebuilt off the search threads, a couple at a time, and each build
+        // spreads the analysis of its terms over the analyze pool
+        return List.of(
+            new ScalingExecutorBuilder(ManagedSynonymStore.BUILD_THREAD_POOL, 1, 2, TimeValue.timeValueMinutes(5)),
+            new ScalingExecutorBuilder(
+                ManagedSynonymStore.ANALYZE_THREAD_POOL,
+                1,
+                EsExecutors.allocatedProcessors(settings),
+                TimeValue.timeValueMinutes(5)
+            )
+        );
+    }
+
     @Override
     public List<RestHandler> getRestHandlers(
         Settings settings,
@@ -107,6 +194,11 @@ public class ManagedSynonymsPlugin extends Plugin implements ActionPlugin, Analy
         return handlers;
     }
 
+    @Override
+    public List<ActionHandler<? extends ActionRequest, ? extends ActionResponse>> getActions() {
+        return List.of(new ActionHandler<>(SynonymHitsAction.INSTANCE, TransportSynonymHitsAction.class));
+    }
+
     @Override
     public List<BootstrapCheck> getBootstrapChecks() {
         // TODO - launch to ensure we have indices
@@ -149,8 +241,12 @@ public class ManagedSynonymsPlugin extends Plugin implements ActionPlugin, Analy
     }
 
     private void flushSynonymStore() throws IOException {
-        logger.info("Writing synonym store to cluster settings (not implemented currently)");
-        // ManagedSynonymStore.getInstance().saveToSettings(this.clusterService);
+        logger.info("Flushing managed synonym store to index");
+        ManagedSynonymStore.getInstance().stopIndexFlusher(FINAL_FLUSH_TIMEOUT);
+
+        var recorder = ManagedSynonymStore.getInstance().getRequestRecorder();
+        ManagedSynonymStore.getInstance().setRequestRecorder(null);
+        if (recorder != null) recorder.close();
     }
 
 }
@@ -39,7 +39,13 @@ public class ManagedSynonymsPostAction extends ManagedSynonymsBaseAction {
     }
 
     @Override
-    protected RestChannelConsumer prepareRequest(RestRequest restRequest, NodeClient client) throws IOException {
+    protected boolean recordsResponseBody() {
+        // the ids of created sets, so a replay can follow them
+        return true;
+    }
+
+    @Override
+    protected RestChannelConsumer prepareSynonymsRequest(RestRequest restRequest, NodeClient client) throws IOException {
         var filterName = restRequest.param("filter");
         var synonyms = ManagedSynonymStore.getInstance().getSynonymFile(filterName);
         if (synonyms == null) return returnErrorResponse(Collections.emptyList(), restRequest, client, RestStatus.NOT_FOUND);
@@ -67,12 +73,17 @@ public class ManagedSynonymsPostAction extends ManagedSynonymsBaseAction {
         }
 
         try {
+            ManagedSynonymStore.getInstance().ensureCanAcceptWrites(synonyms);
             @SuppressWarnings("unchecked")
-            var createdSet = synonyms.createSynonymSet((ArrayList<String>) contentSynonymsArray);
+            var createdSet = synonyms.createSynonymSet(
+                (ArrayList<String>) contentSynonymsArray,
+                modeFromContent(content),
+                targetsFromContent(content)
+            );
             var response = new SynonymSetItemResponse(createdSet);
             return returnResponse(response, restRequest, client);
         } catch (ManagedSynonymException ex) {
-            return returnErrorResponse(Collections.singletonList(ex.getMessage()), restRequest, client, RestStatus.BAD_REQUEST);
+            return returnErrorResponse(Collections.singletonList(ex.getMessage()), restRequest, client, ex.getStatus());
         }
     }
 }
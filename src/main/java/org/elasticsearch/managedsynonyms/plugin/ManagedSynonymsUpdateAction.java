@@ -41,7 +41,7 @@ public class ManagedSynonymsUpdateAction extends ManagedSynonymsBaseAction {
     }
 
     @Override
-    protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client) throws IOException {
+    protected RestChannelConsumer prepareSynonymsRequest(RestRequest request, NodeClient client) throws IOException {
         var filterName = request.param("filter");
         var filterId = request.param("id", "");
         if (filterId.length() == 0) {
@@ -76,6 +76,8 @@ public class ManagedSynonymsUpdateAction extends ManagedSynonymsBaseAction {
         setToUpdate.setList(synonymsList);
 
         try {
+            setToUpdate.setMode(modeFromContent(content), targetsFromContent(content));
+            ManagedSynonymStore.getInstance().ensureCanAcceptWrites(synonyms);
             var updatedSet = synonyms.updateSynonymSet(setToUpdate);
             if (updatedSet == null) {
                 return returnErrorResponse(request, client, RestStatus.NOT_FOUND);
@@ -84,7 +86,7 @@ public class ManagedSynonymsUpdateAction extends ManagedSynonymsBaseAction {
             var response = new SynonymSetItemResponse(updatedSet);
             return returnResponse(response, request, client);
         } catch (ManagedSynonymException ex) {
-            return returnErrorResponse(Collections.singletonList(ex.getMessage()), request, client, RestStatus.BAD_REQUEST);
+            return returnErrorResponse(Collections.singletonList(ex.getMessage()), request, client, ex.getStatus());
         }
 
     }
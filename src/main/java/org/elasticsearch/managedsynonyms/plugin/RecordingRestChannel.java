@@ -0,0 +1,67 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+package org.elasticsearch.managedsynonyms.plugin;
+
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymOperationStats;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymRequestRecorder;
+import org.elasticsearch.rest.AbstractRestChannel;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestResponse;
+
+/**
+ * Passes responses on to the real channel, then times the request for the stats API and records it for replay if
+ * a recorder is given. Actions answering from a listener send their response long after the handler returned,
+ * so this is the only place that sees the full latency.
+ */
+class RecordingRestChannel extends AbstractRestChannel {
+    private final RestChannel delegate;
+    private final String operation;
+    private final ManagedSynonymOperationStats stats;
+    private final ManagedSynonymRequestRecorder recorder;
+    private final boolean keepBody;
+    private final long timestamp;
+    private final long startNanos;
+
+    /**
+     * @param recorder where to record the request, or null if recording is off
+     * @param keepBody whether to record the response body as well
+     */
+    RecordingRestChannel(
+        RestChannel delegate,
+        String operation,
+        ManagedSynonymOperationStats stats,
+        ManagedSynonymRequestRecorder recorder,
+        boolean keepBody,
+        long timestamp,
+        long startNanos
+    ) {
+        super(delegate.request(), delegate.detailedErrorsEnabled());
+        this.delegate = delegate;
+        this.operation = operation;
+        this.stats = stats;
+        this.recorder = recorder;
+        this.keepBody = keepBody;
+        this.timestamp = timestamp;
+        this.startNanos = startNanos;
+    }
+
+    @Override
+    public void sendResponse(RestResponse response) {
+        String body = null;
+        if (recorder != null && keepBody && response.content().length() <= ManagedSynonymRequestRecorder.MAX_RECORDED_BODY_CHARS) {
+            body = response.content().utf8ToString();
+        }
+        try {
+            delegate.sendResponse(response);
+        } finally {
+            long tookNanos = System.nanoTime() - startNanos;
+            stats.record(operation, tookNanos);
+            if (recorder != null) recorder.record(request, response.status(), body, timestamp, tookNanos);
+        }
+    }
+}
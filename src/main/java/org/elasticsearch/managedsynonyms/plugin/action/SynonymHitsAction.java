@@ -0,0 +1,170 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.managedsynonyms.plugin.action;
+
+import org.elasticsearch.action.ActionType;
+import org.elasticsearch.action.FailedNodeException;
+import org.elasticsearch.action.support.nodes.BaseNodeResponse;
+import org.elasticsearch.action.support.nodes.BaseNodesRequest;
+import org.elasticsearch.action.support.nodes.BaseNodesResponse;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.transport.TransportRequest;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the hits of the sets of a filter from every node. Filters count hits only on the node that ran the
+ * query, so the hits of a set are the sum over all nodes and its last hit the latest of any node.
+ */
+public class SynonymHitsAction extends ActionType<SynonymHitsAction.Response> {
+    public static final SynonymHitsAction INSTANCE = new SynonymHitsAction();
+    public static final String NAME = "cluster:monitor/managed_synonyms/hits";
+
+    private SynonymHitsAction() {
+        super(NAME, Response::new);
+    }
+
+    public static class Request extends BaseNodesRequest<Request> {
+        private final String filterName;
+
+        public Request(String filterName) {
+            super(new String[0]);
+            this.filterName = filterName;
+        }
+
+        Request(StreamInput in) throws IOException {
+            super(in);
+            this.filterName = in.readString();
+        }
+
+        public String getFilterName() {
+            return filterName;
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            out.writeString(filterName);
+        }
+    }
+
+    public static class NodeRequest extends TransportRequest {
+        private final String filterName;
+
+        NodeRequest(String filterName) {
+            this.filterName = filterName;
+        }
+
+        NodeRequest(StreamInput in) throws IOException {
+            super(in);
+            this.filterName = in.readString();
+        }
+
+        String getFilterName() {
+            return filterName;
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            out.writeString(filterName);
+        }
+    }
+
+    /**
+     * The hits counted on one node. A node without the filter never ran it and tracks nothing.
+     */
+    public static class NodeResponse extends BaseNodeResponse {
+        private final boolean tracking;
+        private final long trackingSince;
+        private final Map<String, Long> counts;
+        private final Map<String, Long> lastHits;
+
+        NodeResponse(DiscoveryNode node, boolean tracking, long trackingSince, Map<String, Long> counts, Map<String, Long> lastHits) {
+            super(node);
+            this.tracking = tracking;
+            this.trackingSince = trackingSince;
+            this.counts = counts;
+            this.lastHits = lastHits;
+        }
+
+        NodeResponse(StreamInput in) throws IOException {
+            super(in);
+            this.tracking = in.readBoolean();
+            this.trackingSince = in.readVLong();
+            this.counts = in.readMap(StreamInput::readString, StreamInput::readVLong);
+            this.lastHits = in.readMap(StreamInput::readString, StreamInput::readVLong);
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            out.writeBoolean(tracking);
+            out.writeVLong(trackingSince);
+            out.writeMap(counts, StreamOutput::writeString, StreamOutput::writeVLong);
+            out.writeMap(lastHits, StreamOutput::writeString, StreamOutput::writeVLong);
+        }
+    }
+
+    public static class Response extends BaseNodesResponse<NodeResponse> {
+
+        public Response(ClusterName clusterName, List<NodeResponse> nodes, List<FailedNodeException> failures) {
+            super(clusterName, nodes, failures);
+        }
+
+        Response(StreamInput in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected List<NodeResponse> readNodesFrom(StreamInput in) throws IOException {
+            return in.readList(NodeResponse::new);
+        }
+
+        @Override
+        protected void writeNodesTo(StreamOutput out, List<NodeResponse> nodes) throws IOException {
+            out.writeList(nodes);
+        }
+
+        public long getCount(String setId) {
+            long count = 0;
+            for (var node : getNodes()) {
+                count += node.counts.getOrDefault(setId, 0L);
+            }
+            return count;
+        }
+
+        /**
+         * @return the latest hit of the set on any node, 0 if it never matched
+         */
+        public long getLastHit(String setId) {
+            long lastHit = 0;
+            for (var node : getNodes()) {
+                lastHit = Math.max(lastHit, node.lastHits.getOrDefault(setId, 0L));
+            }
+            return lastHit;
+        }
+
+        /**
+         * @return since when every node that has the filter has been counting its hits, 0 if none has
+         */
+        public long getTrackingSince() {
+            long trackingSince = 0;
+            for (var node : getNodes()) {
+                if (node.tracking) trackingSince = Math.max(trackingSince, node.trackingSince);
+            }
+            return trackingSince;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.managedsynonyms.plugin.action;
+
+import org.elasticsearch.action.FailedNodeException;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.nodes.TransportNodesAction;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymStore;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+public class TransportSynonymHitsAction extends TransportNodesAction<
+    SynonymHitsAction.Request,
+    SynonymHitsAction.Response,
+    SynonymHitsAction.NodeRequest,
+    SynonymHitsAction.NodeResponse> {
+
+    @Inject
+    public TransportSynonymHitsAction(
+        ThreadPool threadPool,
+        ClusterService clusterService,
+        TransportService transportService,
+        ActionFilters actionFilters
+    ) {
+        super(
+            SynonymHitsAction.NAME,
+            threadPool,
+            clusterService,
+            transportService,
+            actionFilters,
+            SynonymHitsAction.Request::new,
+            SynonymHitsAction.NodeRequest::new,
+            ThreadPool.Names.MANAGEMENT,
+            SynonymHitsAction.NodeResponse.class
+        );
+    }
+
+    @Override
+    protected SynonymHitsAction.Response newResponse(
+        SynonymHitsAction.Request request,
+        List<SynonymHitsAction.NodeResponse> responses,
+        List<FailedNodeException> failures
+    ) {
+        return new SynonymHitsAction.Response(clusterService.getClusterName(), responses, failures);
+    }
+
+    @Override
+    protected SynonymHitsAction.NodeRequest newNodeRequest(SynonymHitsAction.Request request) {
+        return new SynonymHitsAction.NodeRequest(request.getFilterName());
+    }
+
+    @Override
+    protected SynonymHitsAction.NodeResponse newNodeResponse(StreamInput in) throws IOException {
+        return new SynonymHitsAction.NodeResponse(in);
+    }
+
+    @Override
+    protected SynonymHitsAction.NodeResponse nodeOperation(SynonymHitsAction.NodeRequest request) {
+        var node = clusterService.localNode();
+        var file = ManagedSynonymStore.getInstance().getSynonymFile(request.getFilterName());
+        if (file == null) return new SynonymHitsAction.NodeResponse(node, false, 0, Collections.emptyMap(), Collections.emptyMap());
+
+        var hitStats = file.getHitStats();
+        hitStats.retainAll(file);
+        var counts = new HashMap<String, Long>();
+        var lastHits = new HashMap<String, Long>();
+        for (var set : file.getSnapshotSets()) {
+            var hits = hitStats.getHits(set.getId());
+            if (hits == null) continue;
+            counts.put(set.getId(), hits.getCount());
+            lastHits.put(set.getId(), hits.getLastHitTimestamp());
+        }
+        return new SynonymHitsAction.NodeResponse(node, true, hitStats.getTrackingSince(), counts, lastHits);
+    }
+}
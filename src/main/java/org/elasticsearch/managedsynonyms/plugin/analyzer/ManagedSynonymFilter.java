@@ -0,0 +1,145 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+
+package org.elasticsearch.managedsynonyms.plugin.analyzer;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.synonym.SynonymFilter;
+import org.apache.lucene.analysis.synonym.SynonymMap;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+
+import java.io.IOException;
+
+/**
+ * Applies the synonyms of a {@link ManagedSynonymMapHolder}, the base map first and then the delta. Analyzers
+ * reuse their token streams, so the maps are looked up again on every {@link #reset()} rather than once when
+ * the stream is created.
+ *
+ * A single map never expands its own outputs again, so neither may the delta expand the synonyms the base
+ * emitted. Those are masked while they pass through the delta and restored behind it.
+ *
+ * With a hit sample interval of N, every Nth stream records which sets its synonym tokens came from. The other
+ * streams only pay for a counter increment per reset.
+ */
+public final class ManagedSynonymFilter extends TokenFilter {
+    private final ManagedSynonymMapHolder holder;
+    private final int hitSampleInterval;
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    private final TypeAttribute typeAtt = addAttribute(TypeAttribute.class);
+    private final PositionIncrementAttribute posIncAtt = addAttribute(PositionIncrementAttribute.class);
+
+    private ManagedSynonymMapHolder.Layers layers;
+    private TokenStream delegate;
+    private int streams = 0;
+    private boolean sampling = false;
+    private String lastHitSetId;
+
+    public ManagedSynonymFilter(TokenStream input, ManagedSynonymMapHolder holder) {
+        this(input, holder, 0);
+    }
+
+    /**
+     * @param hitSampleInterval record hits on every Nth stream, 0 to not record hits
+     */
+    public ManagedSynonymFilter(TokenStream input, ManagedSynonymMapHolder holder, int hitSampleInterval) {
+        super(input);
+        this.holder = holder;
+        this.hitSampleInterval = hitSampleInterval;
+        this.delegate = input;
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        if (delegate.incrementToken() == false) return false;
+        if (sampling && SynonymFilter.TYPE_SYNONYM.equals(typeAtt.type())) {
+            recordHit();
+        }
+        return true;
+    }
+
+    private void recordHit() {
+        var setId = layers.findSetId(termAtt.toString());
+        if (setId == null) return;
+        // a match emits several tokens at the same position, count it once
+        if (posIncAtt.getPositionIncrement() == 0 && setId.equals(lastHitSetId)) return;
+        lastHitSetId = setId;
+        holder.getFile().getHitStats().recordHit(setId);
+    }
+
+    @Override
+    public void reset() throws IOException {
+        var latest = holder.getLayers();
+        if (latest != layers) {
+            layers = latest;
+            // the synonym filters share their attributes with the input, so they can be swapped between streams
+            delegate = wrap(input, latest);
+        }
+        sampling = hitSampleInterval > 0 && ++streams % hitSampleInterval == 0;
+        lastHitSetId = null;
+        delegate.reset();
+    }
+
+    static TokenStream wrap(TokenStream input, ManagedSynonymMapHolder.Layers layers) {
+        var base = wrap(input, layers.getBase());
+        var delta = layers.getDelta();
+        if (delta == null || delta.fst == null) return base;
+        return new SynonymMask(new SynonymFilter(new SynonymMask(base, true), delta, false), false);
+    }
+
+    private static TokenStream wrap(TokenStream stream, SynonymMap synonymMap) {
+        return synonymMap == null || synonymMap.fst == null ? stream : new SynonymFilter(stream, synonymMap, false);
+    }
+
+    /**
+     * Prefixes synonym tokens with the word separator of {@link SynonymMap}, which no input of a map starts with,
+     * or strips that prefix again.
+     */
+    private static final class SynonymMask extends TokenFilter {
+        private final boolean mask;
+        private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+        private final TypeAttribute typeAtt = addAttribute(TypeAttribute.class);
+
+        SynonymMask(TokenStream input, boolean mask) {
+            super(input);
+            this.mask = mask;
+        }
+
+        @Override
+        public boolean incrementToken() throws IOException {
+            if (input.incrementToken() == false) return false;
+            if (SynonymFilter.TYPE_SYNONYM.equals(typeAtt.type()) == false) return true;
+
+            int length = termAtt.length();
+            if (mask) {
+                var buffer = termAtt.resizeBuffer(length + 1);
+                System.arraycopy(buffer, 0, buffer, 1, length);
+                buffer[0] = SynonymMap.WORD_SEPARATOR;
+                termAtt.setLength(length + 1);
+            } else if (length > 0 && termAtt.charAt(0) == SynonymMap.WORD_SEPARATOR) {
+                var buffer = termAtt.buffer();
+                System.arraycopy(buffer, 1, buffer, 0, length - 1);
+                termAtt.setLength(length - 1);
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public void end() throws IOException {
+        delegate.end();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
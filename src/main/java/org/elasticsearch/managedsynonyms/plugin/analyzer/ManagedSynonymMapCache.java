@@ -0,0 +1,160 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+
+package org.elasticsearch.managedsynonyms.plugin.analyzer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.util.CharsRef;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymFile;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shares synonym maps between all indices on a node that analyze a managed synonyms filter the same way.
+ *
+ * Entries are keyed by the filter name and a fingerprint of the analysis chain in front of it; the synonym file
+ * version is tracked by the {@link ManagedSynonymMapHolder} itself, so one holder follows the file as it changes.
+ * Each entry remembers which indices use it and is dropped once the last of them has been removed from the node.
+ *
+ * Every index brings its own analysis chain, whose components are closed along with the index. An entry therefore
+ * keeps the {@link MapBuilder} of each index using it and rebuilds with one of an index still on the node; only the
+ * analyzed term cache is shared, since chains with the same key analyze terms identically.
+ */
+public class ManagedSynonymMapCache {
+    private static final Logger logger = LogManager.getLogger(ManagedSynonymMapCache.class);
+
+    private static final ManagedSynonymMapCache instance = new ManagedSynonymMapCache();
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    public static ManagedSynonymMapCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Builds synonym maps with the analysis chain of one index.
+     */
+    @FunctionalInterface
+    public interface MapBuilder {
+        ManagedSynonymMapHolder.BuiltMap build(Cache<String, CharsRef> analyzedTerms, Collection<ManagedSynonymSet> sets);
+    }
+
+    /**
+     * Returns the holder for the given key, building it if no other index has yet. The build runs outside the
+     * map's locks on the calling thread; other callers asking for the same key wait for it to finish.
+     * @param indexUuid the index that will use the holder, released again by {@link #release(String)}
+     * @param builder builds with the analysis chain of that index, used until the index is released
+     */
+    public ManagedSynonymMapHolder acquire(
+        String key,
+        String indexUuid,
+        ManagedSynonymFile file,
+        ByteSizeValue analyzedTermCacheSize,
+        MapBuilder builder
+    ) {
+        var created = new Entry[1];
+        var entry = entries.compute(key, (k, existing) -> {
+            var ret = existing;
+            if (ret == null) {
+                ret = new Entry(ManagedSynonymParser.newAnalyzedTermCache(analyzedTermCacheSize));
+                created[0] = ret;
+            }
+            ret.builders.put(indexUuid, builder);
+            if (ret.builder == null) ret.useBuilderOf(indexUuid);
+            return ret;
+        });
+
+        if (created[0] == entry) {
+            try {
+                entry.holder.complete(new ManagedSynonymMapHolder(file, entry::build));
+            } catch (RuntimeException e) {
+                entries.remove(key, entry);
+                entry.holder.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            return entry.holder.join();
+        } catch (CompletionException e) {
+            // another caller's build failed, it has dropped the entry already
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Called once an index has been removed from the node, drops the maps nothing else uses. Maps still used by
+     * other indices are rebuilt with the analysis chain of one of those from now on.
+     */
+    public void release(String indexUuid) {
+        for (var key : entries.keySet()) {
+            entries.computeIfPresent(key, (k, entry) -> {
+                if (entry.builders.remove(indexUuid) == null) return entry;
+                if (entry.builders.isEmpty()) {
+                    logger.debug("Releasing managed synonyms map [" + k + "]");
+                    // a holder still being built is released as soon as it is done
+                    entry.holder.thenAccept(ManagedSynonymMapHolder::release);
+                    return null;
+                }
+                if (indexUuid.equals(entry.builderIndexUuid)) entry.useBuilderOf(entry.builders.keySet().iterator().next());
+                return entry;
+            });
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the holders currently in the cache, for stats
+     */
+    public List<ManagedSynonymMapHolder> getHolders() {
+        var ret = new ArrayList<ManagedSynonymMapHolder>(entries.size());
+        for (var entry : entries.values()) {
+            if (entry.holder.isDone() && entry.holder.isCompletedExceptionally() == false) ret.add(entry.holder.join());
+        }
+        return ret;
+    }
+
+    private static class Entry {
+        // completed by the caller that created the entry
+        final CompletableFuture<ManagedSynonymMapHolder> holder = new CompletableFuture<ManagedSynonymMapHolder>();
+        final Cache<String, CharsRef> analyzedTerms;
+        // the builders of the indices using the entry; only changed inside compute, which holds the map's lock for the key
+        final Map<String, MapBuilder> builders = new LinkedHashMap<String, MapBuilder>();
+        // the builder the holder builds with, and the index it belongs to
+        volatile MapBuilder builder;
+        volatile String builderIndexUuid;
+
+        Entry(Cache<String, CharsRef> analyzedTerms) {
+            this.analyzedTerms = analyzedTerms;
+        }
+
+        void useBuilderOf(String indexUuid) {
+            builderIndexUuid = indexUuid;
+            builder = builders.get(indexUuid);
+        }
+
+        ManagedSynonymMapHolder.BuiltMap build(Collection<ManagedSynonymSet> sets) {
+            return builder.build(analyzedTerms, sets);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+
+package org.elasticsearch.managedsynonyms.plugin.analyzer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.analysis.synonym.SynonymMap;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.core.TimeValue;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymFile;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymJournal;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymSet;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymStore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Holds the synonym maps of one analysis chain and swaps them for newer ones when the synonym file changes.
+ *
+ * Readers always get the last published {@link Layers} straight away. If the file has moved on since they were
+ * built, a rebuild is started in the background on {@link ManagedSynonymStore#BUILD_THREAD_POOL}; token streams
+ * started after it completes use the new maps, while streams that are already running finish on the old ones.
+ *
+ * The maps are layered: a base map built from the whole file, and a delta map holding only the sets created since.
+ * Sets never share terms, so the two can be applied one after the other. As long as the file only grows, a rebuild
+ * builds just the delta. Updates, deletes, or a delta grown past {@link #MAX_DELTA_SETS} compact everything back into
+ * a new base. Explicit mappings can output terms of other sets, which the delta would then rewrite a second time,
+ * so files with explicit mappings are always rebuilt whole.
+ *
+ * The heap of the published maps is reserved on the managed synonyms circuit breaker. A build that would trip it
+ * fails, and the previous maps stay in use. A failed build is not retried for the same file version until a
+ * backoff, doubling from {@link #MIN_RETRY_DELAY_NANOS} up to {@link #MAX_RETRY_DELAY_NANOS}, has passed.
+ */
+public class ManagedSynonymMapHolder {
+    private static final Logger logger = LogManager.getLogger(ManagedSynonymMapHolder.class);
+
+    static final int MAX_DELTA_SETS = 1000;
+    static final long MIN_RETRY_DELAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    static final long MAX_RETRY_DELAY_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    private final ManagedSynonymFile file;
+    private final Function<Collection<ManagedSynonymSet>, BuiltMap> builder;
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+    private volatile Layers current;
+    // what the published maps have reserved on the breaker, guarded by this
+    private long reservedBytes = 0;
+    // the file version the last build failed for, -1 after a successful build; only written by the running rebuild
+    private volatile long failedVersion = -1;
+    private volatile long retryDelayNanos = 0;
+    private volatile long nextRetryNanos = 0;
+
+    /**
+     * Builds the initial map on the calling thread.
+     */
+    public ManagedSynonymMapHolder(ManagedSynonymFile file, Function<Collection<ManagedSynonymSet>, BuiltMap> builder) {
+        this.file = file;
+        this.builder = builder;
+        this.current = reserve(buildBase());
+    }
+
+    public ManagedSynonymFile getFile() {
+        return file;
+    }
+
+    /**
+     * @return the heap held by the FSTs of the published maps
+     */
+    public long ramBytesUsed() {
+        return ramBytesUsed(this.current);
+    }
+
+    private static long ramBytesUsed(Layers layers) {
+        return ramBytesUsed(layers.base.synonymMap) + ramBytesUsed(layers.delta == null ? null : layers.delta.synonymMap);
+    }
+
+    private static long ramBytesUsed(SynonymMap synonymMap) {
+        return synonymMap == null || synonymMap.fst == null ? 0 : synonymMap.fst.ramBytesUsed();
+    }
+
+    /**
+     * @return the most recently built maps, scheduling a rebuild if they are out of date
+     */
+    public Layers getLayers() {
+        var layers = this.current;
+        long fileVersion = file.getVersion();
+        if (layers.version != fileVersion && isRetryDue(fileVersion)) {
+            scheduleRebuild();
+        }
+        return layers;
+    }
+
+    private boolean isRetryDue(long fileVersion) {
+        return fileVersion != failedVersion || System.nanoTime() - nextRetryNanos >= 0;
+    }
+
+    public long getVersion() {
+        return current.version;
+    }
+
+    private void scheduleRebuild() {
+        if (rebuilding.compareAndSet(false, true) == false) return;
+        try {
+            ManagedSynonymStore.getInstance().getBuildExecutor().execute(this::rebuild);
+        } catch (RejectedExecutionException e) {
+            // try again on the next token stream
+            rebuilding.set(false);
+        }
+    }
+
+    private void rebuild() {
+        long fileVersion = file.getVersion();
+        try {
+            var layers = current;
+            if (layers.version == fileVersion) return;
+            long start = System.nanoTime();
+            var next = buildDelta(layers);
+            if (next != null) {
+                current = reserve(next);
+                file.getBuildStats().recordBuild(false, System.nanoTime() - start);
+            } else {
+                current = reserve(buildBase());
+            }
+            logger.debug(
+                "Rebuilt managed synonyms for [" + file.getName() + "] at version [" + current.version + "], ["
+                    + current.deltaSetCount + "] set(s) in delta"
+            );
+            failedVersion = -1;
+        } catch (RuntimeException e) {
+            file.getBuildStats().recordFailure();
+            retryDelayNanos = fileVersion == failedVersion
+                ? Math.min(retryDelayNanos * 2, MAX_RETRY_DELAY_NANOS)
+                : MIN_RETRY_DELAY_NANOS;
+            failedVersion = fileVersion;
+            nextRetryNanos = System.nanoTime() + retryDelayNanos;
+            logger.error(
+                "Could not rebuild managed synonyms for [" + file.getName() + "] at version [" + fileVersion + "], retrying in ["
+                    + TimeValue.timeValueNanos(retryDelayNanos) + "] unless the file changes",
+                e
+            );
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    /**
+     * Reserves the heap of newly built maps and releases that of the ones they replace.
+     * @throws CircuitBreakingException if the breaker has no room for the new maps
+     */
+    private synchronized Layers reserve(Layers next) {
+        long bytes = ramBytesUsed(next);
+        var breaker = ManagedSynonymStore.getInstance().getBreaker();
+        breaker.addEstimateBytesAndMaybeBreak(bytes, "managed_synonyms_map[" + file.getName() + "]");
+        breaker.addWithoutBreaking(-reservedBytes);
+        reservedBytes = bytes;
+        return next;
+    }
+
+    /**
+     * Gives back the heap reserved for the maps, once nothing uses them anymore.
+     */
+    synchronized void release() {
+        ManagedSynonymStore.getInstance().getBreaker().addWithoutBreaking(-reservedBytes);
+        reservedBytes = 0;
+    }
+
+    private Layers buildBase() {
+        // read the version first, a write that lands while building only causes one more rebuild later
+        long version = file.getVersion();
+        long start = System.nanoTime();
+        var sets = file.getSnapshotSets();
+        boolean hasExplicit = false;
+        for (var set : sets) {
+            if (set.getMode() == ManagedSynonymSet.Mode.EXPLICIT) {
+                hasExplicit = true;
+                break;
+            }
+        }
+        var base = builder.apply(sets);
+        file.getBuildStats().recordBuild(true, System.nanoTime() - start);
+        return new Layers(version, version, base, hasExplicit, null, 0);
+    }
+
+    /**
+     * Builds a new delta on top of the current base, or returns null if the changes since the base need a full rebuild.
+     */
+    private Layers buildDelta(Layers layers) {
+        if (layers.baseHasExplicit) return null;
+        var changes = file.getChangesSince(layers.baseVersion, MAX_DELTA_SETS + 1);
+        if (changes.isTruncated() || changes.getEntries().size() > MAX_DELTA_SETS) return null;
+
+        long version = layers.baseVersion;
+        var createdSetIds = new LinkedHashSet<String>();
+        for (var entry : changes.getEntries()) {
+            if (entry.getOperation() != ManagedSynonymJournal.Operation.CREATE) return null;
+            createdSetIds.add(entry.getSetId());
+            version = entry.getSeqNo();
+        }
+
+        var createdSets = new ArrayList<ManagedSynonymSet>(createdSetIds.size());
+        for (var setId : createdSetIds) {
+            var set = file.getSet(setId);
+            // deleted after the changes were read, the delete forces a full rebuild next time
+            if (set == null) continue;
+            if (set.getMode() == ManagedSynonymSet.Mode.EXPLICIT) return null;
+            createdSets.add(set);
+        }
+        BuiltMap delta = createdSets.isEmpty() ? null : builder.apply(createdSets);
+        return new Layers(version, layers.baseVersion, layers.base, false, delta, createdSets.size());
+    }
+
+    /**
+     * A built synonym map, and the set each of its analyzed outputs came from if hits are tracked.
+     */
+    public static class BuiltMap {
+        final SynonymMap synonymMap;
+        final Map<String, String> setIdsByOutput;
+
+        public BuiltMap(SynonymMap synonymMap, Map<String, String> setIdsByOutput) {
+            this.synonymMap = synonymMap;
+            this.setIdsByOutput = setIdsByOutput;
+        }
+    }
+
+    /**
+     * A consistent pair of maps; the delta is null when everything is in the base.
+     */
+    public static class Layers {
+        final long version;
+        final long baseVersion;
+        final BuiltMap base;
+        final boolean baseHasExplicit;
+        final BuiltMap delta;
+        final int deltaSetCount;
+
+        Layers(long version, long baseVersion, BuiltMap base, boolean baseHasExplicit, BuiltMap delta, int deltaSetCount) {
+            this.version = version;
+            this.baseVersion = baseVersion;
+            this.base = base;
+            this.baseHasExplicit = baseHasExplicit;
+            this.delta = delta;
+            this.deltaSetCount = deltaSetCount;
+        }
+
+        public SynonymMap getBase() {
+            return base.synonymMap;
+        }
+
+        public SynonymMap getDelta() {
+            return delta == null ? null : delta.synonymMap;
+        }
+
+        /**
+         * @return the id of the set an analyzed output came from, or null if hits are not tracked
+         */
+        public String findSetId(String output) {
+            if (delta != null && delta.setIdsByOutput != null) {
+                var setId = delta.setIdsByOutput.get(output);
+                if (setId != null) return setId;
+            }
+            return base.setIdsByOutput == null ? null : base.setIdsByOutput.get(output);
+        }
+    }
+}
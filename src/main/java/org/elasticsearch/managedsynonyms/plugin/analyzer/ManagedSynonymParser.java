@@ -6,41 +6,292 @@
  * Side Public License, v 1.
  */
 
+
 package org.elasticsearch.managedsynonyms.plugin.analyzer;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.synonym.SolrSynonymParser;
+import org.apache.lucene.analysis.synonym.SynonymMap;
 import org.apache.lucene.util.CharsRef;
 import org.apache.lucene.util.CharsRefBuilder;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.managedsynonyms.plugin.ManagedSynonymException;
+import org.elasticsearch.managedsynonyms.plugin.ManagedSynonymNormalizer;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymFormat;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymSet;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class ManagedSynonymParser extends SolrSynonymParser {
+/**
+ * Builds a {@link SynonymMap} straight from {@link ManagedSynonymSet}s, the way
+ * {@link org.apache.lucene.analysis.synonym.SolrSynonymParser} builds it from rules but without rendering the sets
+ * as text and splitting them up again. Every term of a set is analyzed once and, depending on its mode, mapped to
+ * every term of the set, to its first term, or to its targets. Without expand equivalent sets are contracted too.
+ *
+ * A term that is among its own outputs is kept as the original token rather than mapped onto itself, so it keeps its
+ * position and type. Sets written before an expansion limit was in place can have more outputs than the limit allows.
+ * Those keep the original and only their first other outputs, in the order the terms were added, up to maxExpansions
+ * tokens, so every build cuts them the same way.
+ *
+ * Analysis is the expensive part of a build and can be spread over an executor in chunks of sets. Adding the
+ * analyzed terms to the builder stays on the calling thread, in the order of the sets, so the result does not
+ * depend on how the chunks were scheduled.
+ *
+ * A term always analyzes the same way in the same chain, so analyzed terms can be kept in a cache that outlives the
+ * build. With one per chain, a rebuild after a few edits only analyzes the terms that are new.
+ */
+public class ManagedSynonymParser extends SynonymMap.Parser {
     private static final Logger logger = LogManager.getLogger(ManagedSynonymParser.class);
 
+    static final int CHUNK_SIZE = 512;
+    // rough per entry overhead of the cache on top of the characters themselves
+    private static final long CACHE_ENTRY_OVERHEAD = 96;
+
+    private final CharsRefBuilder scratch = new CharsRefBuilder();
+    private final boolean expand;
+    private final int maxExpansions;
+    private final Cache<String, CharsRef> analyzedTerms;
+    private final AtomicInteger truncatedSets = new AtomicInteger();
+    private Map<String, String> setIdsByOutput;
+    private ManagedSynonymNormalizer normalizer;
+
     public ManagedSynonymParser(boolean dedup, Analyzer analyzer) {
-        super(dedup, true, analyzer);
+        this(dedup, true, Integer.MAX_VALUE, analyzer, null);
     }
 
-    @Override
-    public void add(CharsRef input, CharsRef output, boolean includeOrig) {
-        // This condition follows up on the overridden analyze method. In case lenient was set to true and there was an
-        // exception during super.analyze we return a zero-length CharsRef for that word which caused an exception. When
-        // the synonym mappings for the words are added using the add method we skip the ones that were left empty by
-        // analyze i.e., in the case when lenient is set we only add those combinations which are non-zero-length. The
-        // else would happen only in the case when the input or output is empty and lenient is set, in which case we
-        // quietly ignore it. For more details on the control-flow see SolrSynonymParser::addInternal.
-        super.add(input, output, includeOrig);
+    /**
+     * @param maxExpansions the most outputs a single term may have
+     * @param analyzedTerms terms already analyzed by the same chain, may be null
+     */
+    public ManagedSynonymParser(
+        boolean dedup,
+        boolean expand,
+        int maxExpansions,
+        Analyzer analyzer,
+        Cache<String, CharsRef> analyzedTerms
+    ) {
+        super(dedup, analyzer);
+        this.expand = expand;
+        this.maxExpansions = maxExpansions;
+        this.analyzedTerms = analyzedTerms;
+    }
+
+    /**
+     * Normalizes every term again before analyzing it, the same way the store does, so sets stored before the
+     * filter's normalizer changed are built the way new ones are.
+     */
+    public void normalizeWith(ManagedSynonymNormalizer normalizer) {
+        this.normalizer = normalizer;
+    }
+
+    /**
+     * Remembers which set each analyzed output came from, so matches can be traced back to their sets.
+     */
+    public void trackSetOutputs() {
+        setIdsByOutput = new HashMap<String, String>();
+    }
+
+    /**
+     * @return the set id of every analyzed output, or null unless {@link #trackSetOutputs()} was called
+     */
+    public Map<String, String> getSetIdsByOutput() {
+        return setIdsByOutput;
+    }
+
+    /**
+     * @return the number of sets whose outputs were cut down to maxExpansions
+     */
+    public int getTruncatedSets() {
+        return truncatedSets.get();
+    }
+
+    /**
+     * Creates a cache of analyzed terms holding up to maxSize, least recently used terms are evicted first.
+     */
+    public static Cache<String, CharsRef> newAnalyzedTermCache(ByteSizeValue maxSize) {
+        return CacheBuilder.<String, CharsRef>builder()
+            .setMaximumWeight(maxSize.getBytes())
+            .weigher((term, analyzed) -> CACHE_ENTRY_OVERHEAD + 2L * (term.length() + analyzed.length))
+            .build();
+    }
+
+    public void addAll(Iterable<ManagedSynonymSet> sets) throws IOException {
+        for (ManagedSynonymSet set : sets) {
+            addAnalyzed(analyzeSet(set.getId(), set.getItems(), set.getMode(), set.getTargets(), scratch));
+        }
+    }
+
+    /**
+     * Analyzes the sets on the given executor, with at most parallelism chunks queued or running at once.
+     */
+    public void addAll(Collection<ManagedSynonymSet> sets, ExecutorService executor, int parallelism) throws IOException {
+        if (sets.size() <= CHUNK_SIZE || parallelism <= 1) {
+            addAll(sets);
+            return;
+        }
+
+        var chunks = new ArrayList<List<ManagedSynonymSet>>();
+        var chunk = new ArrayList<ManagedSynonymSet>(CHUNK_SIZE);
+        for (ManagedSynonymSet set : sets) {
+            chunk.add(set);
+            if (chunk.size() == CHUNK_SIZE) {
+                chunks.add(chunk);
+                chunk = new ArrayList<ManagedSynonymSet>(CHUNK_SIZE);
+            }
+        }
+        if (chunk.isEmpty() == false) chunks.add(chunk);
+
+        var pending = new ArrayDeque<Future<List<AnalyzedSet>>>();
+        int nextChunk = 0;
+        try {
+            while (nextChunk < chunks.size() || pending.isEmpty() == false) {
+                while (nextChunk < chunks.size() && pending.size() < parallelism) {
+                    var toAnalyze = chunks.get(nextChunk++);
+                    pending.add(executor.submit(() -> analyzeChunk(toAnalyze)));
+                }
+                for (AnalyzedSet analyzed : pending.poll().get()) {
+                    addAnalyzed(analyzed);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while analyzing synonyms", e);
+        } catch (ExecutionException e) {
+            var cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        } finally {
+            for (var future : pending) {
+                future.cancel(false);
+            }
+        }
     }
 
+    private List<AnalyzedSet> analyzeChunk(List<ManagedSynonymSet> chunk) throws IOException {
+        var reuse = new CharsRefBuilder();
+        var ret = new ArrayList<AnalyzedSet>(chunk.size());
+        for (ManagedSynonymSet set : chunk) {
+            ret.add(analyzeSet(set.getId(), set.getItems(), set.getMode(), set.getTargets(), reuse));
+        }
+        return ret;
+    }
+
+    public void addRule(ManagedSynonymFormat.Rule rule) throws IOException {
+        addAnalyzed(analyzeSet(null, rule.getTerms(), rule.getMode(), rule.getTargets(), scratch));
+    }
+
+    private AnalyzedSet analyzeSet(
+        String setId,
+        List<String> terms,
+        ManagedSynonymSet.Mode mode,
+        List<String> targets,
+        CharsRefBuilder reuse
+    ) throws IOException {
+        var inputs = analyzeTerms(terms, reuse);
+        if (mode == ManagedSynonymSet.Mode.EXPLICIT) {
+            return new AnalyzedSet(setId, inputs, analyzeTerms(targets, reuse));
+        }
+        if (mode == ManagedSynonymSet.Mode.CONTRACT || expand == false) {
+            return new AnalyzedSet(setId, inputs, inputs.length == 0 ? inputs : new CharsRef[] { inputs[0] });
+        }
+        return new AnalyzedSet(setId, inputs, inputs);
+    }
+
+    private CharsRef[] analyzeTerms(List<String> terms, CharsRefBuilder reuse) throws IOException {
+        var analyzed = new CharsRef[terms.size()];
+        for (int i = 0; i < analyzed.length; i++) {
+            analyzed[i] = analyzeTerm(terms.get(i), reuse);
+        }
+        return analyzed;
+    }
+
+    private CharsRef analyzeTerm(String term, CharsRefBuilder reuse) throws IOException {
+        if (normalizer != null) term = normalizer.normalize(term);
+        var cached = analyzedTerms == null ? null : analyzedTerms.get(term);
+        if (cached != null) return cached;
+
+        // analyze reuses the scratch builder, keep a copy of each term
+        var analyzed = CharsRef.deepCopyOf(analyze(term, reuse));
+        if (analyzedTerms != null) analyzedTerms.put(term, analyzed);
+        return analyzed;
+    }
+
+    private void addAnalyzed(AnalyzedSet analyzed) {
+        // the Solr parser maps a term onto itself instead, which produces the same tokens until the limit cuts it off
+        boolean truncated = false;
+        for (CharsRef input : analyzed.inputs) {
+            boolean includeOrig = contains(analyzed.outputs, input);
+            int remaining = includeOrig ? maxExpansions - 1 : maxExpansions;
+            for (CharsRef output : analyzed.outputs) {
+                if (output.equals(input)) continue;
+                if (remaining-- <= 0) {
+                    truncated = true;
+                    break;
+                }
+                add(input, output, includeOrig);
+            }
+        }
+        if (truncated) truncatedSets.incrementAndGet();
+        if (setIdsByOutput != null && analyzed.setId != null) {
+            for (CharsRef output : analyzed.outputs) {
+                // explicit targets can be shared between sets, the first set claims them
+                setIdsByOutput.putIfAbsent(output.toString(), analyzed.setId);
+            }
+        }
+    }
+
+    private static boolean contains(CharsRef[] terms, CharsRef term) {
+        for (CharsRef candidate : terms) {
+            if (candidate.equals(term)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads rules in the Solr format, one set per line.
+     */
     @Override
-    public CharsRef analyze(String text, CharsRefBuilder reuse) throws IOException {
+    public void parse(Reader in) throws IOException, ParseException {
+        var reader = new BufferedReader(in);
+        var progress = new ManagedSynonymFormat.ReadProgress();
         try {
-            return super.analyze(text, reuse);
-        } catch (IllegalArgumentException ex) {
+            ManagedSynonymFormat.Rule rule;
+            while ((rule = ManagedSynonymFormat.SOLR.readSet(reader, progress)) != null) {
+                addRule(rule);
+            }
+        } catch (ManagedSynonymException | IllegalArgumentException e) {
+            var ex = new ParseException("Invalid synonym rule at line " + progress.getLinesRead(), 0);
+            ex.initCause(e);
             throw ex;
         }
     }
+
+    private static class AnalyzedSet {
+        final String setId;
+        final CharsRef[] inputs;
+        final CharsRef[] outputs;
+
+        AnalyzedSet(String setId, CharsRef[] inputs, CharsRef[] outputs) {
+            this.setId = setId;
+            this.inputs = inputs;
+            this.outputs = outputs;
+        }
+    }
 }
@@ -12,9 +12,12 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
-import org.apache.lucene.analysis.synonym.SynonymFilter;
-import org.apache.lucene.analysis.synonym.SynonymMap;
+import org.apache.lucene.util.CharsRef;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.env.Environment;
 import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.analysis.AbstractTokenFilterFactory;
@@ -23,29 +26,59 @@ import org.elasticsearch.index.analysis.CharFilterFactory;
 import org.elasticsearch.index.analysis.CustomAnalyzer;
 import org.elasticsearch.index.analysis.TokenFilterFactory;
 import org.elasticsearch.index.analysis.TokenizerFactory;
+import org.elasticsearch.managedsynonyms.plugin.ManagedSynonymNormalizer;
 import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymSet;
 import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymStore;
 
 import java.io.IOException;
-import java.io.Reader;
-import java.io.StringReader;
+import java.util.Collection;
 import java.util.List;
 import java.util.function.Function;
 
 public class ManagedSynonymTokenFilterFactory extends AbstractTokenFilterFactory {
     private static final Logger logger = LogManager.getLogger(ManagedSynonymTokenFilterFactory.class);
 
+    public static final Setting<ByteSizeValue> ANALYZED_TERM_CACHE_SIZE_SETTING = Setting.byteSizeSetting(
+        "managed_synonyms.analyzed_term_cache.size",
+        new ByteSizeValue(64, ByteSizeUnit.MB),
+        Setting.Property.NodeScope
+    );
+
     private final String filterName;
     private final Environment environment;
+    private final Settings filterSettings;
+    private final boolean expand;
+    private final int maxExpansions;
+    private final int hitSampleInterval;
+    private final ManagedSynonymNormalizer normalizer;
 
     public ManagedSynonymTokenFilterFactory(IndexSettings indexSettings, Environment env, String name, Settings settings)
         throws IOException {
         super(indexSettings, name, settings);
         this.environment = env;
         this.filterName = name;
+        this.filterSettings = settings;
+        this.expand = settings.getAsBoolean("expand", true);
+        this.maxExpansions = settings.getAsInt("max_expansions", Integer.MAX_VALUE);
+        if (this.maxExpansions < 1) {
+            throw new IllegalArgumentException("[max_expansions] must be at least 1 for managed synonyms filter [" + name + "]");
+        }
+
+        // hit tracking is off unless asked for, then every 16th token stream is sampled by default
+        this.hitSampleInterval = settings.getAsBoolean("track_hits", false) ? settings.getAsInt("track_hits_sample_interval", 16) : 0;
+        if (this.hitSampleInterval < 0) {
+            throw new IllegalArgumentException("[track_hits_sample_interval] must be positive for managed synonyms filter [" + name + "]");
+        }
+
+        this.normalizer = ManagedSynonymNormalizer.fromString(settings.get("normalizer"));
 
         // this is return the existing file, or create a new one
-        ManagedSynonymStore.getInstance().getOrCreateSynonymFile(name);
+        var file = ManagedSynonymStore.getInstance().getOrCreateSynonymFile(name);
+        file.setNormalizer(indexSettings.getUUID(), this.normalizer);
+        file.limitMaxExpansions(indexSettings.getUUID(), this.maxExpansions);
+        // per filter quota on the heap the sets may take, on top of the node wide breaker
+        var maxStoreSize = settings.getAsBytesSize("max_store_size", null);
+        if (maxStoreSize != null) file.limitMaxRamBytes(indexSettings.getUUID(), maxStoreSize.getBytes());
 
         // TODO: update file with stored cache information if needed
     }
@@ -68,7 +101,14 @@ public class ManagedSynonymTokenFilterFactory extends AbstractTokenFilterFactory
         Function<String, TokenFilterFactory> allFilters
     ) {
         final Analyzer analyzer = buildSynonymAnalyzer(tokenizer, charFilters, previousTokenFilters, allFilters);
-        final SynonymMap synonyms = buildSynonyms(analyzer, getRulesFromSettings(environment));
+        final ManagedSynonymMapHolder synonyms = ManagedSynonymMapCache.getInstance()
+            .acquire(
+                chainFingerprint(tokenizer, charFilters, previousTokenFilters),
+                indexSettings.getUUID(),
+                ManagedSynonymStore.getInstance().getOrCreateSynonymFile(filterName),
+                ANALYZED_TERM_CACHE_SIZE_SETTING.get(environment.settings()),
+                (analyzedTerms, sets) -> buildSynonyms(analyzer, analyzedTerms, sets)
+            );
         final String name = name();
         return new TokenFilterFactory() {
             @Override
@@ -78,7 +118,7 @@ public class ManagedSynonymTokenFilterFactory extends AbstractTokenFilterFactory
 
             @Override
             public TokenStream create(TokenStream tokenStream) {
-                return synonyms.fst == null ? tokenStream : new SynonymFilter(tokenStream, synonyms, false);
+                return new ManagedSynonymFilter(tokenStream, synonyms, hitSampleInterval);
             }
 
             @Override
@@ -96,6 +136,27 @@ public class ManagedSynonymTokenFilterFactory extends AbstractTokenFilterFactory
         };
     }
 
+    /**
+     * Identifies the analysis in front of this filter: the names of the components, whatever settings the index
+     * defines for them, and the version the index was created with, which built-in components change their behaviour
+     * on. Chains with the same fingerprint analyze the synonym terms identically, whatever index they are in.
+     */
+    String chainFingerprint(TokenizerFactory tokenizer, List<CharFilterFactory> charFilters, List<TokenFilterFactory> tokenFilters) {
+        var analysisSettings = indexSettings.getSettings().getByPrefix("index.analysis.");
+        var sb = new StringBuilder(filterName).append('|').append(filterSettings.toString());
+        sb.append("|version:").append(indexSettings.getIndexVersionCreated());
+        sb.append("|tokenizer:").append(tokenizer.name()).append(analysisSettings.getByPrefix("tokenizer." + tokenizer.name() + "."));
+        for (var charFilter : charFilters) {
+            sb.append("|char_filter:").append(charFilter.name());
+            sb.append(analysisSettings.getByPrefix("char_filter." + charFilter.name() + "."));
+        }
+        for (var tokenFilter : tokenFilters) {
+            sb.append("|filter:").append(tokenFilter.name());
+            sb.append(analysisSettings.getByPrefix("filter." + tokenFilter.name() + "."));
+        }
+        return sb.toString();
+    }
+
     Analyzer buildSynonymAnalyzer(
         TokenizerFactory tokenizer,
         List<CharFilterFactory> charFilters,
@@ -109,31 +170,29 @@ public class ManagedSynonymTokenFilterFactory extends AbstractTokenFilterFactory
         );
     }
 
-    SynonymMap buildSynonyms(Analyzer analyzer, Reader rules) {
+    ManagedSynonymMapHolder.BuiltMap buildSynonyms(
+        Analyzer analyzer,
+        Cache<String, CharsRef> analyzedTerms,
+        Collection<ManagedSynonymSet> sets
+    ) {
         try {
-            logger.info("Building managed synonyms for " + this.filterName);
-            SynonymMap.Builder parser = new ManagedSynonymParser(true, analyzer);
-            ((ManagedSynonymParser) parser).parse(rules);
-            return parser.build();
+            logger.info("Building managed synonyms for " + this.filterName + " from " + sets.size() + " set(s)");
+            var parser = new ManagedSynonymParser(true, expand, maxExpansions, analyzer, analyzedTerms);
+            parser.normalizeWith(normalizer);
+            if (hitSampleInterval > 0) parser.trackSetOutputs();
+            var store = ManagedSynonymStore.getInstance();
+            parser.addAll(sets, store.getAnalyzeExecutor(), store.getAnalyzeParallelism());
+            var synonymMap = parser.build();
+            if (parser.getTruncatedSets() > 0) {
+                logger.warn(
+                    parser.getTruncatedSets() + " managed synonym set(s) in " + this.filterName + " cut down to " + maxExpansions + " expansions"
+                );
+            }
+            store.getOrCreateSynonymFile(this.filterName).setTruncatedSets(parser.getTruncatedSets());
+            return new ManagedSynonymMapHolder.BuiltMap(synonymMap, parser.getSetIdsByOutput());
         } catch (Exception e) {
             throw new IllegalArgumentException("failed to build synonyms", e);
         }
     }
 
-    Reader getRulesFromSettings(Environment env) {
-        logger.info("Getting managed synonyms for " + this.filterName);
-        var synonyms = ManagedSynonymStore.getInstance().getSynonymFile(this.filterName);
-        if (synonyms == null) {
-            throw new IllegalArgumentException("could not find synonym store for: " + this.filterName);
-        }
-
-        var rulesList = synonyms.getAll();
-        logger.info("Found " + rulesList.size() + " managed synonym set(s)");
-        StringBuilder sb = new StringBuilder();
-        for (ManagedSynonymSet set : rulesList) {
-            sb.append(set.synonymsToString()).append(System.lineSeparator());
-        }
-        return new StringReader(sb.toString());
-    }
-
 }
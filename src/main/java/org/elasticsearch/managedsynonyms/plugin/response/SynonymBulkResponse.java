@@ -0,0 +1,84 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.managedsynonyms.plugin.response;
+
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContentObject;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymBulkOperation;
+import org.elasticsearch.rest.RestStatus;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+public class SynonymBulkResponse extends ActionResponse implements ToXContentObject {
+    private final List<ManagedSynonymBulkOperation> operations;
+    private final long tookInMillis;
+
+    public SynonymBulkResponse(List<ManagedSynonymBulkOperation> operations, long tookInMillis) {
+        this.operations = operations;
+        this.tookInMillis = tookInMillis;
+    }
+
+    SynonymBulkResponse(StreamInput in) {
+        this.operations = Collections.emptyList();
+        this.tookInMillis = 0L;
+    }
+
+    public boolean hasFailures() {
+        return operations.stream().anyMatch(ManagedSynonymBulkOperation::isFailed);
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {}
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        builder.field("took", tookInMillis);
+        builder.field("errors", hasFailures());
+        builder.startArray("items");
+        for (var operation : operations) {
+            builder.startObject();
+            builder.startObject(operation.getOpType().getLowercase());
+            if (operation.getSetId() != null) {
+                builder.field("id", operation.getSetId());
+            }
+            builder.field("result", operation.getResult().getLowercase());
+            builder.field("status", getStatus(operation.getResult()).getStatus());
+            if (operation.isFailed()) {
+                builder.field("error", operation.getError());
+            }
+            builder.endObject();
+            builder.endObject();
+        }
+        builder.endArray();
+        builder.endObject();
+        return builder;
+    }
+
+    private static RestStatus getStatus(ManagedSynonymBulkOperation.Result result) {
+        switch (result) {
+            case CREATED:
+                return RestStatus.CREATED;
+            case NOT_FOUND:
+                return RestStatus.NOT_FOUND;
+            case CONFLICT:
+            case INVALID:
+                return RestStatus.BAD_REQUEST;
+            case REJECTED:
+                return RestStatus.TOO_MANY_REQUESTS;
+            default:
+                return RestStatus.OK;
+        }
+    }
+}
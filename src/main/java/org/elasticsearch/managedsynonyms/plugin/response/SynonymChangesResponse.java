@@ -0,0 +1,51 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.managedsynonyms.plugin.response;
+
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContentObject;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymJournal;
+
+import java.io.IOException;
+
+public class SynonymChangesResponse extends ActionResponse implements ToXContentObject {
+    private final ManagedSynonymJournal.Changes changes;
+    private final long since;
+
+    public SynonymChangesResponse(ManagedSynonymJournal.Changes changes, long since) {
+        this.changes = changes;
+        this.since = since;
+    }
+
+    SynonymChangesResponse(StreamInput in) {
+        this.changes = null;
+        this.since = 0L;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {}
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        builder.field("since", since);
+        builder.field("last_seq_no", changes.getLastSeqNo());
+        builder.field("truncated", changes.isTruncated());
+        builder.startArray("changes");
+        for (var entry : changes.getEntries()) {
+            entry.toXContent(builder, params);
+        }
+        builder.endArray();
+        builder.endObject();
+        return builder;
+    }
+}
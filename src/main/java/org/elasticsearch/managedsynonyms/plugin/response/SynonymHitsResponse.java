@@ -0,0 +1,104 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.managedsynonyms.plugin.response;
+
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContentObject;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.managedsynonyms.plugin.action.SynonymHitsAction;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymFile;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymSet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Lists the sets of a filter by how often they matched across the cluster, least used first, to find candidates for
+ * pruning. With unusedSince set, only sets that have not matched since then are listed; sets created or updated
+ * since then had no chance to match yet and are left out. The listing is flagged incomplete when hits were not
+ * counted over the whole period, because a node restarted since or did not answer.
+ */
+public class SynonymHitsResponse extends ActionResponse implements ToXContentObject {
+    private final List<SetHits> results = new ArrayList<SetHits>();
+    private final long trackingSince;
+    private final long unusedSince;
+    private final int nodes;
+    private final int failedNodes;
+    private final boolean incomplete;
+    private int total;
+
+    public SynonymHitsResponse(ManagedSynonymFile file, SynonymHitsAction.Response hits, long unusedSince, int size) {
+        this.trackingSince = hits.getTrackingSince();
+        this.unusedSince = unusedSince;
+        this.nodes = hits.getNodes().size();
+        this.failedNodes = hits.failures().size();
+        this.incomplete = failedNodes > 0 || (unusedSince > 0 && trackingSince > unusedSince);
+        for (var set : file.getSnapshotSets()) {
+            long lastHit = hits.getLastHit(set.getId());
+            if (unusedSince > 0) {
+                if (lastHit >= unusedSince) continue;
+                if (set.getCreatedTimestamp() >= unusedSince || set.getUpdatedTimestamp() >= unusedSince) continue;
+            }
+            results.add(new SetHits(set, hits.getCount(set.getId()), lastHit));
+        }
+        this.total = results.size();
+        results.sort(Comparator.comparingLong((SetHits setHits) -> setHits.count).thenComparingLong(setHits -> setHits.lastHit));
+        if (results.size() > size) results.subList(size, results.size()).clear();
+    }
+
+    SynonymHitsResponse(StreamInput in) {
+        this.trackingSince = 0;
+        this.unusedSince = 0;
+        this.nodes = 0;
+        this.failedNodes = 0;
+        this.incomplete = false;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {}
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        builder.field("tracking_since", trackingSince);
+        if (unusedSince > 0) builder.field("unused_since", unusedSince);
+        builder.field("incomplete", incomplete);
+        builder.field("nodes", nodes);
+        if (failedNodes > 0) builder.field("failed_nodes", failedNodes);
+        builder.field("total", total);
+        builder.startArray("results");
+        for (var setHits : results) {
+            builder.startObject();
+            builder.field("id", setHits.set.getId());
+            builder.field("synonyms", setHits.set.synonymsToString());
+            builder.field("hits", setHits.count);
+            if (setHits.lastHit > 0) builder.field("last_hit", setHits.lastHit);
+            builder.endObject();
+        }
+        builder.endArray();
+        builder.endObject();
+        return builder;
+    }
+
+    private static class SetHits {
+        final ManagedSynonymSet set;
+        final long count;
+        final long lastHit;
+
+        SetHits(ManagedSynonymSet set, long count, long lastHit) {
+            this.set = set;
+            this.count = count;
+            this.lastHit = lastHit;
+        }
+    }
+}
@@ -29,13 +29,26 @@ public class SynonymSetListResponse extends ActionResponse implements ToXContent
     private int pageSize;
     private int pageCount;
     private int totalCount;
+    private String searchAfter;
 
     public SynonymSetListResponse(List<ManagedSynonymSet> resultSets, int currentPage, int pageSize, int pageCount, int totalCount) {
+        this(resultSets, currentPage, pageSize, pageCount, totalCount, null);
+    }
+
+    public SynonymSetListResponse(
+        List<ManagedSynonymSet> resultSets,
+        int currentPage,
+        int pageSize,
+        int pageCount,
+        int totalCount,
+        String searchAfter
+    ) {
         this.synonymSets = new ArrayList<>(resultSets);
         this.currentPage = currentPage;
         this.pageSize = pageSize;
         this.pageCount = pageCount;
         this.totalCount = totalCount;
+        this.searchAfter = searchAfter;
     }
 
     SynonymSetListResponse(StreamInput in) {
@@ -66,9 +79,11 @@ public class SynonymSetListResponse extends ActionResponse implements ToXContent
             .field("current", currentPage)
             .field("total_pages", pageCount)
             .field("total_results", totalCount)
-            .field("size", pageSize)
-            .endObject()
-            .endObject();
+            .field("size", pageSize);
+        if (searchAfter != null) {
+            builder.field("search_after", searchAfter);
+        }
+        builder.endObject().endObject();
     }
 
 }
@@ -0,0 +1,128 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+
+package org.elasticsearch.managedsynonyms.plugin.response;
+
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContentObject;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.managedsynonyms.plugin.analyzer.ManagedSynonymMapHolder;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymFile;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymOperationStats;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymStore;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reports what the managed synonyms cost on this node, for one filter or rolled up over all of them.
+ */
+public class SynonymStatsResponse extends ActionResponse implements ToXContentObject {
+    private final Collection<ManagedSynonymFile> files;
+    private final List<ManagedSynonymMapHolder> holders;
+    private final ManagedSynonymOperationStats operationStats;
+
+    public SynonymStatsResponse(
+        Collection<ManagedSynonymFile> files,
+        List<ManagedSynonymMapHolder> holders,
+        ManagedSynonymOperationStats operationStats
+    ) {
+        this.files = files;
+        this.holders = holders;
+        this.operationStats = operationStats;
+    }
+
+    SynonymStatsResponse(StreamInput in) {
+        this.files = Collections.emptyList();
+        this.holders = Collections.emptyList();
+        this.operationStats = null;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {}
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        long totalSets = 0;
+        long totalTerms = 0;
+        long totalStoreBytes = 0;
+        long totalMapBytes = 0;
+
+        builder.startObject();
+        builder.startObject("filters");
+        for (var file : files) {
+            int sets = file.getCount();
+            int terms = file.getTermCount();
+            long storeBytes = file.ramBytesUsed();
+            long mapBytes = 0;
+            int maps = 0;
+            for (var holder : holders) {
+                if (holder.getFile() != file) continue;
+                mapBytes += holder.ramBytesUsed();
+                maps++;
+            }
+            totalSets += sets;
+            totalTerms += terms;
+            totalStoreBytes += storeBytes;
+            totalMapBytes += mapBytes;
+
+            builder.startObject(file.getName());
+            builder.field("version", file.getVersion());
+            builder.field("sets", sets);
+            builder.field("terms", terms);
+            builder.field("store_heap_bytes", storeBytes);
+            builder.startObject("synonym_maps");
+            builder.field("count", maps);
+            builder.field("heap_bytes", mapBytes);
+            builder.endObject();
+            builder.field("builds");
+            file.getBuildStats().toXContent(builder, params);
+            builder.field("write_lock");
+            file.lockStatsToXContent(builder);
+            builder.startObject("expansion_limit");
+            if (file.getMaxExpansions() < Integer.MAX_VALUE) builder.field("max_expansions", file.getMaxExpansions());
+            builder.field("rejected_writes", file.getExpansionLimitRejections());
+            builder.field("truncated_sets", file.getTruncatedSets());
+            builder.endObject();
+            builder.startObject("memory");
+            if (file.getMaxRamBytes() < Long.MAX_VALUE) builder.field("max_store_size_in_bytes", file.getMaxRamBytes());
+            builder.field("rejected_writes", file.getMemoryRejections());
+            builder.endObject();
+            builder.endObject();
+        }
+        builder.endObject();
+
+        builder.startObject("totals");
+        builder.field("filters", files.size());
+        builder.field("sets", totalSets);
+        builder.field("terms", totalTerms);
+        builder.field("store_heap_bytes", totalStoreBytes);
+        builder.field("synonym_maps_heap_bytes", totalMapBytes);
+        builder.endObject();
+
+        var breaker = ManagedSynonymStore.getInstance().getBreaker();
+        builder.startObject("breaker");
+        builder.field("limit_size_in_bytes", breaker.getLimit());
+        builder.field("estimated_size_in_bytes", breaker.getUsed());
+        builder.field("overhead", breaker.getOverhead());
+        builder.field("tripped", breaker.getTrippedCount());
+        builder.endObject();
+
+        if (operationStats != null) {
+            builder.field("rest");
+            operationStats.toXContent(builder, params);
+        }
+        builder.endObject();
+        return builder;
+    }
+}
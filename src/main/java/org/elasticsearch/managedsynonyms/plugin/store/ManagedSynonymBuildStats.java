@@ -0,0 +1,61 @@
+package org.elasticsearch.managedsynonyms.plugin.store;
+
+import org.elasticsearch.common.xcontent.ToXContent.Params;
+import org.elasticsearch.common.xcontent.ToXContentObject;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the synonym map builds of one {@link ManagedSynonymFile}, across every analysis chain that uses it.
+ */
+public class ManagedSynonymBuildStats implements ToXContentObject {
+    private final LongAdder fullBuilds = new LongAdder();
+    private final LongAdder deltaBuilds = new LongAdder();
+    private final LongAdder failedBuilds = new LongAdder();
+    private final LongAdder totalBuildNanos = new LongAdder();
+    private volatile long lastBuildNanos = 0;
+    private volatile long lastBuildTimestamp = 0;
+
+    public void recordBuild(boolean full, long tookNanos) {
+        (full ? fullBuilds : deltaBuilds).increment();
+        totalBuildNanos.add(tookNanos);
+        lastBuildNanos = tookNanos;
+        lastBuildTimestamp = System.currentTimeMillis();
+    }
+
+    public void recordFailure() {
+        failedBuilds.increment();
+    }
+
+    public long getFullBuilds() {
+        return fullBuilds.sum();
+    }
+
+    public long getDeltaBuilds() {
+        return deltaBuilds.sum();
+    }
+
+    public long getFailedBuilds() {
+        return failedBuilds.sum();
+    }
+
+    public long getLastBuildNanos() {
+        return lastBuildNanos;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        builder.field("full", getFullBuilds());
+        builder.field("delta", getDeltaBuilds());
+        builder.field("failed", getFailedBuilds());
+        builder.field("total_duration_ms", TimeUnit.NANOSECONDS.toMillis(totalBuildNanos.sum()));
+        builder.field("last_duration_ms", TimeUnit.NANOSECONDS.toMillis(lastBuildNanos));
+        if (lastBuildTimestamp > 0) builder.field("last_build_timestamp", lastBuildTimestamp);
+        builder.endObject();
+        return builder;
+    }
+}
@@ -0,0 +1,120 @@
+package org.elasticsearch.managedsynonyms.plugin.store;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A single create, update or delete within a bulk request against a {@link ManagedSynonymFile}.
+ * The outcome is filled in by {@link ManagedSynonymFile#bulk(List)}.
+ */
+public class ManagedSynonymBulkOperation {
+    public enum OpType {
+        CREATE,
+        UPDATE,
+        DELETE;
+
+        public String getLowercase() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    public enum Result {
+        CREATED,
+        UPDATED,
+        DELETED,
+        NOT_FOUND,
+        CONFLICT,
+        INVALID,
+        REJECTED;
+
+        public String getLowercase() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final OpType opType;
+    private final String setId;
+    private final List<String> synonyms;
+    private final ManagedSynonymSet.Mode mode;
+    private final List<String> targets;
+
+    private Result result;
+    private ManagedSynonymSet resultSet;
+    private String error;
+
+    public ManagedSynonymBulkOperation(OpType opType, String setId, List<String> synonyms) {
+        this(opType, setId, synonyms, ManagedSynonymSet.Mode.EQUIVALENT, null);
+    }
+
+    public ManagedSynonymBulkOperation(
+        OpType opType,
+        String setId,
+        List<String> synonyms,
+        ManagedSynonymSet.Mode mode,
+        List<String> targets
+    ) {
+        this.opType = opType;
+        this.setId = setId;
+        this.synonyms = synonyms == null ? Collections.emptyList() : synonyms;
+        this.mode = mode == null ? ManagedSynonymSet.Mode.EQUIVALENT : mode;
+        this.targets = targets == null ? Collections.emptyList() : targets;
+    }
+
+    /**
+     * @return an operation that failed validation before it reached the file, which {@link ManagedSynonymFile#bulk(List)} skips
+     */
+    public static ManagedSynonymBulkOperation invalid(OpType opType, String setId, String error) {
+        var operation = new ManagedSynonymBulkOperation(opType, setId, null);
+        operation.failed(Result.INVALID, error);
+        return operation;
+    }
+
+    public OpType getOpType() {
+        return opType;
+    }
+
+    public String getSetId() {
+        return resultSet != null ? resultSet.getId() : setId;
+    }
+
+    public List<String> getSynonyms() {
+        return synonyms;
+    }
+
+    public ManagedSynonymSet.Mode getMode() {
+        return mode;
+    }
+
+    public List<String> getTargets() {
+        return targets;
+    }
+
+    public Result getResult() {
+        return result;
+    }
+
+    public ManagedSynonymSet getResultSet() {
+        return resultSet;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public boolean isFailed() {
+        return error != null;
+    }
+
+    void succeeded(Result result, ManagedSynonymSet resultSet) {
+        this.result = result;
+        this.resultSet = resultSet;
+        this.error = null;
+    }
+
+    void failed(Result result, String error) {
+        this.result = result;
+        this.resultSet = null;
+        this.error = error;
+    }
+}
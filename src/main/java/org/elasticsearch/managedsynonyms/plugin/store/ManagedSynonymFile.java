@@ -2,30 +2,82 @@ package org.elasticsearch.managedsynonyms.plugin.store;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.collect.CopyOnWriteHashMap;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.managedsynonyms.plugin.ManagedSynonymException;
+import org.elasticsearch.managedsynonyms.plugin.ManagedSynonymNormalizer;
+import org.elasticsearch.rest.RestStatus;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.locks.StampedLock;
-import java.util.stream.Collectors;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
+/**
+ * Holds the synonym sets for a single managed synonyms filter.
+ *
+ * Readers never block: the sets are published as an immutable {@link Snapshot} through a volatile
+ * reference. Writers serialize on a single lock, build the next snapshot from the current one using
+ * structurally shared {@link CopyOnWriteHashMap}s and swap it in. Terms are indexed by a
+ * {@link ManagedSynonymTermIndex}, which keeps them as the UTF-8 bytes of their sets rather than one String each.
+ *
+ * Writers also maintain a secondary index of the sets ordered by {@link ManagedSynonymSet#compareTo}
+ * (most recently updated first), so a page of sets can be served without sorting the whole file.
+ */
 public class ManagedSynonymFile {
     private static final Logger logger = LogManager.getLogger(ManagedSynonymFile.class);
 
+    // entry, node and array slot overhead per key in a CopyOnWriteHashMap, roughly
+    private static final long TRIE_ENTRY_BYTES = 64;
+    // how often an unfiltered listing is retried when a write publishes while it is being read
+    private static final int MAX_LIST_ATTEMPTS = 3;
+
     private final String name;
-    private long lastSyncTimestamp;
+    private volatile long lastSyncTimestamp;
 
-    private Map<String, ManagedSynonymSet> synonymSetIdMap = new HashMap<String, ManagedSynonymSet>();
-    private Map<String, ManagedSynonymSet> synonymSetTermMap = new HashMap<String, ManagedSynonymSet>();
-    private Set<String> updatedSetIds = new HashSet<String>();
-    private Set<String> deletedSetIds = new HashSet<String>();
-    private StampedLock setLock = new StampedLock();
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private final ConcurrentSkipListSet<ManagedSynonymSet> setsByUpdated = new ConcurrentSkipListSet<ManagedSynonymSet>();
+    // sets dropped by the write in progress, removed from setsByUpdated once the next snapshot is published
+    private final List<ManagedSynonymSet> pendingOrderRemovals = new ArrayList<ManagedSynonymSet>();
+    private final ManagedSynonymJournal journal = new ManagedSynonymJournal();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final List<Consumer<ManagedSynonymFile>> changeListeners = new CopyOnWriteArrayList<Consumer<ManagedSynonymFile>>();
+    // the limit of every index with a filter using this file, by index uuid, only changed under the write lock
+    private final Map<String, Integer> maxExpansionsByIndex = new HashMap<String, Integer>();
+    private volatile int maxExpansions = Integer.MAX_VALUE;
+    private final LongAdder expansionLimitRejections = new LongAdder();
+    private volatile int truncatedSets = 0;
+    private final ManagedSynonymBuildStats buildStats = new ManagedSynonymBuildStats();
+    private final ManagedSynonymHitStats hitStats = new ManagedSynonymHitStats();
+    private final LongAdder lockWaits = new LongAdder();
+    private final LongAdder lockWaitNanos = new LongAdder();
+    private final LongAccumulator maxLockWaitNanos = new LongAccumulator(Math::max, 0);
+    // the quota of every index with a filter using this file, by index uuid, only changed under the write lock
+    private final Map<String, Long> maxRamBytesByIndex = new HashMap<String, Long>();
+    private volatile long maxRamBytes = Long.MAX_VALUE;
+    private volatile ManagedSynonymNormalizer normalizer = ManagedSynonymNormalizer.LOWERCASE;
+    // the normalizer of every index with a filter using this file, by index uuid, only changed under the write lock
+    private final Map<String, ManagedSynonymNormalizer> normalizersByIndex = new HashMap<String, ManagedSynonymNormalizer>();
+    private final LongAdder memoryRejections = new LongAdder();
+    // what this file has reserved on the breaker, only changed under the write lock
+    private long reservedBytes = 0;
 
     public ManagedSynonymFile(String name) {
         this.name = name;
@@ -40,93 +92,495 @@ public class ManagedSynonymFile {
         return lastSyncTimestamp;
     }
 
-    public ManagedSynonymSet getSet(String setId) {
-        var stamp = setLock.readLock();
+    public void setLastSyncTimestamp(long lastSyncTimestamp) {
+        this.lastSyncTimestamp = lastSyncTimestamp;
+    }
+
+    /**
+     * Limits the number of tokens a set may expand a term into. Every index with a filter using this file registers
+     * its limit, the smallest one of the indices still on the node applies to writes.
+     * @param indexUuid the index the filter belongs to, released again by {@link #releaseIndex(String)}
+     */
+    public void limitMaxExpansions(String indexUuid, int limit) {
+        lockForWrite();
         try {
-            if (synonymSetIdMap.containsKey(setId) == false) return null;
-            return synonymSetIdMap.get(setId);
+            maxExpansionsByIndex.merge(indexUuid, limit, Math::min);
+            updateMaxExpansions();
         } finally {
-            setLock.unlock(stamp);
+            writeLock.unlock();
         }
     }
 
-    public int getCount() {
-        return getCount(null);
+    private void updateMaxExpansions() {
+        int limit = Integer.MAX_VALUE;
+        for (int indexLimit : maxExpansionsByIndex.values()) {
+            limit = Math.min(limit, indexLimit);
+        }
+        maxExpansions = limit;
     }
 
-    public List<ManagedSynonymSet> getAll() {
-        var stamp = setLock.readLock();
+    public int getMaxExpansions() {
+        return maxExpansions;
+    }
+
+    /**
+     * Sets how terms are normalized. Every index with a filter using this file registers its normalizer, and they all
+     * have to agree, since the term index is keyed by the normalized terms. Once the indices that registered one
+     * normalizer have been released, another one can be registered; the sets are then normalized again and re-keyed.
+     * Normalizing is one way, so sets normalized with a folding normalizer stay folded under a lighter one.
+     * @param indexUuid the index the filter belongs to, released again by {@link #releaseIndex(String)}
+     * @throws IllegalArgumentException if another index registered a different normalizer
+     */
+    public void setNormalizer(String indexUuid, ManagedSynonymNormalizer normalizer) {
+        lockForWrite();
+        try {
+            for (var registered : normalizersByIndex.entrySet()) {
+                if (registered.getKey().equals(indexUuid) == false && registered.getValue() != normalizer) {
+                    throw new IllegalArgumentException(
+                        "managed synonyms filter ["
+                            + name
+                            + "] is already used with normalizer ["
+                            + registered.getValue().getLowercase()
+                            + "], it can't also be used with ["
+                            + normalizer.getLowercase()
+                            + "]"
+                    );
+                }
+            }
+            normalizersByIndex.put(indexUuid, normalizer);
+            if (this.normalizer != normalizer) {
+                this.normalizer = normalizer;
+                renormalize();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Forgets what the filters of an index registered, once the index has been removed from the node.
+     */
+    public void releaseIndex(String indexUuid) {
+        lockForWrite();
         try {
-            return synonymSetIdMap.entrySet().stream().map(p -> p.getValue()).collect(Collectors.toList());
+            normalizersByIndex.remove(indexUuid);
+            if (maxExpansionsByIndex.remove(indexUuid) != null) updateMaxExpansions();
+            if (maxRamBytesByIndex.remove(indexUuid) != null) updateMaxRamBytes();
         } finally {
-            setLock.unlock(stamp);
+            writeLock.unlock();
         }
     }
 
-    private boolean setHasQuery(String query, ManagedSynonymSet set) {
-        return query == null || query.length() == 0 || set.hasItem(query);
+    /**
+     * Normalizes every set again with the current normalizer and rebuilds the term index from them. Terms of
+     * different sets that now normalize the same are resolved like conflicting synced sets.
+     * Must be called while holding the write lock.
+     */
+    private void renormalize() {
+        var current = snapshot;
+        if (current.setsById.isEmpty()) return;
+        pendingOrderRemovals.addAll(current.setsById.values());
+        journal.append(ManagedSynonymJournal.Operation.RESET, ManagedSynonymJournal.Origin.SYNC, null);
+        var next = Snapshot.EMPTY;
+        for (var set : current.setsById.values()) {
+            next = addSyncedSet(next, set.normalizedWith(normalizer), null);
+        }
+        publish(next);
     }
 
-    public int getCount(String query) {
-        var stamp = setLock.readLock();
+    public ManagedSynonymNormalizer getNormalizer() {
+        return normalizer;
+    }
+
+    /**
+     * @return how many writes were rejected for expanding into more tokens than {@link #getMaxExpansions()}
+     */
+    public long getExpansionLimitRejections() {
+        return expansionLimitRejections.sum();
+    }
+
+    /**
+     * @return how many sets the last synonym map build had to cut down to the expansion limit
+     */
+    public int getTruncatedSets() {
+        return truncatedSets;
+    }
+
+    public void setTruncatedSets(int truncatedSets) {
+        this.truncatedSets = truncatedSets;
+    }
+
+    private void ensureWithinExpansionLimit(ManagedSynonymSet set) throws ManagedSynonymException {
+        int limit = maxExpansions;
+        if (set.getMaxExpansions() > limit) {
+            expansionLimitRejections.increment();
+            throw new ManagedSynonymException(
+                String.format(
+                    Locale.ROOT,
+                    "Synonym set expands into %d terms, more than the limit of %d for [%s]",
+                    set.getMaxExpansions(),
+                    limit,
+                    name
+                )
+            );
+        }
+    }
+
+    public ManagedSynonymBuildStats getBuildStats() {
+        return buildStats;
+    }
+
+    public ManagedSynonymHitStats getHitStats() {
+        return hitStats;
+    }
+
+    public int getTermCount() {
+        return snapshot.terms.size();
+    }
+
+    /**
+     * Estimates the heap held by the current snapshot: the sets themselves plus a rough per entry cost of the two
+     * hash tries indexing them. Kept up to date by every write, so it is cheap to read.
+     */
+    public long ramBytesUsed() {
+        return snapshot.ramBytes;
+    }
+
+    /**
+     * Limits the heap this file may use. Every index with a filter using this file that sets a quota registers it,
+     * the smallest one of the indices still on the node applies.
+     * @param indexUuid the index the filter belongs to, released again by {@link #releaseIndex(String)}
+     */
+    public void limitMaxRamBytes(String indexUuid, long limit) {
+        lockForWrite();
         try {
-            return synonymSetIdMap.values().stream().filter(p -> setHasQuery(query, p)).collect(Collectors.toList()).size();
+            maxRamBytesByIndex.merge(indexUuid, limit, Math::min);
+            updateMaxRamBytes();
         } finally {
-            setLock.unlock(stamp);
+            writeLock.unlock();
         }
     }
 
-    public List<ManagedSynonymSet> listSets(int page, int itemsPerPage, String query) {
-        int startIndex = (page - 1) * itemsPerPage;
+    private void updateMaxRamBytes() {
+        long limit = Long.MAX_VALUE;
+        for (long indexLimit : maxRamBytesByIndex.values()) {
+            limit = Math.min(limit, indexLimit);
+        }
+        maxRamBytes = limit;
+    }
+
+    public long getMaxRamBytes() {
+        return maxRamBytes;
+    }
+
+    /**
+     * @return how many writes were rejected for going over the quota or tripping the breaker
+     */
+    public long getMemoryRejections() {
+        return memoryRejections.sum();
+    }
+
+    /**
+     * Reserves the heap a write would take the file to, before it is applied. Writes that only shrink the file
+     * are never rejected. Must be called while holding the write lock.
+     */
+    private void reserveMemory(long nextBytes) throws ManagedSynonymException {
+        assert writeLock.isHeldByCurrentThread();
+        long delta = nextBytes - reservedBytes;
+        if (delta <= 0) return;
+        if (nextBytes > maxRamBytes) {
+            memoryRejections.increment();
+            throw new ManagedSynonymException(
+                String.format(
+                    Locale.ROOT,
+                    "Synonym sets of [%s] would use %d bytes, more than the quota of %d",
+                    name,
+                    nextBytes,
+                    maxRamBytes
+                ),
+                RestStatus.TOO_MANY_REQUESTS
+            );
+        }
+        try {
+            ManagedSynonymStore.getInstance().getBreaker().addEstimateBytesAndMaybeBreak(delta, "managed_synonyms[" + name + "]");
+        } catch (CircuitBreakingException e) {
+            memoryRejections.increment();
+            throw new ManagedSynonymException(e.getMessage(), RestStatus.TOO_MANY_REQUESTS);
+        }
+        reservedBytes = nextBytes;
+    }
 
-        List<ManagedSynonymSet> ret = null;
-        var stamp = setLock.readLock();
+    /**
+     * Brings the reservation in line with what the file actually holds. Syncs from the index are authoritative and
+     * deletes only free memory, so neither is rejected.
+     */
+    private void accountMemory(long bytes) {
+        long delta = bytes - reservedBytes;
+        if (delta == 0) return;
+        ManagedSynonymStore.getInstance().getBreaker().addWithoutBreaking(delta);
+        reservedBytes = bytes;
+    }
+
+    /**
+     * Gives back everything reserved on the breaker, for files that are being dropped.
+     */
+    void releaseMemory() {
+        lockForWrite();
         try {
-            if (startIndex >= synonymSetIdMap.size()) return new ArrayList<ManagedSynonymSet>();
-            ret = synonymSetIdMap.values().stream().filter(p -> setHasQuery(query, p)).collect(Collectors.toList());
+            accountMemory(0);
         } finally {
-            setLock.unlock(stamp);
+            writeLock.unlock();
+        }
+    }
+
+    public XContentBuilder lockStatsToXContent(XContentBuilder builder) throws IOException {
+        builder.startObject();
+        builder.field("count", lockWaits.sum());
+        builder.field("total_wait_ms", TimeUnit.NANOSECONDS.toMillis(lockWaitNanos.sum()));
+        builder.field("max_wait_ms", TimeUnit.NANOSECONDS.toMillis(maxLockWaitNanos.get()));
+        builder.endObject();
+        return builder;
+    }
+
+    private void lockForWrite() {
+        long start = System.nanoTime();
+        writeLock.lock();
+        long waited = System.nanoTime() - start;
+        lockWaits.increment();
+        lockWaitNanos.add(waited);
+        maxLockWaitNanos.accumulate(waited);
+    }
+
+    /**
+     * @return the version of the currently published snapshot, which is the journal sequence number of the last change in it
+     */
+    public long getVersion() {
+        return snapshot.version;
+    }
+
+    public ManagedSynonymSet getSet(String setId) {
+        return snapshot.setsById.get(setId);
+    }
+
+    public int getCount() {
+        return getCount(null);
+    }
+
+    public List<ManagedSynonymSet> getAll() {
+        return new ArrayList<ManagedSynonymSet>(snapshot.setsById.values());
+    }
+
+    /**
+     * @return the sets of the current snapshot, without copying them. Later writes are not reflected.
+     */
+    public Collection<ManagedSynonymSet> getSnapshotSets() {
+        return Collections.unmodifiableCollection(snapshot.setsById.values());
+    }
+
+    public int getCount(String query) {
+        return getCount(query, QueryMode.TERM);
+    }
+
+    /**
+     * Counts the sets matching the query. See {@link #listSets(int, int, String, QueryMode)} for the query semantics.
+     */
+    public int getCount(String query, QueryMode mode) {
+        return countSets(snapshot, parseQueryTerms(query, mode), mode);
+    }
+
+    public List<ManagedSynonymSet> listSets(int page, int itemsPerPage, String query) {
+        return listSets(page, itemsPerPage, query, QueryMode.TERM);
+    }
+
+    /**
+     * Lists a page of sets, most recently updated first.
+     *
+     * The query is matched exactly (after normalization) through the term index. By default it is a single term;
+     * see {@link QueryMode} for querying several comma separated terms at once.
+     */
+    public List<ManagedSynonymSet> listSets(int page, int itemsPerPage, String query, QueryMode mode) {
+        return listPage(page, itemsPerPage, query, mode).getSets();
+    }
+
+    /**
+     * Same as {@link #listSets(int, int, String, QueryMode)}, but also counts the matching sets
+     * against the same snapshot the page was read from.
+     */
+    public Page listPage(int page, int itemsPerPage, String query, QueryMode mode) {
+        int startIndex = (page - 1) * itemsPerPage;
+        var queryTerms = parseQueryTerms(query, mode);
+        if (queryTerms.isEmpty() == false) {
+            var current = snapshot;
+            var matches = findSetsForTerms(current, queryTerms, mode);
+            return new Page(collectPage(current, matches.iterator(), startIndex, itemsPerPage), matches.size());
+        }
+
+        Page result = null;
+        for (int attempt = 0; attempt < MAX_LIST_ATTEMPTS; attempt++) {
+            var current = snapshot;
+            if (startIndex >= current.setsById.size()) return new Page(new ArrayList<ManagedSynonymSet>(), current.setsById.size());
+            result = new Page(collectPage(current, setsByUpdated.iterator(), startIndex, itemsPerPage), current.setsById.size());
+            if (snapshot == current) break;
+        }
+        return result;
+    }
+
+    public List<ManagedSynonymSet> listSetsAfter(String searchAfter, int itemsPerPage, String query) throws ManagedSynonymException {
+        return listSetsAfter(searchAfter, itemsPerPage, query, QueryMode.TERM);
+    }
+
+    /**
+     * Lists the sets that sort after the given cursor, as returned by {@link ManagedSynonymSet#getSortCursor()}.
+     * This costs O(log N + page size) regardless of how deep into the file the cursor points.
+     */
+    public List<ManagedSynonymSet> listSetsAfter(String searchAfter, int itemsPerPage, String query, QueryMode mode)
+        throws ManagedSynonymException {
+        return listPageAfter(searchAfter, itemsPerPage, query, mode).getSets();
+    }
+
+    /**
+     * Same as {@link #listSetsAfter(String, int, String, QueryMode)}, but also counts the matching sets
+     * against the same snapshot the page was read from.
+     */
+    public Page listPageAfter(String searchAfter, int itemsPerPage, String query, QueryMode mode) throws ManagedSynonymException {
+        var cursorSet = parseSortCursor(searchAfter);
+        var queryTerms = parseQueryTerms(query, mode);
+        if (queryTerms.isEmpty() == false) {
+            var current = snapshot;
+            var matches = findSetsForTerms(current, queryTerms, mode);
+            return new Page(collectPage(current, matches.tailSet(cursorSet, false).iterator(), 0, itemsPerPage), matches.size());
+        }
+
+        Page result = null;
+        for (int attempt = 0; attempt < MAX_LIST_ATTEMPTS; attempt++) {
+            var current = snapshot;
+            var sets = collectPage(current, setsByUpdated.tailSet(cursorSet, false).iterator(), 0, itemsPerPage);
+            result = new Page(sets, current.setsById.size());
+            if (snapshot == current) break;
+        }
+        return result;
+    }
+
+    private static int countSets(Snapshot current, List<String> queryTerms, QueryMode mode) {
+        if (queryTerms.isEmpty()) return current.setsById.size();
+        return findSetsForTerms(current, queryTerms, mode).size();
+    }
+
+    /**
+     * Collects a page from an ordered iterator, keeping only sets that belong to the given snapshot. The ordering
+     * index is shared by all snapshots: sets are added to it before the snapshot holding them is published and
+     * removed only after the snapshot dropping them is, so filtering by snapshot yields exactly its sets. A
+     * removal racing with the iteration is caught by the callers, which retry when the snapshot moved on.
+     */
+    private static List<ManagedSynonymSet> collectPage(Snapshot current, Iterator<ManagedSynonymSet> sets, int skip, int itemsPerPage) {
+        var ret = new ArrayList<ManagedSynonymSet>(Math.min(itemsPerPage, 1024));
+        int skipped = 0;
+        while (ret.size() < itemsPerPage && sets.hasNext()) {
+            var candidate = sets.next();
+            var set = current.setsById.get(candidate.getId());
+            if (set == null || set.compareTo(candidate) != 0) continue;
+            if (skipped < skip) {
+                skipped++;
+                continue;
+            }
+            ret.add(set);
         }
+        return ret;
+    }
 
-        if (ret == null) {
-            return ret;
+    /**
+     * Normalizes the query into the terms to look up: the whole query as one term, as it has always been matched,
+     * or split on commas for the multi-term modes.
+     */
+    private List<String> parseQueryTerms(String query, QueryMode mode) {
+        if (query == null || query.length() == 0) return Collections.emptyList();
+        if (mode == QueryMode.TERM) {
+            var normalized = normalizer.normalize(query);
+            return normalized.length() == 0 ? Collections.emptyList() : Collections.singletonList(normalized);
         }
+        var terms = new ArrayList<String>();
+        for (String queryTerm : query.split(",")) {
+            var normalized = normalizer.normalize(queryTerm);
+            if (normalized.length() > 0 && terms.contains(normalized) == false) terms.add(normalized);
+        }
+        return terms;
+    }
 
-        Collections.sort(ret);
-        var limited = ret.stream().skip(startIndex).limit(itemsPerPage).collect(Collectors.toList());
-        return limited;
+    /**
+     * Resolves query terms through the term index. Every term belongs to at most one set,
+     * so matching all terms means they must all resolve to the same set.
+     */
+    private static TreeSet<ManagedSynonymSet> findSetsForTerms(Snapshot current, List<String> terms, QueryMode mode) {
+        boolean matchAll = mode == QueryMode.ALL;
+        var found = new TreeSet<ManagedSynonymSet>();
+        for (String term : terms) {
+            var set = current.terms.get(new BytesRef(term), current.setsById);
+            if (set == null) {
+                if (matchAll) return new TreeSet<ManagedSynonymSet>();
+                continue;
+            }
+            found.add(set);
+        }
+        if (matchAll && found.size() > 1) return new TreeSet<ManagedSynonymSet>();
+        return found;
+    }
+
+    private static ManagedSynonymSet parseSortCursor(String searchAfter) throws ManagedSynonymException {
+        int separator = searchAfter == null ? -1 : searchAfter.indexOf(':');
+        if (separator <= 0 || separator == searchAfter.length() - 1) {
+            throw new ManagedSynonymException("Invalid search_after cursor: " + searchAfter);
+        }
+        try {
+            long updatedTimestamp = Long.parseLong(searchAfter.substring(0, separator));
+            var setId = searchAfter.substring(separator + 1);
+            return new ManagedSynonymSet(setId, Collections.emptyList(), updatedTimestamp, updatedTimestamp);
+        } catch (NumberFormatException e) {
+            throw new ManagedSynonymException("Invalid search_after cursor: " + searchAfter);
+        }
     }
 
     public ManagedSynonymSet createSynonymSet(List<String> terms) throws ManagedSynonymException {
+        return createSynonymSet(terms, ManagedSynonymSet.Mode.EQUIVALENT, null);
+    }
+
+    public ManagedSynonymSet createSynonymSet(List<String> terms, ManagedSynonymSet.Mode mode, List<String> targets)
+        throws ManagedSynonymException {
         var newSetId = java.util.UUID.randomUUID().toString().toLowerCase();
         var newSet = new ManagedSynonymSet(newSetId, terms);
+        newSet.setMode(mode, targets);
+        newSet = newSet.normalizedWith(normalizer);
+        ensureWithinExpansionLimit(newSet);
 
-        var stamp = setLock.readLock();
+        lockForWrite();
         try {
-            var existingTerms = findAnyExistingTerms(newSet);
+            var current = snapshot;
+            var existingTerms = findAnyExistingTerms(current, newSet);
 
             if (existingTerms.size() > 0) {
                 throw new ManagedSynonymException(
                     String.format("The following terms already exist in a synonym set: %s", String.join(", ", existingTerms))
                 );
             }
+            reserveMemory(current.ramBytes + Snapshot.ramBytesOf(newSet));
 
-            stamp = setLock.tryConvertToWriteLock(stamp);
-            addSynonymTermMapping(newSet);
+            journal.append(ManagedSynonymJournal.Operation.CREATE, ManagedSynonymJournal.Origin.LOCAL, newSet.getId());
+            publish(addSynonymTermMapping(current, newSet));
             return newSet;
         } finally {
-            setLock.unlock(stamp);
+            writeLock.unlock();
         }
     }
 
     public ManagedSynonymSet updateSynonymSet(ManagedSynonymSet set) throws ManagedSynonymException {
-        var stamp = setLock.readLock();
+        set = set.normalizedWith(normalizer);
+        ensureWithinExpansionLimit(set);
+        lockForWrite();
         try {
-            if (synonymSetIdMap.containsKey(set.getId()) == false) return null;
+            var current = snapshot;
+            ManagedSynonymSet foundSet = current.setsById.get(set.getId());
+            if (foundSet == null) return null;
 
-            ManagedSynonymSet foundSet = synonymSetIdMap.get(set.getId());
-
-            var existingTerms = findAnyExistingTerms(set, foundSet);
+            var existingTerms = findAnyExistingTerms(current, set, foundSet);
 
             if (existingTerms.size() > 0) {
                 throw new ManagedSynonymException(
@@ -134,40 +588,263 @@ public class ManagedSynonymFile {
                 );
             }
 
-            stamp = setLock.tryConvertToWriteLock(stamp);
-            removeSynonymMapping(foundSet);
-            addSynonymTermMapping(set);
+            reserveMemory(current.ramBytes - Snapshot.ramBytesOf(foundSet) + Snapshot.ramBytesOf(set));
+
+            var next = removeSynonymMapping(current, foundSet);
+            journal.append(ManagedSynonymJournal.Operation.UPDATE, ManagedSynonymJournal.Origin.LOCAL, set.getId());
+            publish(addSynonymTermMapping(next, set));
             return set;
         } finally {
-            setLock.unlock(stamp);
+            writeLock.unlock();
         }
     }
 
     public boolean deleteSynonymSet(String setId) {
-        var stamp = setLock.readLock();
+        lockForWrite();
         try {
-            if (synonymSetIdMap.containsKey(setId) == false) return false;
+            var current = snapshot;
+            ManagedSynonymSet foundSet = current.setsById.get(setId);
+            if (foundSet == null) return false;
 
-            ManagedSynonymSet foundSet = synonymSetIdMap.get(setId);
-            stamp = setLock.tryConvertToWriteLock(stamp);
-            removeSynonymMapping(foundSet);
+            journal.append(ManagedSynonymJournal.Operation.DELETE, ManagedSynonymJournal.Origin.LOCAL, setId);
+            publish(removeSynonymMapping(current, foundSet));
             return true;
         } finally {
-            setLock.unlock(stamp);
+            writeLock.unlock();
         }
     }
 
+    /**
+     * Applies a batch of operations under a single write lock acquisition and publishes the result as one snapshot.
+     * Operations are validated in order against the state left by the previous ones, so term conflicts within the
+     * batch are detected as well. A failed operation does not stop the others; each one records its own outcome.
+     * Operations that already failed parsing are left as they are.
+     */
+    public List<ManagedSynonymBulkOperation> bulk(List<ManagedSynonymBulkOperation> operations) {
+        lockForWrite();
+        try {
+            var next = snapshot;
+            boolean changed = false;
+            for (var operation : operations) {
+                if (operation.isFailed()) continue;
+                switch (operation.getOpType()) {
+                    case CREATE: {
+                        var setId = operation.getSetId() != null
+                            ? operation.getSetId()
+                            : java.util.UUID.randomUUID().toString().toLowerCase(Locale.ROOT);
+                        if (next.setsById.containsKey(setId)) {
+                            operation.failed(ManagedSynonymBulkOperation.Result.CONFLICT, "Synonym set already exists: " + setId);
+                            continue;
+                        }
+                        var newSet = validateBulkMode(operation, new ManagedSynonymSet(setId, operation.getSynonyms()));
+                        if (newSet == null) continue;
+                        if (validateBulkTerms(next, operation, newSet, null) == false) continue;
+                        if (reserveBulkMemory(operation, next.ramBytes + Snapshot.ramBytesOf(newSet)) == false) continue;
+                        next = addSynonymTermMapping(next, newSet);
+                        journal.append(ManagedSynonymJournal.Operation.CREATE, ManagedSynonymJournal.Origin.LOCAL, setId);
+                        operation.succeeded(ManagedSynonymBulkOperation.Result.CREATED, newSet);
+                        changed = true;
+                        break;
+                    }
+                    case UPDATE: {
+                        var foundSet = operation.getSetId() == null ? null : next.setsById.get(operation.getSetId());
+                        if (foundSet == null) {
+                            operation.failed(ManagedSynonymBulkOperation.Result.NOT_FOUND, "Synonym set not found: " + operation.getSetId());
+                            continue;
+                        }
+                        var newSet = validateBulkMode(operation, new ManagedSynonymSet(foundSet.getId(), operation.getSynonyms()));
+                        if (newSet == null) continue;
+                        if (validateBulkTerms(next, operation, newSet, foundSet) == false) continue;
+                        long nextBytes = next.ramBytes - Snapshot.ramBytesOf(foundSet) + Snapshot.ramBytesOf(newSet);
+                        if (reserveBulkMemory(operation, nextBytes) == false) continue;
+                        next = addSynonymTermMapping(removeSynonymMapping(next, foundSet), newSet);
+                        journal.append(ManagedSynonymJournal.Operation.UPDATE, ManagedSynonymJournal.Origin.LOCAL, newSet.getId());
+                        operation.succeeded(ManagedSynonymBulkOperation.Result.UPDATED, newSet);
+                        changed = true;
+                        break;
+                    }
+                    case DELETE: {
+                        var foundSet = operation.getSetId() == null ? null : next.setsById.get(operation.getSetId());
+                        if (foundSet == null) {
+                            operation.failed(ManagedSynonymBulkOperation.Result.NOT_FOUND, "Synonym set not found: " + operation.getSetId());
+                            continue;
+                        }
+                        next = removeSynonymMapping(next, foundSet);
+                        journal.append(ManagedSynonymJournal.Operation.DELETE, ManagedSynonymJournal.Origin.LOCAL, foundSet.getId());
+                        operation.succeeded(ManagedSynonymBulkOperation.Result.DELETED, foundSet);
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+            if (changed) publish(next);
+            return operations;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return the set with its mode applied and normalized, or null if the operation failed
+     */
+    private ManagedSynonymSet validateBulkMode(ManagedSynonymBulkOperation operation, ManagedSynonymSet set) {
+        try {
+            set.setMode(operation.getMode(), operation.getTargets());
+            var normalized = set.normalizedWith(normalizer);
+            ensureWithinExpansionLimit(normalized);
+            return normalized;
+        } catch (ManagedSynonymException e) {
+            operation.failed(ManagedSynonymBulkOperation.Result.INVALID, e.getMessage());
+            return null;
+        }
+    }
+
+    private boolean reserveBulkMemory(ManagedSynonymBulkOperation operation, long nextBytes) {
+        try {
+            reserveMemory(nextBytes);
+            return true;
+        } catch (ManagedSynonymException e) {
+            operation.failed(ManagedSynonymBulkOperation.Result.REJECTED, e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean validateBulkTerms(
+        Snapshot current,
+        ManagedSynonymBulkOperation operation,
+        ManagedSynonymSet set,
+        ManagedSynonymSet ignoreSet
+    ) {
+        if (set.size() == 0) {
+            operation.failed(ManagedSynonymBulkOperation.Result.INVALID, "missing body parameter 'synonyms'");
+            return false;
+        }
+        var existingTerms = findAnyExistingTerms(current, set, ignoreSet);
+        if (existingTerms.size() > 0) {
+            operation.failed(
+                ManagedSynonymBulkOperation.Result.CONFLICT,
+                String.format(Locale.ROOT, "The following terms already exist in a synonym set: %s", String.join(", ", existingTerms))
+            );
+            return false;
+        }
+        return true;
+    }
+
     public void syncItems(List<ManagedSynonymSet> sets, boolean clearItems) {
-        var stamp = setLock.writeLock();
+        lockForWrite();
         try {
-            if (clearItems) this.clearAll();
+            var next = snapshot;
+            if (clearItems) {
+                pendingOrderRemovals.addAll(next.setsById.values());
+                next = Snapshot.EMPTY;
+                journal.append(ManagedSynonymJournal.Operation.RESET, ManagedSynonymJournal.Origin.SYNC, null);
+            }
             for (ManagedSynonymSet set : sets) {
-                var newSet = new ManagedSynonymSet(set);
-                this.addSynonymTermMapping(newSet, false);
+                var newSet = new ManagedSynonymSet(set).normalizedWith(normalizer);
+                next = addSyncedSet(next, newSet, next.setsById.get(newSet.getId()));
             }
+            publish(next);
         } finally {
-            setLock.unlock(stamp);
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Applies sets and deletions loaded from the synonyms index on top of the current snapshot.
+     * Anything that changed locally after the indexed copy was written is left alone, the local change
+     * is still on its way to the index.
+     * @param deletedSetIds the ids of deleted sets, mapped to the time they were deleted
+     */
+    public void syncItems(List<ManagedSynonymSet> sets, Map<String, Long> deletedSetIds) {
+        lockForWrite();
+        try {
+            var next = snapshot;
+            boolean changed = false;
+            for (ManagedSynonymSet set : sets) {
+                var existingSet = next.setsById.get(set.getId());
+                if (existingSet != null && existingSet.getUpdatedTimestamp() >= set.getUpdatedTimestamp()) continue;
+
+                next = addSyncedSet(next, new ManagedSynonymSet(set).normalizedWith(normalizer), existingSet);
+                changed = true;
+            }
+            for (var deleted : deletedSetIds.entrySet()) {
+                var existingSet = next.setsById.get(deleted.getKey());
+                if (existingSet == null || existingSet.getUpdatedTimestamp() > deleted.getValue()) continue;
+
+                next = removeSynonymMapping(next, existingSet);
+                journal.append(ManagedSynonymJournal.Operation.DELETE, ManagedSynonymJournal.Origin.SYNC, existingSet.getId());
+                changed = true;
+            }
+            if (changed) publish(next);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Adds a set loaded from the index in place of the existing set with its id, if any. Sets written through
+     * different nodes can claim the same term before either node has seen the other set. The set updated last
+     * keeps the term, the set id breaking ties, and the other set is rewritten without it, or dropped once it has
+     * no terms left. Every node resolves the conflict the same way whatever order the sets arrive in, so the
+     * rewrite is journaled as a synced change and not written back to the index.
+     * Must be called while holding the write lock.
+     */
+    private Snapshot addSyncedSet(Snapshot next, ManagedSynonymSet set, ManagedSynonymSet existingSet) {
+        if (existingSet != null) next = removeSynonymMapping(next, existingSet);
+
+        var lostTerms = new ArrayList<String>();
+        var takenTerms = new LinkedHashMap<String, List<String>>();
+        var terms = set.terms();
+        var term = new BytesRef();
+        for (int i = 0; i < terms.size(); i++) {
+            var owner = next.terms.get(terms.term(i, term), next.setsById);
+            if (owner == null) continue;
+            if (isUpdatedAfter(set, owner)) {
+                takenTerms.computeIfAbsent(owner.getId(), id -> new ArrayList<String>()).add(terms.get(i));
+            } else {
+                lostTerms.add(terms.get(i));
+            }
+        }
+
+        for (var taken : takenTerms.entrySet()) {
+            var owner = next.setsById.get(taken.getKey());
+            var rewritten = owner.withoutTerms(taken.getValue());
+            logger.warn(
+                "Synonym sets [" + set.getId() + "] and [" + owner.getId() + "] in [" + name + "] both hold " + taken.getValue()
+                    + ", keeping them in [" + set.getId() + "] which was updated last"
+            );
+            next = removeSynonymMapping(next, owner);
+            if (rewritten.size() > 0) {
+                next = addSynonymTermMapping(next, rewritten);
+                journal.append(ManagedSynonymJournal.Operation.UPDATE, ManagedSynonymJournal.Origin.SYNC, owner.getId());
+            } else {
+                journal.append(ManagedSynonymJournal.Operation.DELETE, ManagedSynonymJournal.Origin.SYNC, owner.getId());
+            }
+        }
+
+        if (lostTerms.isEmpty() == false) {
+            logger.warn(
+                "Synonym set [" + set.getId() + "] in [" + name + "] holds " + lostTerms
+                    + ", which belong to sets updated after it, dropping them from [" + set.getId() + "]"
+            );
+            set = set.withoutTerms(lostTerms);
         }
+        if (set.size() > 0) {
+            next = addSynonymTermMapping(next, set);
+            var operation = existingSet == null ? ManagedSynonymJournal.Operation.CREATE : ManagedSynonymJournal.Operation.UPDATE;
+            journal.append(operation, ManagedSynonymJournal.Origin.SYNC, set.getId());
+        } else if (existingSet != null) {
+            journal.append(ManagedSynonymJournal.Operation.DELETE, ManagedSynonymJournal.Origin.SYNC, set.getId());
+        }
+        return next;
+    }
+
+    /**
+     * @return true if the first set wins a term conflict against the second one
+     */
+    private static boolean isUpdatedAfter(ManagedSynonymSet set, ManagedSynonymSet other) {
+        if (set.getUpdatedTimestamp() != other.getUpdatedTimestamp()) return set.getUpdatedTimestamp() > other.getUpdatedTimestamp();
+        return set.getId().compareTo(other.getId()) > 0;
     }
 
     public Map<String, Object> toSettingsMap() {
@@ -175,101 +852,194 @@ public class ManagedSynonymFile {
         settingsMap.put("name", this.name);
 
         var dataMap = new HashMap<String, Object>();
-        var stamp = setLock.readLock();
-        try {
-            for (var set : this.synonymSetIdMap.values()) {
-                dataMap.put(set.getId(), set.toSettingsMap());
-            }
-            return settingsMap;
-        } finally {
-            setLock.unlock(stamp);
+        for (var set : snapshot.setsById.values()) {
+            dataMap.put(set.getId(), set.toSettingsMap());
         }
+        return settingsMap;
     }
 
     public static ManagedSynonymFile fromSettings(Settings settings) throws ManagedSynonymException {
         var fileName = settings.get("name");
         var sets = settings.getAsSettings("data");
 
-        var newFile = new ManagedSynonymFile(fileName);
+        var loadedSets = new ArrayList<ManagedSynonymSet>();
         for (var key : sets.keySet()) {
-            var thisSet = ManagedSynonymSet.fromSettings(sets.getAsSettings(key));
-            newFile.addSynonymTermMapping(thisSet);
+            loadedSets.add(ManagedSynonymSet.fromSettings(sets.getAsSettings(key)));
         }
+
+        var newFile = new ManagedSynonymFile(fileName);
+        newFile.syncItems(loadedSets, true);
         return newFile;
     }
 
-    public List<ManagedSynonymSet> getUpdatedSets() {
-        var ret = new ArrayList<ManagedSynonymSet>();
-        var stamp = setLock.readLock();
-        try {
-            for (var setId : this.updatedSetIds) {
-                var thisSet = this.synonymSetIdMap.get(setId);
-                if (thisSet != null) ret.add(thisSet);
-            }
-        } finally {
-            setLock.unlock(stamp);
-        }
-        return ret;
+    /**
+     * Returns the changes made to this file after the given sequence number, oldest first.
+     * If the journal no longer reaches back that far the result is flagged as truncated. Changes of a write that
+     * has not published its snapshot yet are left out, so the result never goes past {@link #getVersion()}.
+     */
+    public ManagedSynonymJournal.Changes getChangesSince(long seqNo, int maxEntries) {
+        return journal.changesSince(seqNo, maxEntries, snapshot.version);
     }
 
-    public List<String> getDeletedSets() {
-        var stamp = setLock.readLock();
-        try {
-            return new ArrayList<String>(this.deletedSetIds);
-        } finally {
-            setLock.unlock(stamp);
-        }
+    /**
+     * @return how many changes made through this node came after the one with sequence number "seqNo"
+     */
+    public long getLocalChangesSince(long seqNo) {
+        return journal.localChangesSince(seqNo);
     }
 
     /* ===== */
 
-    private void addSynonymTermMapping(ManagedSynonymSet set) {
-        addSynonymTermMapping(set, true);
+    /**
+     * Registers a listener that is called after every published change. It runs on the writing thread
+     * while the write lock is held, so it has to be cheap.
+     */
+    public void addChangeListener(Consumer<ManagedSynonymFile> listener) {
+        changeListeners.add(listener);
     }
 
-    private void addSynonymTermMapping(ManagedSynonymSet set, boolean setDirtyFlag) {
-        synonymSetIdMap.put(set.getId(), set);
-        List<String> setItems = set.getItems();
-        for (String term : setItems) {
-            synonymSetTermMap.put(term, set);
-        }
-        if (setDirtyFlag) {
-            updatedSetIds.add(set.getId());
-            deletedSetIds.remove(set.getId());
+    /**
+     * Swaps in the next snapshot. Must be called while holding the write lock.
+     */
+    private void publish(Snapshot next) {
+        assert writeLock.isHeldByCurrentThread();
+        snapshot = next.withVersion(journal.getLastSeqNo());
+        applyOrderRemovals(next);
+        accountMemory(next.ramBytes);
+        for (var listener : changeListeners) {
+            try {
+                listener.accept(this);
+            } catch (RuntimeException e) {
+                logger.warn("Managed synonym change listener failed for [" + name + "]", e);
+            }
         }
     }
 
-    private void removeSynonymMapping(ManagedSynonymSet set) {
-        synonymSetIdMap.remove(set.getId());
-        for (String term : set.getItems()) {
-            synonymSetTermMap.remove(term);
+    private Snapshot addSynonymTermMapping(Snapshot current, ManagedSynonymSet set) {
+        setsByUpdated.add(set);
+        return current.withSet(set);
+    }
+
+    private Snapshot removeSynonymMapping(Snapshot current, ManagedSynonymSet set) {
+        pendingOrderRemovals.add(set);
+        return current.withoutSet(set);
+    }
+
+    /**
+     * Drops removed sets from the ordering index once the snapshot without them is visible. A replacement that
+     * sorts the same as the removed set shares its entry, so that entry is kept.
+     */
+    private void applyOrderRemovals(Snapshot published) {
+        for (var removed : pendingOrderRemovals) {
+            var replacement = published.setsById.get(removed.getId());
+            if (replacement != null && replacement.compareTo(removed) == 0) continue;
+            setsByUpdated.remove(removed);
         }
-        deletedSetIds.add(set.getId());
-        updatedSetIds.remove(set.getId());
+        pendingOrderRemovals.clear();
     }
 
-    private List<String> findAnyExistingTerms(ManagedSynonymSet set) {
-        return findAnyExistingTerms(set, null);
+    private List<String> findAnyExistingTerms(Snapshot current, ManagedSynonymSet set) {
+        return findAnyExistingTerms(current, set, null);
     }
 
-    private List<String> findAnyExistingTerms(ManagedSynonymSet set, ManagedSynonymSet ignoreSet) {
+    private List<String> findAnyExistingTerms(Snapshot current, ManagedSynonymSet set, ManagedSynonymSet ignoreSet) {
         var existingTerms = new ArrayList<String>();
-        for (String term : set.getItems()) {
-            var mappedSet = synonymSetTermMap.get(term);
+        var terms = set.terms();
+        var term = new BytesRef();
+        for (int i = 0; i < terms.size(); i++) {
+            var mappedSet = current.terms.get(terms.term(i, term), current.setsById);
             if (mappedSet == null) continue;
 
             if (ignoreSet != null && ignoreSet == mappedSet) continue;
 
-            existingTerms.add(term);
+            existingTerms.add(terms.get(i));
         }
         return existingTerms;
     }
 
-    private void clearAll() {
-        synonymSetIdMap.clear();
-        synonymSetTermMap.clear();
-        updatedSetIds.clear();
-        deletedSetIds.clear();
+    /**
+     * How the query of a listing is matched against the term index.
+     */
+    public enum QueryMode {
+        /** the whole query is a single term, commas are stripped by normalization like in stored terms */
+        TERM,
+        /** the query is a comma separated list of terms, a set matches if it contains any of them */
+        ANY,
+        /** the query is a comma separated list of terms, a set matches if it contains all of them */
+        ALL;
+
+        public static QueryMode fromString(String mode) throws ManagedSynonymException {
+            if (mode == null) return TERM;
+            switch (mode) {
+                case "any":
+                    return ANY;
+                case "all":
+                    return ALL;
+                default:
+                    throw new ManagedSynonymException("query_mode must be one of [any, all]");
+            }
+        }
+    }
+
+    /**
+     * A page of sets together with the number of sets matching the listing, both read from the same snapshot.
+     */
+    public static final class Page {
+        private final List<ManagedSynonymSet> sets;
+        private final int totalCount;
+
+        Page(List<ManagedSynonymSet> sets, int totalCount) {
+            this.sets = sets;
+            this.totalCount = totalCount;
+        }
+
+        public List<ManagedSynonymSet> getSets() {
+            return sets;
+        }
+
+        public int getTotalCount() {
+            return totalCount;
+        }
+    }
+
+    /**
+     * An immutable view of the sets in a file. New versions share structure with the previous one,
+     * so a write only copies the paths it touches.
+     */
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(0L, new CopyOnWriteHashMap<>(), ManagedSynonymTermIndex.EMPTY, 0L);
+
+        final long version;
+        final CopyOnWriteHashMap<String, ManagedSynonymSet> setsById;
+        final ManagedSynonymTermIndex terms;
+        final long ramBytes;
+
+        Snapshot(long version, CopyOnWriteHashMap<String, ManagedSynonymSet> setsById, ManagedSynonymTermIndex terms, long ramBytes) {
+            this.version = version;
+            this.setsById = setsById;
+            this.terms = terms;
+            this.ramBytes = ramBytes;
+        }
+
+        /**
+         * @return the heap a set adds to a snapshot, itself, its entry in the id trie and its terms in the term index
+         */
+        static long ramBytesOf(ManagedSynonymSet set) {
+            return set.ramBytesUsed() + TRIE_ENTRY_BYTES + set.size() * ManagedSynonymTermIndex.BYTES_PER_TERM;
+        }
+
+        Snapshot withVersion(long newVersion) {
+            return new Snapshot(newVersion, setsById, terms, ramBytes);
+        }
+
+        Snapshot withSet(ManagedSynonymSet set) {
+            var nextSetsById = setsById.copyAndPut(set.getId(), set);
+            return new Snapshot(version, nextSetsById, terms.withSet(set, nextSetsById), ramBytes + ramBytesOf(set));
+        }
+
+        Snapshot withoutSet(ManagedSynonymSet set) {
+            return new Snapshot(version, setsById.copyAndRemove(set.getId()), terms.withoutSet(set), ramBytes - ramBytesOf(set));
+        }
     }
 
 }
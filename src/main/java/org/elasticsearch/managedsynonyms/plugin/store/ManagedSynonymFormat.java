@@ -0,0 +1,237 @@
+package org.elasticsearch.managedsynonyms.plugin.store;
+
+import org.elasticsearch.managedsynonyms.plugin.ManagedSynonymException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The text formats that synonym files can be imported from and exported to. Both are read and written
+ * one rule at a time, so a file never has to be held in memory as a whole.
+ */
+public enum ManagedSynonymFormat {
+    /**
+     * One set per line, with terms separated by commas. Explicit mappings are written as {@code a, b => c}, and
+     * contractions as an explicit mapping onto the first term.
+     */
+    SOLR {
+        @Override
+        public Rule readSet(BufferedReader reader, ReadProgress progress) throws IOException, ManagedSynonymException {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                progress.lineRead(line);
+                var trimmed = line.trim();
+                if (trimmed.length() == 0 || trimmed.startsWith("#")) continue;
+
+                int arrow = trimmed.indexOf("=>");
+                if (arrow < 0) return new Rule(splitSolrTerms(trimmed), ManagedSynonymSet.Mode.EQUIVALENT, null);
+                if (trimmed.indexOf("=>", arrow + 2) >= 0) {
+                    throw new ManagedSynonymException(
+                        "More than one explicit mapping on line [" + progress.getLinesRead() + "]: " + trimmed
+                    );
+                }
+                var inputs = splitSolrTerms(trimmed.substring(0, arrow));
+                var targets = splitSolrTerms(trimmed.substring(arrow + 2));
+                if (inputs.isEmpty() || targets.isEmpty()) {
+                    throw new ManagedSynonymException("Incomplete explicit mapping on line [" + progress.getLinesRead() + "]: " + trimmed);
+                }
+                if (targets.size() == 1 && targets.get(0).equals(inputs.get(0))) {
+                    return new Rule(inputs, ManagedSynonymSet.Mode.CONTRACT, null);
+                }
+                return new Rule(inputs, ManagedSynonymSet.Mode.EXPLICIT, targets);
+            }
+            return null;
+        }
+
+        @Override
+        public void writeSet(Writer writer, ManagedSynonymSet set, long ordinal) throws IOException {
+            writeSolrTerms(writer, set.getItems());
+            if (set.getMode() == ManagedSynonymSet.Mode.CONTRACT && set.size() > 0) {
+                writer.write(" => ");
+                writeSolrTerms(writer, set.getItems().subList(0, 1));
+            } else if (set.getMode() == ManagedSynonymSet.Mode.EXPLICIT) {
+                writer.write(" => ");
+                writeSolrTerms(writer, set.getTargets());
+            }
+            writer.write('\n');
+        }
+    },
+
+    /**
+     * The Prolog based WordNet format, e.g. {@code s(100000001,1,'woods',n,1,0).}. Consecutive lines that share
+     * a synset id make up one set. WordNet only knows about equivalent terms, so the mode of a set and the
+     * targets of explicit mappings are not exported.
+     */
+    WORDNET {
+        private static final long SYNSET_BASE = 100000000L;
+
+        @Override
+        public Rule readSet(BufferedReader reader, ReadProgress progress) throws IOException, ManagedSynonymException {
+            List<String> terms = new ArrayList<String>();
+            String currentSynset = progress.pendingSynset;
+            if (currentSynset != null) {
+                terms.add(progress.pendingTerm);
+                progress.pendingSynset = null;
+                progress.pendingTerm = null;
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                progress.lineRead(line);
+                var trimmed = line.trim();
+                if (trimmed.length() == 0) continue;
+                if (trimmed.startsWith("s(") == false) {
+                    throw new ManagedSynonymException("Malformed WordNet entry on line [" + progress.getLinesRead() + "]: " + trimmed);
+                }
+                int idEnd = trimmed.indexOf(',');
+                int termStart = trimmed.indexOf('\'');
+                int termEnd = trimmed.lastIndexOf('\'');
+                if (idEnd < 0 || termStart < 0 || termEnd <= termStart) {
+                    throw new ManagedSynonymException("Malformed WordNet entry on line [" + progress.getLinesRead() + "]: " + trimmed);
+                }
+                var synset = trimmed.substring(2, idEnd);
+                var term = trimmed.substring(termStart + 1, termEnd).replace("''", "'");
+
+                if (currentSynset == null || currentSynset.equals(synset)) {
+                    currentSynset = synset;
+                    terms.add(term);
+                    continue;
+                }
+
+                // first line of the next synset, hold on to it for the next call
+                progress.pendingSynset = synset;
+                progress.pendingTerm = term;
+                return new Rule(terms, ManagedSynonymSet.Mode.EQUIVALENT, null);
+            }
+            return terms.isEmpty() ? null : new Rule(terms, ManagedSynonymSet.Mode.EQUIVALENT, null);
+        }
+
+        @Override
+        public void writeSet(Writer writer, ManagedSynonymSet set, long ordinal) throws IOException {
+            var synset = Long.toString(SYNSET_BASE + ordinal);
+            int termNumber = 1;
+            for (String term : set.getItems()) {
+                writer.write("s(");
+                writer.write(synset);
+                writer.write(',');
+                writer.write(Integer.toString(termNumber++));
+                writer.write(",'");
+                writer.write(term.replace("'", "''"));
+                writer.write("',n,1,0).\n");
+            }
+        }
+    };
+
+    /**
+     * Reads the next set of terms.
+     * @return the next set, or null at the end of the input
+     */
+    public abstract Rule readSet(BufferedReader reader, ReadProgress progress) throws IOException, ManagedSynonymException;
+
+    /**
+     * Writes a single set.
+     * @param ordinal the position of the set in the export, used where the format needs a set identifier
+     */
+    public abstract void writeSet(Writer writer, ManagedSynonymSet set, long ordinal) throws IOException;
+
+    public String getContentType() {
+        return "text/plain; charset=UTF-8";
+    }
+
+    public static ManagedSynonymFormat fromString(String format) throws ManagedSynonymException {
+        try {
+            return ManagedSynonymFormat.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ManagedSynonymException("Unknown synonyms format [" + format + "], expected one of [solr, wordnet]");
+        }
+    }
+
+    static List<String> splitSolrTerms(String line) {
+        var terms = new ArrayList<String>();
+        var current = new StringBuilder();
+        for (int i = 0; i < line.length(); i++) {
+            char ch = line.charAt(i);
+            if (ch == '\\' && i + 1 < line.length()) {
+                current.append(line.charAt(++i));
+            } else if (ch == ',') {
+                addSolrTerm(terms, current);
+            } else {
+                current.append(ch);
+            }
+        }
+        addSolrTerm(terms, current);
+        return terms;
+    }
+
+    private static void addSolrTerm(List<String> terms, StringBuilder current) {
+        var term = current.toString().trim();
+        if (term.length() > 0) terms.add(term);
+        current.setLength(0);
+    }
+
+    private static void writeSolrTerms(Writer writer, List<String> terms) throws IOException {
+        boolean first = true;
+        for (String term : terms) {
+            if (first == false) writer.write(',');
+            writer.write(term.replace("\\", "\\\\"));
+            first = false;
+        }
+    }
+
+    /**
+     * A set as read from a file, before it has been given an id.
+     */
+    public static class Rule {
+        private final List<String> terms;
+        private final ManagedSynonymSet.Mode mode;
+        private final List<String> targets;
+
+        public Rule(List<String> terms, ManagedSynonymSet.Mode mode, List<String> targets) {
+            this.terms = terms;
+            this.mode = mode;
+            this.targets = targets;
+        }
+
+        public List<String> getTerms() {
+            return terms;
+        }
+
+        public ManagedSynonymSet.Mode getMode() {
+            return mode;
+        }
+
+        /**
+         * @return the targets of an explicit mapping, null otherwise
+         */
+        public List<String> getTargets() {
+            return targets;
+        }
+    }
+
+    /**
+     * Tracks how far a reader has got through the input, and carries state between calls to {@link #readSet}.
+     */
+    public static class ReadProgress {
+        private volatile long linesRead;
+        private volatile long charsRead;
+        private String pendingSynset;
+        private String pendingTerm;
+
+        void lineRead(String line) {
+            linesRead++;
+            charsRead += line.length() + 1;
+        }
+
+        public long getLinesRead() {
+            return linesRead;
+        }
+
+        public long getCharsRead() {
+            return charsRead;
+        }
+    }
+}
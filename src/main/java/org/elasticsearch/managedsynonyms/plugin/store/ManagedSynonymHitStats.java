@@ -0,0 +1,55 @@
+package org.elasticsearch.managedsynonyms.plugin.store;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how often the sets of a {@link ManagedSynonymFile} matched at query time on this node. Filters only
+ * sample some of their token streams, so the counts are relative rather than exact, and they start from zero
+ * whenever the node restarts.
+ */
+public class ManagedSynonymHitStats {
+    private final long trackingSince = System.currentTimeMillis();
+    private final Map<String, SetHits> hitsBySetId = new ConcurrentHashMap<String, SetHits>();
+
+    public void recordHit(String setId) {
+        hitsBySetId.computeIfAbsent(setId, k -> new SetHits()).record();
+    }
+
+    /**
+     * @return the hits of a set, or null if it was never seen to match
+     */
+    public SetHits getHits(String setId) {
+        return hitsBySetId.get(setId);
+    }
+
+    public long getTrackingSince() {
+        return trackingSince;
+    }
+
+    /**
+     * Forgets sets that no longer exist in the file.
+     */
+    public void retainAll(ManagedSynonymFile file) {
+        hitsBySetId.keySet().removeIf(setId -> file.getSet(setId) == null);
+    }
+
+    public static class SetHits {
+        private final LongAdder count = new LongAdder();
+        private volatile long lastHitTimestamp;
+
+        void record() {
+            count.increment();
+            lastHitTimestamp = System.currentTimeMillis();
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getLastHitTimestamp() {
+            return lastHitTimestamp;
+        }
+    }
+}
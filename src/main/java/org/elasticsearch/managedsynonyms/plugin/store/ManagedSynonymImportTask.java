@@ -0,0 +1,180 @@
+package org.elasticsearch.managedsynonyms.plugin.store;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.xcontent.ToXContent.Params;
+import org.elasticsearch.common.xcontent.ToXContentObject;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.managedsynonyms.plugin.ManagedSynonymException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Streams synonym sets from a text source into a {@link ManagedSynonymFile}. Sets are read one at a time and
+ * applied in batches through {@link ManagedSynonymFile#bulk(List)}, so only a single batch is materialized at once.
+ * Progress can be polled from other threads and the import can be cancelled between batches.
+ */
+public class ManagedSynonymImportTask implements ToXContentObject {
+    private static final Logger logger = LogManager.getLogger(ManagedSynonymImportTask.class);
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    public enum State {
+        PENDING,
+        RUNNING,
+        COMPLETED,
+        CANCELLED,
+        FAILED
+    }
+
+    private final String taskId;
+    private final String filterName;
+    private final ManagedSynonymFormat format;
+    private final int batchSize;
+    private final long totalBytes;
+    private final long startTime;
+    private final ManagedSynonymFormat.ReadProgress progress = new ManagedSynonymFormat.ReadProgress();
+    private final List<String> errors = new ArrayList<String>();
+
+    private volatile State state = State.PENDING;
+    private volatile boolean cancelRequested = false;
+    private volatile long setsImported = 0;
+    private volatile long setsFailed = 0;
+    private volatile long endTime = 0;
+
+    public ManagedSynonymImportTask(String taskId, String filterName, ManagedSynonymFormat format, int batchSize, long totalBytes) {
+        this.taskId = taskId;
+        this.filterName = filterName;
+        this.format = format;
+        this.batchSize = batchSize;
+        this.totalBytes = totalBytes;
+        this.startTime = System.currentTimeMillis();
+    }
+
+    public String getTaskId() {
+        return taskId;
+    }
+
+    public String getFilterName() {
+        return filterName;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isDone() {
+        return state == State.COMPLETED || state == State.CANCELLED || state == State.FAILED;
+    }
+
+    public void cancel() {
+        cancelRequested = true;
+    }
+
+    /**
+     * Runs the import to completion, cancellation or failure on the calling thread.
+     */
+    public void run(ManagedSynonymFile file, InputStream input) {
+        state = State.RUNNING;
+        try (var reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            var batch = new ArrayList<ManagedSynonymBulkOperation>(batchSize);
+            while (cancelRequested == false) {
+                ManagedSynonymFormat.Rule rule;
+                try {
+                    rule = format.readSet(reader, progress);
+                } catch (ManagedSynonymException e) {
+                    recordFailure(e.getMessage());
+                    continue;
+                }
+                if (rule == null) break;
+
+                batch.add(
+                    new ManagedSynonymBulkOperation(
+                        ManagedSynonymBulkOperation.OpType.CREATE,
+                        null,
+                        rule.getTerms(),
+                        rule.getMode(),
+                        rule.getTargets()
+                    )
+                );
+                if (batch.size() >= batchSize) {
+                    applyBatch(file, batch);
+                }
+            }
+            if (cancelRequested == false) {
+                applyBatch(file, batch);
+            }
+            state = cancelRequested ? State.CANCELLED : State.COMPLETED;
+        } catch (IOException | RuntimeException e) {
+            logger.error("Managed synonyms import [" + taskId + "] into [" + filterName + "] failed", e);
+            recordFailure(e.getMessage());
+            state = State.FAILED;
+        } finally {
+            endTime = System.currentTimeMillis();
+        }
+    }
+
+    private void applyBatch(ManagedSynonymFile file, List<ManagedSynonymBulkOperation> batch) {
+        if (batch.isEmpty()) return;
+        waitForIndexToCatchUp(file);
+        if (cancelRequested) return;
+        for (var operation : file.bulk(batch)) {
+            if (operation.isFailed()) {
+                recordFailure(operation.getError());
+            } else {
+                setsImported++;
+            }
+        }
+        batch.clear();
+    }
+
+    /**
+     * Imports are not rejected when the index flusher falls behind, they slow down until it catches up.
+     */
+    private void waitForIndexToCatchUp(ManagedSynonymFile file) {
+        while (cancelRequested == false && ManagedSynonymStore.getInstance().isBackpressured(file)) {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancelRequested = true;
+            }
+        }
+    }
+
+    private void recordFailure(String error) {
+        setsFailed++;
+        synchronized (errors) {
+            if (errors.size() < MAX_REPORTED_ERRORS) errors.add(error);
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        builder.field("task_id", taskId);
+        builder.field("filter", filterName);
+        builder.field("format", format.name().toLowerCase(Locale.ROOT));
+        builder.field("state", state.name().toLowerCase(Locale.ROOT));
+        builder.field("start_time", startTime);
+        if (endTime > 0) builder.field("end_time", endTime);
+        builder.startObject("progress");
+        builder.field("lines_read", progress.getLinesRead());
+        builder.field("chars_read", progress.getCharsRead());
+        builder.field("total_bytes", totalBytes);
+        builder.field("sets_imported", setsImported);
+        builder.field("sets_failed", setsFailed);
+        builder.endObject();
+        synchronized (errors) {
+            builder.array("errors", errors.toArray(new String[0]));
+        }
+        builder.endObject();
+        return builder;
+    }
+}
@@ -0,0 +1,486 @@
+package org.elasticsearch.managedsynonyms.plugin.store;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.core.TimeValue;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.threadpool.Scheduler;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Persists local changes to the managed synonyms index in the background.
+ *
+ * Each flush walks the change journal of every file from the last flushed sequence number, coalesces repeated
+ * edits of the same set into a single write of its current state and sends them as one bulk request. A flush runs
+ * every {@link #FLUSH_INTERVAL_SETTING}, or straight away once a file has {@link #FLUSH_MAX_ACTIONS_SETTING}
+ * unflushed changes. Only one bulk request is in flight at a time. Only local changes are pending, changes synced
+ * from the index are already persisted. While more than {@link #MAX_PENDING_CHANGES_SETTING} changes of a file are
+ * waiting, new writes to that file are rejected; the limit is capped at the capacity of the file's journal so local
+ * changes normally never drop out of it before they are flushed.
+ *
+ * If they do anyway, the file is compared against its documents in the index and the differences, including
+ * tombstones for sets deleted in the meantime, are written out over as many flushes of at most
+ * {@link #FLUSH_MAX_ACTIONS_SETTING} actions as it takes.
+ */
+public class ManagedSynonymIndexFlusher {
+    private static final Logger logger = LogManager.getLogger(ManagedSynonymIndexFlusher.class);
+
+    public static final Setting<TimeValue> FLUSH_INTERVAL_SETTING = Setting.timeSetting(
+        "managed_synonyms.flush.interval",
+        TimeValue.timeValueSeconds(1),
+        TimeValue.timeValueMillis(100),
+        Setting.Property.NodeScope
+    );
+    public static final Setting<Integer> FLUSH_MAX_ACTIONS_SETTING = Setting.intSetting(
+        "managed_synonyms.flush.max_actions",
+        1000,
+        1,
+        Setting.Property.NodeScope
+    );
+    public static final Setting<Integer> MAX_PENDING_CHANGES_SETTING = Setting.intSetting(
+        "managed_synonyms.flush.max_pending_changes",
+        8000,
+        1,
+        ManagedSynonymJournal.DEFAULT_CAPACITY,
+        Setting.Property.NodeScope
+    );
+
+    private static final int RESYNC_BATCH_SIZE = 1000;
+
+    private final Client client;
+    private final ThreadPool threadPool;
+    private final TimeValue flushInterval;
+    private final int maxActions;
+    private final int maxPendingChanges;
+
+    // identifies the documents written by this node since it started
+    private final String writerId = UUID.randomUUID().toString().toLowerCase(Locale.ROOT);
+    private final Map<String, Long> flushedSeqNos = new ConcurrentHashMap<String, Long>();
+    private final Map<String, Resync> resyncs = new ConcurrentHashMap<String, Resync>();
+    private final AtomicBoolean flushing = new AtomicBoolean(false);
+    private volatile Scheduler.Cancellable scheduledFlush;
+    private volatile boolean closed = false;
+
+    public ManagedSynonymIndexFlusher(Client client, ThreadPool threadPool, Settings settings) {
+        this.client = client;
+        this.threadPool = threadPool;
+        this.flushInterval = FLUSH_INTERVAL_SETTING.get(settings);
+        this.maxActions = FLUSH_MAX_ACTIONS_SETTING.get(settings);
+        this.maxPendingChanges = MAX_PENDING_CHANGES_SETTING.get(settings);
+    }
+
+    public void start() {
+        scheduledFlush = threadPool.scheduleWithFixedDelay(this::flushInBackground, flushInterval, ThreadPool.Names.GENERIC);
+    }
+
+    /**
+     * Stops the scheduled flushes and writes out whatever is still pending, waiting at most the given timeout.
+     */
+    public void close(TimeValue timeout) {
+        closed = true;
+        if (scheduledFlush != null) scheduledFlush.cancel();
+
+        // wait for an in-flight flush, then run a final one
+        long deadline = System.nanoTime() + timeout.nanos();
+        while (System.nanoTime() < deadline) {
+            var future = new PlainActionFuture<Boolean>();
+            flush(future);
+            try {
+                if (future.actionGet(timeout) && getPendingChanges() == 0) return;
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                logger.error("Final flush of managed synonyms failed", e);
+                break;
+            }
+        }
+        logger.warn("Could not flush managed synonyms on close, [" + getPendingChanges() + "] changes pending");
+    }
+
+    /**
+     * Called after every write to a file, to flush early once enough changes have piled up.
+     */
+    public void onFileChanged(ManagedSynonymFile file) {
+        if (closed == false && getPendingChanges(file) >= maxActions) {
+            threadPool.generic().execute(this::flushInBackground);
+        }
+    }
+
+    /**
+     * @return true while the index is too far behind on the file to accept more writes to it
+     */
+    public boolean isBackpressured(ManagedSynonymFile file) {
+        return getPendingChanges(file) > maxPendingChanges;
+    }
+
+    public long getPendingChanges() {
+        long pending = 0;
+        for (var file : ManagedSynonymStore.getInstance().getSynonymFiles()) {
+            pending += getPendingChanges(file);
+        }
+        return pending;
+    }
+
+    long getPendingChanges(ManagedSynonymFile file) {
+        return file.getLocalChangesSince(flushedSeqNos.getOrDefault(file.getName(), 0L));
+    }
+
+    private void flushInBackground() {
+        flush(ActionListener.wrap(r -> {}, e -> logger.error("Could not flush managed synonyms to index", e)));
+    }
+
+    /**
+     * Sends one bulk request with the pending changes.
+     * The listener receives false if another flush was already running and nothing was done.
+     */
+    public void flush(ActionListener<Boolean> listener) {
+        if (flushing.compareAndSet(false, true) == false) {
+            listener.onResponse(false);
+            return;
+        }
+
+        List<PendingFlush> pending;
+        var needResync = new ArrayList<ManagedSynonymFile>();
+        try {
+            pending = collectPendingChanges(ManagedSynonymStore.getInstance().getSynonymFiles(), needResync);
+        } catch (RuntimeException e) {
+            flushing.set(false);
+            listener.onFailure(e);
+            return;
+        }
+
+        if (needResync.isEmpty() == false) {
+            // work out what to rewrite first, the next flush starts sending it
+            startResyncs(needResync.iterator(), ActionListener.wrap(r -> {
+                flushing.set(false);
+                listener.onResponse(true);
+                if (closed == false) threadPool.generic().execute(this::flushInBackground);
+            }, e -> {
+                flushing.set(false);
+                listener.onFailure(e);
+            }));
+            return;
+        }
+
+        var bulkRequest = new BulkRequest();
+        for (var pendingFlush : pending) {
+            for (var request : pendingFlush.requests) {
+                bulkRequest.add(request);
+            }
+        }
+
+        if (bulkRequest.numberOfActions() == 0) {
+            // only non-local changes, nothing to write but we are caught up
+            pending.forEach(ManagedSynonymIndexFlusher.this::onFlushed);
+            flushing.set(false);
+            listener.onResponse(true);
+            return;
+        }
+
+        client.bulk(bulkRequest, new ActionListener<BulkResponse>() {
+            @Override
+            public void onResponse(BulkResponse response) {
+                int itemIndex = 0;
+                for (var pendingFlush : pending) {
+                    boolean failed = false;
+                    for (int i = 0; i < pendingFlush.requests.size(); i++) {
+                        BulkItemResponse item = response.getItems()[itemIndex++];
+                        if (item.isFailed()) {
+                            failed = true;
+                            logger.warn("Could not persist managed synonym change: " + item.getFailureMessage());
+                        }
+                    }
+                    // failed files are retried from the same sequence number on the next flush
+                    if (failed == false) onFlushed(pendingFlush);
+                }
+                flushing.set(false);
+                listener.onResponse(true);
+
+                // keep going straight away if we are still a full batch behind
+                if (closed == false && response.hasFailures() == false && getPendingChanges() >= maxActions) {
+                    threadPool.generic().execute(ManagedSynonymIndexFlusher.this::flushInBackground);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                flushing.set(false);
+                listener.onFailure(e);
+            }
+        });
+    }
+
+    private void onFlushed(PendingFlush pendingFlush) {
+        var resync = pendingFlush.resync;
+        if (resync == null) {
+            flushedSeqNos.put(pendingFlush.fileName, pendingFlush.upToSeqNo);
+            return;
+        }
+        for (int i = 0; i < pendingFlush.requests.size(); i++) {
+            resync.requests.poll();
+        }
+        if (resync.requests.isEmpty()) {
+            resyncs.remove(pendingFlush.fileName);
+            flushedSeqNos.put(pendingFlush.fileName, resync.upToSeqNo);
+        }
+    }
+
+    /**
+     * @param needResync receives the files whose journal dropped local changes that were never flushed
+     */
+    private List<PendingFlush> collectPendingChanges(Collection<ManagedSynonymFile> files, List<ManagedSynonymFile> needResync) {
+        var ret = new ArrayList<PendingFlush>();
+        int actions = 0;
+        for (var file : files) {
+            if (actions >= maxActions) break;
+
+            var resync = resyncs.get(file.getName());
+            if (resync != null) {
+                var pendingFlush = new PendingFlush(file.getName());
+                pendingFlush.resync = resync;
+                pendingFlush.upToSeqNo = resync.upToSeqNo;
+                for (var request : resync.requests) {
+                    if (actions + pendingFlush.requests.size() >= maxActions) break;
+                    pendingFlush.requests.add(request);
+                }
+                actions += pendingFlush.requests.size();
+                ret.add(pendingFlush);
+                continue;
+            }
+
+            long flushedSeqNo = flushedSeqNos.getOrDefault(file.getName(), 0L);
+            if (file.getVersion() <= flushedSeqNo) continue;
+
+            var changes = file.getChangesSince(flushedSeqNo, maxActions);
+            if (changes.isLocalChangesLost()) {
+                needResync.add(file);
+                continue;
+            }
+
+            // if only synced changes were dropped nothing of ours is missing, carry on from the oldest entry left.
+            // Repeated edits are coalesced, only the current state of each set is written
+            var pendingFlush = new PendingFlush(file.getName());
+            pendingFlush.upToSeqNo = flushedSeqNo;
+            var lastChanges = new LinkedHashMap<String, ManagedSynonymJournal.Entry>();
+            for (var entry : changes.getEntries()) {
+                pendingFlush.upToSeqNo = entry.getSeqNo();
+                if (entry.getOrigin() == ManagedSynonymJournal.Origin.LOCAL && entry.getSetId() != null) {
+                    lastChanges.put(entry.getSetId(), entry);
+                }
+            }
+            for (var lastChange : lastChanges.values()) {
+                var set = file.getSet(lastChange.getSetId());
+                if (lastChange.getOperation() == ManagedSynonymJournal.Operation.DELETE) {
+                    // re-created since, the later create is picked up by a later flush
+                    if (set != null) continue;
+                    pendingFlush.requests.add(tombstoneRequest(file.getName(), lastChange.getSetId(), lastChange.getTimestamp()));
+                } else if (set != null) {
+                    pendingFlush.requests.add(indexRequest(file.getName(), set));
+                }
+                // a created or updated set that is gone was deleted after this batch, that delete writes the tombstone
+            }
+            actions += pendingFlush.requests.size();
+            ret.add(pendingFlush);
+        }
+        return ret;
+    }
+
+    private void startResyncs(Iterator<ManagedSynonymFile> files, ActionListener<Void> listener) {
+        if (files.hasNext() == false) {
+            listener.onResponse(null);
+            return;
+        }
+        startResync(files.next(), ActionListener.wrap(r -> startResyncs(files, listener), listener::onFailure));
+    }
+
+    /**
+     * Compares a file with its documents in the index and queues the writes that bring the index up to date.
+     * Documents that this node has not seen, written by other nodes since the last sync, are left alone.
+     */
+    private void startResync(ManagedSynonymFile file, ActionListener<Void> listener) {
+        // the version is read before the sets, sets changed in between are written again for their own journal entries
+        long upToSeqNo = file.getVersion();
+        var sets = file.getSnapshotSets();
+        long syncedSeqNo = ManagedSynonymStore.getInstance().getLastSyncedSeqNo();
+        loadIndexedStates(file.getName(), null, new HashMap<String, IndexedState>(), ActionListener.wrap(indexed -> {
+            var resync = new Resync(upToSeqNo);
+            for (var set : sets) {
+                var state = indexed.remove(set.getId());
+                if (state == null || state.isStale(set, syncedSeqNo)) resync.requests.add(indexRequest(file.getName(), set));
+            }
+            long now = System.currentTimeMillis();
+            for (var state : indexed.values()) {
+                if (state.deleted || state.isKnown(syncedSeqNo) == false) continue;
+                resync.requests.add(tombstoneRequest(file.getName(), state.setId, now));
+            }
+
+            logger.warn(
+                "Journal of managed synonyms [" + file.getName() + "] dropped unflushed changes, rewriting [" + resync.requests.size()
+                    + "] documents"
+            );
+            if (resync.requests.isEmpty()) {
+                flushedSeqNos.put(file.getName(), upToSeqNo);
+            } else {
+                resyncs.put(file.getName(), resync);
+            }
+            listener.onResponse(null);
+        }, listener::onFailure));
+    }
+
+    private void loadIndexedStates(
+        String fileName,
+        Object[] searchAfter,
+        Map<String, IndexedState> states,
+        ActionListener<Map<String, IndexedState>> listener
+    ) {
+        var source = new SearchSourceBuilder().query(QueryBuilders.termQuery("synonymFile", fileName))
+            .fetchSource(new String[] { "setId", "updatedTimestamp", "deleted", "writer" }, null)
+            .seqNoAndPrimaryTerm(true)
+            .size(RESYNC_BATCH_SIZE)
+            .sort("setId", SortOrder.ASC);
+        if (searchAfter != null) {
+            source.searchAfter(searchAfter);
+        }
+
+        client.search(new SearchRequest(ManagedSynonymStore.SYNONYM_INDEX).source(source), ActionListener.wrap(response -> {
+            var hits = response.getHits().getHits();
+            for (var hit : hits) {
+                var hitSource = hit.getSourceAsMap();
+                var setId = (String) hitSource.get("setId");
+                if (setId == null) continue;
+                var updated = hitSource.get("updatedTimestamp") instanceof Number
+                    ? ((Number) hitSource.get("updatedTimestamp")).longValue()
+                    : 0L;
+                states.put(
+                    setId,
+                    new IndexedState(
+                        setId,
+                        updated,
+                        Boolean.TRUE.equals(hitSource.get("deleted")),
+                        writerId.equals(hitSource.get("writer")),
+                        hit.getSeqNo()
+                    )
+                );
+            }
+            if (hits.length < RESYNC_BATCH_SIZE) {
+                listener.onResponse(states);
+            } else {
+                loadIndexedStates(fileName, hits[hits.length - 1].getSortValues(), states, listener);
+            }
+        }, listener::onFailure));
+    }
+
+    static String documentId(String fileName, String setId) {
+        return fileName + ":" + setId;
+    }
+
+    private IndexRequest indexRequest(String fileName, ManagedSynonymSet set) {
+        Map<String, Object> source = new HashMap<String, Object>();
+        source.put("synonymFile", fileName);
+        source.put("writer", writerId);
+        source.put("setId", set.getId());
+        source.put("createdTimestamp", set.getCreatedTimestamp());
+        source.put("updatedTimestamp", set.getUpdatedTimestamp());
+        source.put("synonyms", set.getItems());
+        source.put("mode", set.getMode().getLowercase());
+        if (set.getMode() == ManagedSynonymSet.Mode.EXPLICIT) source.put("targets", set.getTargets());
+        return new IndexRequest(ManagedSynonymStore.SYNONYM_INDEX).id(documentId(fileName, set.getId())).source(source);
+    }
+
+    /**
+     * Deleted sets are kept as tombstones rather than removed, so other nodes syncing incrementally see the deletion.
+     */
+    private IndexRequest tombstoneRequest(String fileName, String setId, long deletedTimestamp) {
+        Map<String, Object> source = new HashMap<String, Object>();
+        source.put("synonymFile", fileName);
+        source.put("writer", writerId);
+        source.put("setId", setId);
+        source.put("updatedTimestamp", deletedTimestamp);
+        source.put("deleted", true);
+        return new IndexRequest(ManagedSynonymStore.SYNONYM_INDEX).id(documentId(fileName, setId)).source(source);
+    }
+
+    private static class PendingFlush {
+        final String fileName;
+        final List<DocWriteRequest<?>> requests = new ArrayList<>();
+        long upToSeqNo;
+        // set when the requests are the head of a resync queue
+        Resync resync;
+
+        PendingFlush(String fileName) {
+            this.fileName = fileName;
+        }
+    }
+
+    /**
+     * The writes left to bring the index in line with a file as of upToSeqNo. Only touched by the running flush.
+     */
+    private static class Resync {
+        final long upToSeqNo;
+        final Deque<DocWriteRequest<?>> requests = new ArrayDeque<>();
+
+        Resync(long upToSeqNo) {
+            this.upToSeqNo = upToSeqNo;
+        }
+    }
+
+    /**
+     * What the index holds for a set.
+     */
+    private static class IndexedState {
+        final String setId;
+        final long updatedTimestamp;
+        final boolean deleted;
+        final boolean writtenHere;
+        final long seqNo;
+
+        IndexedState(String setId, long updatedTimestamp, boolean deleted, boolean writtenHere, long seqNo) {
+            this.setId = setId;
+            this.updatedTimestamp = updatedTimestamp;
+            this.deleted = deleted;
+            this.writtenHere = writtenHere;
+            this.seqNo = seqNo;
+        }
+
+        /**
+         * @return true if this node wrote the document or has synced it, so its absence here is a local delete
+         */
+        boolean isKnown(long syncedSeqNo) {
+            return writtenHere || seqNo <= syncedSeqNo;
+        }
+
+        boolean isStale(ManagedSynonymSet set, long syncedSeqNo) {
+            if (set.getUpdatedTimestamp() > updatedTimestamp) return true;
+            return isKnown(syncedSeqNo) && (deleted || set.getUpdatedTimestamp() != updatedTimestamp);
+        }
+    }
+}
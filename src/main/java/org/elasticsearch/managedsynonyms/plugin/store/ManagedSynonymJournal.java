@@ -0,0 +1,206 @@
+package org.elasticsearch.managedsynonyms.plugin.store;
+
+import org.elasticsearch.common.xcontent.ToXContent.Params;
+import org.elasticsearch.common.xcontent.ToXContentObject;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A bounded, append-only log of the changes made to a {@link ManagedSynonymFile}. Every change gets a
+ * monotonically increasing sequence number, and the file's snapshot version is the sequence number of the
+ * last change applied to it. Once the log is full the oldest entries are dropped; readers asking for changes
+ * older than that are told the history was truncated and have to fall back to a full reload.
+ */
+public class ManagedSynonymJournal {
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    public enum Operation {
+        CREATE,
+        UPDATE,
+        DELETE,
+        /** every set was dropped, e.g. before a full sync */
+        RESET
+    }
+
+    public enum Origin {
+        /** changed through this node's REST API */
+        LOCAL,
+        /** loaded from the synonyms index */
+        SYNC
+    }
+
+    public static class Entry implements ToXContentObject {
+        private final long seqNo;
+        private final Operation operation;
+        private final Origin origin;
+        private final String setId;
+        private final long timestamp;
+        // how many local changes were appended up to and including this one
+        private final long localCount;
+
+        Entry(long seqNo, Operation operation, Origin origin, String setId, long timestamp, long localCount) {
+            this.seqNo = seqNo;
+            this.operation = operation;
+            this.origin = origin;
+            this.setId = setId;
+            this.timestamp = timestamp;
+            this.localCount = localCount;
+        }
+
+        public long getSeqNo() {
+            return seqNo;
+        }
+
+        public Operation getOperation() {
+            return operation;
+        }
+
+        public Origin getOrigin() {
+            return origin;
+        }
+
+        public String getSetId() {
+            return setId;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.startObject();
+            builder.field("seq_no", seqNo);
+            builder.field("operation", operation.name().toLowerCase(Locale.ROOT));
+            builder.field("origin", origin.name().toLowerCase(Locale.ROOT));
+            if (setId != null) builder.field("set_id", setId);
+            builder.field("timestamp", timestamp);
+            builder.endObject();
+            return builder;
+        }
+    }
+
+    /**
+     * The answer to {@link #changesSince(long, int, long)}.
+     */
+    public static class Changes {
+        private final List<Entry> entries;
+        private final boolean truncated;
+        private final boolean localChangesLost;
+        private final long lastSeqNo;
+
+        Changes(List<Entry> entries, boolean truncated, boolean localChangesLost, long lastSeqNo) {
+            this.entries = entries;
+            this.truncated = truncated;
+            this.localChangesLost = localChangesLost;
+            this.lastSeqNo = lastSeqNo;
+        }
+
+        public List<Entry> getEntries() {
+            return entries;
+        }
+
+        /**
+         * @return true if changes after the requested sequence number were already dropped from the journal
+         */
+        public boolean isTruncated() {
+            return truncated;
+        }
+
+        /**
+         * @return true if any of the dropped changes was made locally, false if only synced changes were lost
+         */
+        public boolean isLocalChangesLost() {
+            return localChangesLost;
+        }
+
+        /**
+         * @return the sequence number of the most recent change visible to the reader
+         */
+        public long getLastSeqNo() {
+            return lastSeqNo;
+        }
+    }
+
+    private final Entry[] entries;
+    private long lastSeqNo = 0;
+    private long lastDroppedLocalSeqNo = 0;
+    private long localCount = 0;
+
+    public ManagedSynonymJournal() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ManagedSynonymJournal(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("journal capacity must be greater than 0");
+        this.entries = new Entry[capacity];
+    }
+
+    public synchronized long append(Operation operation, Origin origin, String setId) {
+        long seqNo = ++lastSeqNo;
+        var dropped = entries[(int) (seqNo % entries.length)];
+        if (dropped != null && dropped.origin == Origin.LOCAL) lastDroppedLocalSeqNo = dropped.seqNo;
+        if (origin == Origin.LOCAL) localCount++;
+        entries[(int) (seqNo % entries.length)] = new Entry(seqNo, operation, origin, setId, System.currentTimeMillis(), localCount);
+        return seqNo;
+    }
+
+    /**
+     * Counts the local changes with a sequence number greater than the given one; synced changes never have to be
+     * written back, so they are left out. If the journal no longer reaches back that far, only the local changes
+     * it still holds are counted.
+     */
+    public synchronized long localChangesSince(long seqNo) {
+        if (seqNo >= lastSeqNo) return 0;
+        long from = Math.max(seqNo + 1, getFirstSeqNo());
+        var first = entries[(int) (from % entries.length)];
+        return localCount - first.localCount + (first.origin == Origin.LOCAL ? 1 : 0);
+    }
+
+    public synchronized long getLastSeqNo() {
+        return lastSeqNo;
+    }
+
+    /**
+     * @return the oldest sequence number still held by the journal
+     */
+    public synchronized long getFirstSeqNo() {
+        return Math.max(1, lastSeqNo - entries.length + 1);
+    }
+
+    /**
+     * Returns the changes with a sequence number greater than the given one, oldest first.
+     * @param maxEntries the maximum number of entries to return
+     */
+    public Changes changesSince(long seqNo, int maxEntries) {
+        return changesSince(seqNo, maxEntries, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns the changes with a sequence number greater than the given one and at most upToSeqNo, oldest first.
+     * Writers append to the journal before they publish the snapshot holding the change, so readers that look
+     * at the snapshot as well pass its version here to never see a change the snapshot does not have yet.
+     * @param maxEntries the maximum number of entries to return
+     */
+    public synchronized Changes changesSince(long seqNo, int maxEntries, long upToSeqNo) {
+        long last = Math.min(lastSeqNo, upToSeqNo);
+        long from = Math.max(seqNo + 1, 1);
+        long firstSeqNo = getFirstSeqNo();
+        boolean truncated = from < firstSeqNo && last > 0;
+        boolean localChangesLost = truncated && lastDroppedLocalSeqNo > seqNo;
+        if (truncated) from = firstSeqNo;
+        if (from > last) return new Changes(Collections.emptyList(), truncated, localChangesLost, last);
+
+        long to = Math.min(last, from + maxEntries - 1);
+        var ret = new ArrayList<Entry>((int) (to - from + 1));
+        for (long i = from; i <= to; i++) {
+            ret.add(entries[(int) (i % entries.length)]);
+        }
+        return new Changes(ret, truncated, localChangesLost, last);
+    }
+}
@@ -0,0 +1,56 @@
+package org.elasticsearch.managedsynonyms.plugin.store;
+
+import org.elasticsearch.common.xcontent.ToXContent.Params;
+import org.elasticsearch.common.xcontent.ToXContentObject;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the REST requests handled by the managed synonyms actions on this node, and how long they took.
+ */
+public class ManagedSynonymOperationStats implements ToXContentObject {
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Operation> operations = new ConcurrentHashMap<String, Operation>();
+
+    public void record(String action, long tookNanos) {
+        operations.computeIfAbsent(action, k -> new Operation()).record(tookNanos);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        double uptimeMinutes = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos)) / 60.0;
+        builder.startObject();
+        for (var operation : new TreeMap<String, Operation>(operations).entrySet()) {
+            long count = operation.getValue().count.sum();
+            long totalNanos = operation.getValue().totalNanos.sum();
+            builder.startObject(operation.getKey());
+            builder.field("count", count);
+            builder.field("rate_per_minute", count / uptimeMinutes);
+            builder.field("total_time_ms", TimeUnit.NANOSECONDS.toMillis(totalNanos));
+            builder.field("avg_time_ms", count == 0 ? 0.0 : totalNanos / (double) count / 1_000_000.0);
+            builder.field("max_time_ms", TimeUnit.NANOSECONDS.toMillis(operation.getValue().maxNanos.get()));
+            builder.endObject();
+        }
+        builder.endObject();
+        return builder;
+    }
+
+    private static class Operation {
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        void record(long tookNanos) {
+            count.increment();
+            totalNanos.add(tookNanos);
+            maxNanos.accumulate(tookNanos);
+        }
+    }
+}
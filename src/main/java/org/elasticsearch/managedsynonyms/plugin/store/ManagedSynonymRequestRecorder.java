@@ -0,0 +1,162 @@
+package org.elasticsearch.managedsynonyms.plugin.store;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestStatus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Appends every request handled by the managed synonyms actions to a file, one JSON object per line, so editor
+ * traffic can be replayed offline against a test node. Recording is off unless
+ * {@link #RECORDING_PATH_SETTING} is set; the file lives in the logs directory, the one place nodes may write to.
+ *
+ * Requests only queue their record, a background thread writes them out. If the disk cannot keep up and
+ * {@link #QUEUE_SIZE} records are waiting, further records are dropped rather than slowing down requests.
+ */
+public class ManagedSynonymRequestRecorder implements Closeable {
+    private static final Logger logger = LogManager.getLogger(ManagedSynonymRequestRecorder.class);
+
+    public static final Setting<String> RECORDING_PATH_SETTING = Setting.simpleString(
+        "managed_synonyms.recording.path",
+        Setting.Property.NodeScope
+    );
+    // import bodies can be huge, larger bodies are dropped and only flagged in the recording
+    public static final int MAX_RECORDED_BODY_CHARS = 1024 * 1024;
+    static final int QUEUE_SIZE = 10000;
+    // tells the writer thread to stop once everything queued before it is written
+    private static final String CLOSE_MARKER = new String("close");
+
+    private final Path path;
+    private final Writer writer;
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<String>(QUEUE_SIZE);
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writerThread;
+
+    private ManagedSynonymRequestRecorder(Path path) throws IOException {
+        this.path = path;
+        this.writer = Files.newBufferedWriter(
+            path,
+            StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.APPEND,
+            StandardOpenOption.WRITE
+        );
+        this.writerThread = EsExecutors.daemonThreadFactory("managed_synonyms_recorder").newThread(this::writeQueued);
+        this.writerThread.start();
+    }
+
+    /**
+     * @return a recorder writing to the configured file, or null if recording is off or the file cannot be opened
+     */
+    public static ManagedSynonymRequestRecorder create(Environment environment, Settings settings) {
+        var configured = RECORDING_PATH_SETTING.get(settings);
+        if (Strings.isNullOrEmpty(configured)) return null;
+
+        var logsDir = environment.logsFile().toAbsolutePath().normalize();
+        var path = logsDir.resolve(configured).normalize();
+        if (path.startsWith(logsDir) == false) {
+            throw new IllegalArgumentException("[" + RECORDING_PATH_SETTING.getKey() + "] must be inside the logs directory");
+        }
+        try {
+            logger.info("Recording managed synonyms requests to [" + path + "]");
+            return new ManagedSynonymRequestRecorder(path);
+        } catch (IOException e) {
+            logger.error("Could not open managed synonyms recording [" + path + "], requests will not be recorded", e);
+            return null;
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @param status the status of the response, null if no response was sent
+     * @param responseBody the body of the response, only kept for requests whose responses a replay needs
+     */
+    public void record(RestRequest restRequest, RestStatus status, String responseBody, long timestamp, long tookNanos) {
+        try {
+            XContentBuilder builder = XContentFactory.jsonBuilder();
+            builder.startObject();
+            builder.field("timestamp", timestamp);
+            builder.field("method", restRequest.method().name());
+            builder.field("path", restRequest.uri());
+            builder.field("filter", restRequest.param("filter"));
+            if (restRequest.hasContent()) {
+                var content = restRequest.content();
+                if (content.length() <= MAX_RECORDED_BODY_CHARS) {
+                    builder.field("body", content.utf8ToString());
+                    builder.field("content_type", restRequest.getXContentType() == null ? null : restRequest.getXContentType().mediaType());
+                } else {
+                    builder.field("body_dropped_bytes", content.length());
+                }
+            }
+            if (status != null) builder.field("status", status.getStatus());
+            if (responseBody != null) builder.field("response_body", responseBody);
+            builder.field("took_nanos", tookNanos);
+            builder.endObject();
+            if (queue.offer(Strings.toString(builder)) == false) dropped.increment();
+        } catch (IOException e) {
+            logger.warn("Could not record managed synonyms request [" + restRequest.uri() + "]", e);
+        }
+    }
+
+    /**
+     * @return how many records were dropped because the queue was full
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    private void writeQueued() {
+        try {
+            while (true) {
+                var line = queue.take();
+                if (line == CLOSE_MARKER) break;
+                try {
+                    writer.write(line);
+                    writer.write('\n');
+                    // write out in batches, but never leave records sitting in the buffer while idle
+                    if (queue.isEmpty()) writer.flush();
+                } catch (IOException e) {
+                    logger.warn("Could not write managed synonyms recording [" + path + "]", e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (queue.offer(CLOSE_MARKER, 10, TimeUnit.SECONDS)) writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writerThread.interrupt();
+        if (dropped.sum() > 0) {
+            logger.warn("Dropped [" + dropped.sum() + "] managed synonyms request records, the recording could not keep up");
+        }
+        writer.close();
+    }
+}
@@ -1,21 +1,57 @@
 package org.elasticsearch.managedsynonyms.plugin.store;
 
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.ToXContent.Params;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.managedsynonyms.plugin.ManagedSynonymException;
+import org.elasticsearch.managedsynonyms.plugin.ManagedSynonymNormalizer;
 import org.elasticsearch.managedsynonyms.plugin.ManagedSynonymTokenHelper;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
-public class ManagedSynonymSet implements Comparable<ManagedSynonymSet> {
+public class ManagedSynonymSet implements Comparable<ManagedSynonymSet>, Accountable {
+    private static final long SHALLOW_SIZE = RamUsageEstimator.shallowSizeOfInstance(ManagedSynonymSet.class);
+
+    /**
+     * How the terms of a set are applied at query time.
+     */
+    public enum Mode {
+        /** every term expands to all the others */
+        EQUIVALENT,
+        /** every term is replaced with the first one */
+        CONTRACT,
+        /** every term is replaced with the targets, e.g. {@code a, b => c} */
+        EXPLICIT;
+
+        public String getLowercase() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        public static Mode fromString(String mode) throws ManagedSynonymException {
+            if (mode == null) return EQUIVALENT;
+            try {
+                return Mode.valueOf(mode.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new ManagedSynonymException("Unknown synonym mode [" + mode + "], expected one of [equivalent, contract, explicit]");
+            }
+        }
+    }
+
     private final String setId;
-    private List<String> synonyms = new ArrayList<String>();
+    // immutable UTF-8, every change swaps in new terms so they can be shared freely
+    private PackedTerms synonyms = PackedTerms.EMPTY;
+    private Mode mode = Mode.EQUIVALENT;
+    private PackedTerms targets = PackedTerms.EMPTY;
     private long createdTimestamp;
     private long updatedTimestamp;
 
@@ -27,7 +63,9 @@ public class ManagedSynonymSet implements Comparable<ManagedSynonymSet> {
 
     public ManagedSynonymSet(ManagedSynonymSet other) {
         this.setId = other.setId;
-        this.synonyms.addAll(other.synonyms);
+        this.synonyms = other.synonyms;
+        this.mode = other.mode;
+        this.targets = other.targets;
         this.createdTimestamp = other.createdTimestamp;
         this.updatedTimestamp = other.updatedTimestamp;
     }
@@ -59,44 +97,151 @@ public class ManagedSynonymSet implements Comparable<ManagedSynonymSet> {
     }
 
     public void setList(Collection<String> listToSet) {
-        synonyms.clear();
+        synonyms = normalizeTerms(listToSet);
         updatedTimestamp = System.currentTimeMillis();
-        for (String term : listToSet) {
-            addItem(term);
+    }
+
+    /**
+     * Sets how the terms are applied. Only explicit mappings have targets, the other modes map onto the terms themselves.
+     */
+    public void setMode(Mode mode, Collection<String> targetsToSet) throws ManagedSynonymException {
+        var normalizedTargets = targetsToSet == null ? PackedTerms.EMPTY : normalizeTerms(targetsToSet);
+        if (mode == Mode.EXPLICIT && normalizedTargets.size() == 0) {
+            throw new ManagedSynonymException("Explicit synonym sets require at least one target");
+        }
+        if (mode != Mode.EXPLICIT && normalizedTargets.size() > 0) {
+            throw new ManagedSynonymException("Only explicit synonym sets can have targets");
         }
+        this.mode = mode;
+        this.targets = normalizedTargets;
+    }
+
+    private static PackedTerms normalizeTerms(Collection<String> terms) {
+        var normalizedTerms = new LinkedHashSet<String>(terms.size());
+        for (String term : terms) {
+            normalizedTerms.add(ManagedSynonymTokenHelper.normalize(term));
+        }
+        return PackedTerms.of(normalizedTerms);
+    }
+
+    /**
+     * @return this set if the normalizer leaves its terms as they are, otherwise a copy with the terms normalized again
+     */
+    public ManagedSynonymSet normalizedWith(ManagedSynonymNormalizer normalizer) {
+        if (normalizer == ManagedSynonymNormalizer.LOWERCASE) return this;
+        var renormalized = renormalize(synonyms, normalizer);
+        var renormalizedTargets = renormalize(targets, normalizer);
+        if (renormalized == synonyms && renormalizedTargets == targets) return this;
+        var copy = new ManagedSynonymSet(this);
+        copy.synonyms = renormalized;
+        copy.targets = renormalizedTargets;
+        return copy;
+    }
+
+    private static PackedTerms renormalize(PackedTerms terms, ManagedSynonymNormalizer normalizer) {
+        boolean changed = false;
+        var normalizedTerms = new LinkedHashSet<String>(terms.size());
+        for (String term : terms) {
+            var normalized = normalizer.normalize(term);
+            changed |= normalized.equals(term) == false;
+            normalizedTerms.add(normalized);
+        }
+        return changed ? PackedTerms.of(normalizedTerms) : terms;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return a read-only view of the normalized targets of an explicit mapping, empty for the other modes
+     */
+    public List<String> getTargets() {
+        return targets;
     }
 
     public boolean addItem(String newItem) {
         String normalizedSynonym = ManagedSynonymTokenHelper.normalize(newItem);
-        if (synonyms.contains(normalizedSynonym)) {
+        if (synonyms.indexOfTerm(new BytesRef(normalizedSynonym)) >= 0) {
             return false;
         }
-        synonyms.add(normalizedSynonym);
+        var newSynonyms = new ArrayList<String>(synonyms.size() + 1);
+        newSynonyms.addAll(synonyms);
+        newSynonyms.add(normalizedSynonym);
+        synonyms = PackedTerms.of(newSynonyms);
         updatedTimestamp = System.currentTimeMillis();
         return true;
     }
 
     public void clear() {
-        synonyms.clear();
+        synonyms = PackedTerms.EMPTY;
         updatedTimestamp = System.currentTimeMillis();
     }
 
     public boolean hasItem(String newItem) {
         if (newItem == null) return false;
         String normalizedSynonym = ManagedSynonymTokenHelper.normalize(newItem);
-        return synonyms.contains(normalizedSynonym);
+        return synonyms.indexOfTerm(new BytesRef(normalizedSynonym)) >= 0;
     }
 
     public int size() {
         return synonyms.size();
     }
 
+    /**
+     * @return how many tokens a matching term can be turned into at query time, assuming equivalent sets are expanded
+     */
+    public int getMaxExpansions() {
+        switch (mode) {
+            case CONTRACT:
+                return Math.min(1, synonyms.size());
+            case EXPLICIT:
+                return targets.size();
+            default:
+                return synonyms.size();
+        }
+    }
+
+    /**
+     * @return a read-only view of the normalized terms. It does not copy and is not affected by later changes to this set.
+     * Every term read through it is decoded from UTF-8, so hot paths should use {@link #terms()} instead.
+     */
     public List<String> getItems() {
-        return new ArrayList<String>(synonyms);
+        return synonyms;
+    }
+
+    /**
+     * @return the normalized terms as UTF-8, for looking them up without decoding them
+     */
+    PackedTerms terms() {
+        return synonyms;
+    }
+
+    /**
+     * @return a copy without the given normalized terms, keeping the timestamps so the copy sorts like this set
+     */
+    ManagedSynonymSet withoutTerms(Collection<String> termsToRemove) {
+        var remaining = new ArrayList<String>(synonyms);
+        remaining.removeAll(termsToRemove);
+        var copy = new ManagedSynonymSet(this);
+        copy.synonyms = PackedTerms.of(remaining);
+        return copy;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        return SHALLOW_SIZE + RamUsageEstimator.sizeOf(setId) + synonyms.ramBytesUsed() + targets.ramBytesUsed();
     }
 
     public String synonymsToString() {
-        return String.join(",", synonyms);
+        switch (mode) {
+            case CONTRACT:
+                return String.join(",", synonyms) + "=>" + (synonyms.size() > 0 ? synonyms.get(0) : "");
+            case EXPLICIT:
+                return String.join(",", synonyms) + "=>" + String.join(",", targets);
+            default:
+                return String.join(",", synonyms);
+        }
     }
 
     public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
@@ -104,11 +249,24 @@ public class ManagedSynonymSet implements Comparable<ManagedSynonymSet> {
         builder.field("id", this.setId);
         builder.field("createdTimestamp", this.createdTimestamp);
         builder.field("updatedTimestamp", this.updatedTimestamp);
-        builder.array("synonyms", this.synonyms);
+        termsToXContent(builder, "synonyms", this.synonyms);
+        builder.field("mode", this.mode.getLowercase());
+        if (this.mode == Mode.EXPLICIT) termsToXContent(builder, "targets", this.targets);
         builder.endObject();
         return builder;
     }
 
+    // writes the UTF-8 bytes as they are, listings never decode the terms
+    private static void termsToXContent(XContentBuilder builder, String name, PackedTerms terms) throws IOException {
+        builder.startArray(name);
+        var term = new BytesRef();
+        for (int i = 0; i < terms.size(); i++) {
+            terms.term(i, term);
+            builder.utf8Value(term.bytes, term.offset, term.length);
+        }
+        builder.endArray();
+    }
+
     @Override
     public String toString() {
         return this.setId + "," + this.synonymsToString();
@@ -116,16 +274,26 @@ public class ManagedSynonymSet implements Comparable<ManagedSynonymSet> {
 
     @Override
     public int compareTo(ManagedSynonymSet other) {
-        // by updated timestamp descending
-        return this.updatedTimestamp > other.updatedTimestamp ? -1 : this.updatedTimestamp == other.updatedTimestamp ? 0 : 1;
+        // by updated timestamp descending, then by id so distinct sets never compare as equal
+        int byTimestamp = Long.compare(other.updatedTimestamp, this.updatedTimestamp);
+        return byTimestamp != 0 ? byTimestamp : this.setId.compareTo(other.setId);
+    }
+
+    /**
+     * @return an opaque cursor that pages through sets ordered by {@link #compareTo} starting right after this set
+     */
+    public String getSortCursor() {
+        return this.updatedTimestamp + ":" + this.setId;
     }
 
     public Map<String, Object> toSettingsMap() {
         var settingsMap = new HashMap<String, Object>();
         settingsMap.put("setId", this.setId);
-        settingsMap.put("synonyms", this.synonyms);
+        settingsMap.put("synonyms", this.getItems());
         settingsMap.put("created", this.createdTimestamp);
         settingsMap.put("updated", this.updatedTimestamp);
+        settingsMap.put("mode", this.mode.getLowercase());
+        if (this.mode == Mode.EXPLICIT) settingsMap.put("targets", this.getTargets());
         return settingsMap;
     }
 
@@ -137,6 +305,8 @@ public class ManagedSynonymSet implements Comparable<ManagedSynonymSet> {
         if (setId == null || synonyms == null || synonyms.size() == 0 || created == 0L || updated == 0L) throw new ManagedSynonymException(
             "Could not deserialize synonym set settings"
         );
-        return new ManagedSynonymSet(setId, synonyms, created, updated);
+        var set = new ManagedSynonymSet(setId, synonyms, created, updated);
+        set.setMode(Mode.fromString(settings.get("mode")), settings.getAsList("targets"));
+        return set;
     }
 }
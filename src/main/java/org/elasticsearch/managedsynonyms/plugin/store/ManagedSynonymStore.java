@@ -2,22 +2,44 @@ package org.elasticsearch.managedsynonyms.plugin.store;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.ResourceAlreadyExistsException;
 import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.metadata.IndexMetadata;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.NoopCircuitBreaker;
 import org.elasticsearch.common.inject.Singleton;
+import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.core.TimeValue;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.seqno.SequenceNumbers;
 import org.elasticsearch.managedsynonyms.plugin.ManagedSynonymException;
 import org.elasticsearch.managedsynonyms.plugin.ManagedSynonymTokenHelper;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.IOException;
 import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 
 @Singleton
 public class ManagedSynonymStore {
@@ -26,9 +48,37 @@ public class ManagedSynonymStore {
     private static ManagedSynonymStore instance;
     public static final String SYNONYM_INDEX = ".managed_synonyms_store";
     public static final String INDEX_DESCRIPTION = "Storage for managed synonyms plugin";
-    public static final String VERSION_IDENTIFIER = "1.0.0";
+    public static final String VERSION_IDENTIFIER = "1.2.0";
+    public static final String BUILD_THREAD_POOL = "managed_synonyms_build";
+    public static final String ANALYZE_THREAD_POOL = "managed_synonyms_analyze";
+    public static final String BREAKER_NAME = "managed_synonyms";
 
-    private static Map<String, ManagedSynonymFile> synonymFiles = new HashMap<String, ManagedSynonymFile>();
+    public static final Setting<ByteSizeValue> BREAKER_LIMIT_SETTING = Setting.memorySizeSetting(
+        "managed_synonyms.breaker.limit",
+        "10%",
+        Setting.Property.NodeScope
+    );
+    public static final Setting<Double> BREAKER_OVERHEAD_SETTING = Setting.doubleSetting(
+        "managed_synonyms.breaker.overhead",
+        1.0,
+        0.0,
+        Setting.Property.NodeScope
+    );
+    private static final int SYNC_BATCH_SIZE = 1000;
+    private static final long SYNC_SEQ_NO_OVERLAP = SYNC_BATCH_SIZE;
+
+    private static final int MAX_RETAINED_IMPORT_TASKS = 100;
+
+    private static Map<String, ManagedSynonymFile> synonymFiles = new ConcurrentHashMap<String, ManagedSynonymFile>();
+    private static Map<String, ManagedSynonymImportTask> importTasks = new ConcurrentHashMap<String, ManagedSynonymImportTask>();
+
+    private volatile ManagedSynonymIndexFlusher indexFlusher;
+    private volatile ThreadPool threadPool;
+    private final ManagedSynonymOperationStats operationStats = new ManagedSynonymOperationStats();
+    private volatile ManagedSynonymRequestRecorder requestRecorder;
+    private volatile CircuitBreaker breaker;
+    private volatile long lastSyncedSeqNo = SequenceNumbers.NO_OPS_PERFORMED;
+    private static final CircuitBreaker NOOP_BREAKER = new NoopCircuitBreaker(BREAKER_NAME);
 
     public static ManagedSynonymStore getInstance() {
         if (instance == null) {
@@ -46,69 +96,269 @@ public class ManagedSynonymStore {
     }
 
     public ManagedSynonymFile getOrCreateSynonymFile(String name) {
-        if (synonymFiles.containsKey(name)) {
-            return synonymFiles.get(name);
-        }
+        return synonymFiles.computeIfAbsent(name, fileName -> {
+            var newFile = new ManagedSynonymFile(fileName);
+            newFile.addChangeListener(this::onFileChanged);
+            return newFile;
+        });
+    }
+
+    public Collection<ManagedSynonymFile> getSynonymFiles() {
+        return Collections.unmodifiableCollection(synonymFiles.values());
+    }
 
-        var newFile = new ManagedSynonymFile(name);
-        synonymFiles.put(name, new ManagedSynonymFile(name));
-        return newFile;
+    /**
+     * Called once an index has been removed from the node, drops what its filters registered with the files.
+     */
+    public void releaseIndex(String indexUuid) {
+        for (var file : getSynonymFiles()) {
+            file.releaseIndex(indexUuid);
+        }
     }
 
     public void clear() {
+        for (var file : synonymFiles.values()) {
+            file.releaseMemory();
+        }
         synonymFiles.clear();
     }
 
-    public void syncToIndex(Client client) {
+    /**
+     * @return the breaker synonym sets and maps reserve their heap against, or a no-op breaker until the node provides one
+     */
+    public CircuitBreaker getBreaker() {
+        var current = this.breaker;
+        return current == null ? NOOP_BREAKER : current;
+    }
+
+    public void setBreaker(CircuitBreaker breaker) {
+        this.breaker = breaker;
+    }
+
+    private void onFileChanged(ManagedSynonymFile file) {
+        var flusher = this.indexFlusher;
+        if (flusher != null) flusher.onFileChanged(file);
+    }
+
+    public boolean isBackpressured(ManagedSynonymFile file) {
+        var flusher = this.indexFlusher;
+        return flusher != null && flusher.isBackpressured(file);
+    }
+
+    /**
+     * Rejects writes to a file while the index flusher is too far behind on it, so unpersisted changes cannot grow
+     * without bound.
+     */
+    public void ensureCanAcceptWrites(ManagedSynonymFile file) throws ManagedSynonymException {
+        if (isBackpressured(file)) {
+            throw new ManagedSynonymException(
+                "Too many managed synonym changes waiting to be persisted, try again later",
+                RestStatus.TOO_MANY_REQUESTS
+            );
+        }
+    }
+
+    public ManagedSynonymImportTask createImportTask(String filterName, ManagedSynonymFormat format, int batchSize, long totalBytes) {
+        // forget about finished imports once too many have piled up
+        if (importTasks.size() >= MAX_RETAINED_IMPORT_TASKS) {
+            importTasks.values().removeIf(ManagedSynonymImportTask::isDone);
+        }
+        var taskId = UUID.randomUUID().toString().toLowerCase(Locale.ROOT);
+        var task = new ManagedSynonymImportTask(taskId, filterName, format, batchSize, totalBytes);
+        importTasks.put(taskId, task);
+        return task;
+    }
+
+    public ManagedSynonymImportTask getImportTask(String filterName, String taskId) {
+        var task = importTasks.get(taskId);
+        if (task == null || task.getFilterName().equals(filterName) == false) return null;
+        return task;
+    }
+
+    public ManagedSynonymOperationStats getOperationStats() {
+        return operationStats;
+    }
+
+    /**
+     * @return where requests are recorded for replay, or null if they are not
+     */
+    public ManagedSynonymRequestRecorder getRequestRecorder() {
+        return requestRecorder;
+    }
+
+    public void setRequestRecorder(ManagedSynonymRequestRecorder requestRecorder) {
+        this.requestRecorder = requestRecorder;
+    }
+
+    public void setThreadPool(ThreadPool threadPool) {
+        this.threadPool = threadPool;
+    }
+
+    /**
+     * @return the executor synonym maps are rebuilt on, or a direct executor before the node has started
+     */
+    public ExecutorService getBuildExecutor() {
+        var pool = this.threadPool;
+        return pool == null ? EsExecutors.newDirectExecutorService() : pool.executor(BUILD_THREAD_POOL);
+    }
+
+    /**
+     * @return the executor synonym terms are analyzed on during a build, or a direct executor before the node has started
+     */
+    public ExecutorService getAnalyzeExecutor() {
+        var pool = this.threadPool;
+        return pool == null ? EsExecutors.newDirectExecutorService() : pool.executor(ANALYZE_THREAD_POOL);
+    }
+
+    public int getAnalyzeParallelism() {
+        var pool = this.threadPool;
+        return pool == null ? 1 : pool.info(ANALYZE_THREAD_POOL).getMax();
+    }
+
+    public void startIndexFlusher(Client client, ThreadPool threadPool, Settings settings) {
+        var flusher = new ManagedSynonymIndexFlusher(client, threadPool, settings);
+        this.indexFlusher = flusher;
+        flusher.start();
+    }
 
+    /**
+     * Stops background persistence, synchronously flushing anything still pending.
+     */
+    public void stopIndexFlusher(TimeValue timeout) {
+        var flusher = this.indexFlusher;
+        this.indexFlusher = null;
+        if (flusher != null) flusher.close(timeout);
     }
 
     /**
-     * Refreshes the store with any newly updated items since "since"
+     * Writes the changes made on this node since the last flush to the managed synonyms index.
+     * @param listener receives false if a flush was already in progress
+     */
+    public void syncToIndex(ActionListener<Boolean> listener) {
+        var flusher = this.indexFlusher;
+        if (flusher == null) {
+            listener.onFailure(new IllegalStateException("managed synonyms index flusher is not running"));
+            return;
+        }
+        flusher.flush(listener);
+    }
+
+    /**
+     * Refreshes the store with any items indexed after the operation with sequence number "sinceSeqNo". The
+     * index has a single shard, so its sequence numbers order every write to it, independently of the clocks of
+     * the nodes that wrote the items. Documents are streamed from the index in pages ordered by _seq_no using
+     * search_after, and each page is applied to the in-memory files as it arrives; nothing is cleared first, so
+     * filters keep serving their current sets while loading.
+     *
+     * Writes that run concurrently can become searchable out of sequence number order, so every sync reads
+     * again the last {@link #SYNC_SEQ_NO_OVERLAP} operations before the watermark. Applying an item twice is
+     * harmless.
+     * If the index does not exist yet it is created when createIndex is set, there is nothing to load then.
      * @param client the Elasticsearch client
-     * @param since minimum timestamp for filtering. Use 0L to sync all items
-     * @return the time stamp of the most recently updated item
-     * @throws IOException 
+     * @param sinceSeqNo the highest sequence number already synced, {@link SequenceNumbers#NO_OPS_PERFORMED} to sync all items
+     * @param listener receives the highest sequence number seen, or sinceSeqNo if there was none
      */
-    public long syncFromIndex(
+    public void syncFromIndex(
         Client client,
-        long since,
+        long sinceSeqNo,
         ClusterState state,
         TimeValue masterNodeTimeout,
-        final ActionListener<Boolean> finalListener
-    ) throws IOException {
+        boolean createIndex,
+        final ActionListener<Long> listener
+    ) {
         if (doesManagedSynonymsIndexExist(state) == false) {
-            // create our index
-            try {
-                createManagedSynonymsIndex(client, state, masterNodeTimeout, finalListener);
-            } catch (ManagedSynonymException e) {
-
+            if (createIndex) {
+                createManagedSynonymsIndex(
+                    client,
+                    masterNodeTimeout,
+                    ActionListener.wrap(r -> listener.onResponse(sinceSeqNo), listener::onFailure)
+                );
+            } else {
+                listener.onResponse(sinceSeqNo);
             }
+            return;
         }
 
-        // clear the local file store just in case
-        this.clear();
+        loadFromIndex(client, sinceSeqNo - SYNC_SEQ_NO_OVERLAP, null, sinceSeqNo, ActionListener.wrap(maxSeqNo -> {
+            lastSyncedSeqNo = Math.max(lastSyncedSeqNo, maxSeqNo);
+            listener.onResponse(maxSeqNo);
+        }, listener::onFailure));
+    }
 
-        // load the synonyms from the index
+    /**
+     * @return the highest sequence number of the synonyms index applied to the in-memory files
+     */
+    public long getLastSyncedSeqNo() {
+        return lastSyncedSeqNo;
+    }
 
-        // build the query
-        /*
-         * The query must have a large result size,
-         * and filter on since > updatedTimestamp
-         * order by synonym file name so we can push things up in order...
-         * To load all, set since = 0
-        // load items
-        var mustQuery = new BoolQueryBuilder();
-        
-        // mustQuery.must(null);
-        var requestBuilder = new SearchSourceBuilder();
-        var request = new SearchRequest(new String[] { SYNONYM_INDEX }, requestBuilder);
-        request.indices(SYNONYM_INDEX);
-        var response = client.search(request).get();
-        // sync files
-         */
+    private void loadFromIndex(Client client, long afterSeqNo, Object[] searchAfter, long maxSeqNo, ActionListener<Long> listener) {
+        var source = new SearchSourceBuilder().query(QueryBuilders.boolQuery().filter(QueryBuilders.rangeQuery("_seq_no").gt(afterSeqNo)))
+            .size(SYNC_BATCH_SIZE)
+            .seqNoAndPrimaryTerm(true)
+            .sort("_seq_no", SortOrder.ASC);
+        if (searchAfter != null) {
+            source.searchAfter(searchAfter);
+        }
+
+        client.search(new SearchRequest(SYNONYM_INDEX).source(source), ActionListener.wrap(response -> {
+            var hits = response.getHits().getHits();
+            long newMaxSeqNo = applyIndexedSets(hits, maxSeqNo);
+            if (hits.length < SYNC_BATCH_SIZE) {
+                listener.onResponse(newMaxSeqNo);
+            } else {
+                loadFromIndex(client, afterSeqNo, hits[hits.length - 1].getSortValues(), newMaxSeqNo, listener);
+            }
+        }, listener::onFailure));
+    }
+
+    /**
+     * @return the highest sequence number among the hits and maxSeqNo
+     */
+    private long applyIndexedSets(SearchHit[] hits, long maxSeqNo) {
+        var setsByFile = new HashMap<String, List<ManagedSynonymSet>>();
+        var deletedByFile = new HashMap<String, Map<String, Long>>();
+        long maxTimestamp = 0;
+        for (var hit : hits) {
+            maxSeqNo = Math.max(maxSeqNo, hit.getSeqNo());
+            var source = hit.getSourceAsMap();
+            var fileName = (String) source.get("synonymFile");
+            var setId = (String) source.get("setId");
+            var updated = source.get("updatedTimestamp") instanceof Number ? ((Number) source.get("updatedTimestamp")).longValue() : 0L;
+            if (fileName == null || setId == null) continue;
+            maxTimestamp = Math.max(maxTimestamp, updated);
+
+            if (Boolean.TRUE.equals(source.get("deleted"))) {
+                deletedByFile.computeIfAbsent(fileName, k -> new HashMap<>()).put(setId, updated);
+                continue;
+            }
+
+            var created = source.get("createdTimestamp") instanceof Number ? ((Number) source.get("createdTimestamp")).longValue() : 0L;
+            @SuppressWarnings("unchecked")
+            var synonyms = source.get("synonyms") instanceof List ? (List<String>) source.get("synonyms") : Collections.<String>emptyList();
+            var set = new ManagedSynonymSet(setId, synonyms, created, updated);
+            try {
+                @SuppressWarnings("unchecked")
+                var targets = source.get("targets") instanceof List ? (List<String>) source.get("targets") : null;
+                set.setMode(ManagedSynonymSet.Mode.fromString((String) source.get("mode")), targets);
+            } catch (ManagedSynonymException e) {
+                logger.warn("Skipping invalid managed synonym set [" + setId + "] in [" + fileName + "]: " + e.getMessage());
+                continue;
+            }
+            setsByFile.computeIfAbsent(fileName, k -> new ArrayList<>()).add(set);
+        }
 
-        return 0;
+        var fileNames = new HashSet<String>(setsByFile.keySet());
+        fileNames.addAll(deletedByFile.keySet());
+        for (var fileName : fileNames) {
+            var file = getOrCreateSynonymFile(fileName);
+            file.syncItems(
+                setsByFile.getOrDefault(fileName, Collections.emptyList()),
+                deletedByFile.getOrDefault(fileName, Collections.emptyMap())
+            );
+            file.setLastSyncTimestamp(Math.max(file.getLastSyncTimestamp(), maxTimestamp));
+        }
+        return maxSeqNo;
     }
 
     private boolean doesManagedSynonymsIndexExist(ClusterState state) {
@@ -116,30 +366,31 @@ public class ManagedSynonymStore {
         return (indexLookup.isEmpty() == false && indexLookup.containsKey(SYNONYM_INDEX) == true);
     }
 
-    private void createManagedSynonymsIndex(
-        Client client,
-        ClusterState state,
-        TimeValue masterNodeTimeout,
-        ActionListener<Boolean> finalListener
-    ) throws ManagedSynonymException {
+    private void createManagedSynonymsIndex(Client client, TimeValue masterNodeTimeout, ActionListener<Boolean> listener) {
         logger.info("Managed synonyms index does not exist... creating...");
 
-        try {
-            var propertiesMap = getSynonymIndexFieldMapping();
-            var mappingsMap = Map.ofEntries(new AbstractMap.SimpleEntry<String, Object>("properties", propertiesMap));
-            var createIndexBuilder = client.admin().indices().prepareCreate(SYNONYM_INDEX);
-            createIndexBuilder.setMapping(mappingsMap);
-            createIndexBuilder.setSettings(managedSynonymsIndexSettings());
+        var propertiesMap = getSynonymIndexFieldMapping();
+        var mappingsMap = Map.ofEntries(new AbstractMap.SimpleEntry<String, Object>("properties", propertiesMap));
+        var createIndexBuilder = client.admin().indices().prepareCreate(SYNONYM_INDEX);
+        createIndexBuilder.setMapping(mappingsMap);
+        createIndexBuilder.setSettings(managedSynonymsIndexSettings());
+        createIndexBuilder.setMasterNodeTimeout(masterNodeTimeout);
 
-            var response = createIndexBuilder.get();
-            if (!response.isAcknowledged()) {
+        createIndexBuilder.execute(ActionListener.wrap(response -> {
+            if (response.isAcknowledged() == false) {
                 var errorMessage = ManagedSynonymTokenHelper.getErrorMessageFromResponse(response);
-                throw new ManagedSynonymException("Could not create managed synonyms index: " + errorMessage);
+                listener.onFailure(new ManagedSynonymException("Could not create managed synonyms index: " + errorMessage));
+                return;
             }
-
-        } catch (ResourceAlreadyExistsException e) {
-            // already good - just return
-        }
+            listener.onResponse(true);
+        }, e -> {
+            if (ExceptionsHelper.unwrapCause(e) instanceof ResourceAlreadyExistsException) {
+                // already good - just return
+                listener.onResponse(true);
+            } else {
+                listener.onFailure(e);
+            }
+        }));
     }
 
     public static Settings managedSynonymsIndexSettings() {
@@ -175,6 +426,10 @@ public class ManagedSynonymStore {
      * - createdTimestamp: long
      * - updatedTimestamp: long
      * - synonyms: [string, string, ...]
+     * - mode: equivalent, contract or explicit
+     * - targets: [string, string, ...], the outputs of explicit mappings
+     * - deleted: boolean, set on tombstones left behind by deleted sets
+     * - writer: string, identifies the node process that wrote the document
      *  
      * @return index mapping properties
      */
@@ -195,7 +450,11 @@ public class ManagedSynonymStore {
             new AbstractMap.SimpleEntry<String, Object>("setId", keywordFieldMap),
             new AbstractMap.SimpleEntry<String, Object>("createdTimestamp", timestampTypeMap),
             new AbstractMap.SimpleEntry<String, Object>("updatedTimestamp", timestampTypeMap),
-            new AbstractMap.SimpleEntry<String, Object>("synonyms", textTypeMap)
+            new AbstractMap.SimpleEntry<String, Object>("synonyms", textTypeMap),
+            new AbstractMap.SimpleEntry<String, Object>("mode", keywordFieldMap),
+            new AbstractMap.SimpleEntry<String, Object>("targets", textTypeMap),
+            new AbstractMap.SimpleEntry<String, Object>("deleted", Collections.singletonMap("type", "boolean")),
+            new AbstractMap.SimpleEntry<String, Object>("writer", keywordFieldMap)
         );
     }
 }
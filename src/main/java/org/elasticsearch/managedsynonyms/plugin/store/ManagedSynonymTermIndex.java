@@ -0,0 +1,170 @@
+package org.elasticsearch.managedsynonyms.plugin.store;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.collect.CopyOnWriteHashMap;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Maps every term of a file to the set holding it, without keeping a String or a map entry per term.
+ *
+ * Most terms live in a frozen base: an open addressing table from term hash to set ordinal, about 16 bytes a term,
+ * whose hits are checked against the UTF-8 terms the sets already hold. Terms written since the base was built go
+ * to a small copy-on-write delta keyed by slices of those same bytes. The base is never modified: a hit only counts
+ * while its set is still the one the snapshot holds under that id, so updates and deletes only touch the delta. Once
+ * the delta and the dead base entries outgrow a fraction of the base, the base is rebuilt from the live sets, which
+ * keeps writes amortized constant per term while every version stays immutable and can be read without locking.
+ */
+final class ManagedSynonymTermIndex {
+    static final ManagedSynonymTermIndex EMPTY = new ManagedSynonymTermIndex(Base.EMPTY, new CopyOnWriteHashMap<>(), 0, 0);
+
+    // amortized heap per indexed term: two base slots at half load plus the share of delta entries
+    static final long BYTES_PER_TERM = 24;
+    // the delta may always hold this many terms before the base is rebuilt, so small files never rebuild
+    private static final int MIN_DELTA_TERMS = 4096;
+
+    private final Base base;
+    private final CopyOnWriteHashMap<BytesRef, ManagedSynonymSet> delta;
+    private final int termCount;
+    // base entries whose set has been replaced or removed since the base was built
+    private final int deadTerms;
+
+    private ManagedSynonymTermIndex(Base base, CopyOnWriteHashMap<BytesRef, ManagedSynonymSet> delta, int termCount, int deadTerms) {
+        this.base = base;
+        this.delta = delta;
+        this.termCount = termCount;
+        this.deadTerms = deadTerms;
+    }
+
+    /**
+     * @return how many terms are mapped
+     */
+    int size() {
+        return termCount;
+    }
+
+    /**
+     * @param liveSets the sets of the snapshot this index belongs to, by id
+     * @return the set holding the term, or null if no set does
+     */
+    ManagedSynonymSet get(BytesRef term, Map<String, ManagedSynonymSet> liveSets) {
+        var set = delta.get(term);
+        if (set != null && liveSets.get(set.getId()) == set) return set;
+        return base.get(term, liveSets);
+    }
+
+    /**
+     * @param liveSets the sets of the snapshot the returned index belongs to, which must already hold the set
+     */
+    ManagedSynonymTermIndex withSet(ManagedSynonymSet set, Map<String, ManagedSynonymSet> liveSets) {
+        var terms = set.terms();
+        var next = delta;
+        for (int i = 0; i < terms.size(); i++) {
+            next = next.copyAndPut(terms.term(i, new BytesRef()), set);
+        }
+        if (next.size() + deadTerms > Math.max(MIN_DELTA_TERMS, base.termCount / 8)) {
+            return build(liveSets.values());
+        }
+        return new ManagedSynonymTermIndex(base, next, termCount + terms.size(), deadTerms);
+    }
+
+    /**
+     * Removes the terms of a set. A term is only unmapped if it still belongs to this set, another set that took it
+     * over keeps it.
+     */
+    ManagedSynonymTermIndex withoutSet(ManagedSynonymSet set) {
+        var terms = set.terms();
+        var scratch = new BytesRef();
+        var next = delta;
+        int removed = 0;
+        int dead = deadTerms;
+        for (int i = 0; i < terms.size(); i++) {
+            terms.term(i, scratch);
+            if (next.get(scratch) == set) {
+                next = next.copyAndRemove(scratch);
+                removed++;
+            } else if (base.holds(scratch, set)) {
+                dead++;
+                removed++;
+            }
+        }
+        return new ManagedSynonymTermIndex(base, next, termCount - removed, dead);
+    }
+
+    /**
+     * Builds an index with every term of the given sets in the base.
+     */
+    static ManagedSynonymTermIndex build(Collection<ManagedSynonymSet> sets) {
+        var base = Base.build(sets);
+        return new ManagedSynonymTermIndex(base, new CopyOnWriteHashMap<>(), base.termCount, 0);
+    }
+
+    /**
+     * The frozen part of the index. Slots hold the term hash and the set ordinal plus one, zero marks an empty slot.
+     */
+    private static final class Base {
+        static final Base EMPTY = new Base(new int[1], new int[1], new ManagedSynonymSet[0], 0);
+
+        final int[] hashes;
+        final int[] ordinals;
+        final ManagedSynonymSet[] sets;
+        final int termCount;
+        final int mask;
+
+        Base(int[] hashes, int[] ordinals, ManagedSynonymSet[] sets, int termCount) {
+            this.hashes = hashes;
+            this.ordinals = ordinals;
+            this.sets = sets;
+            this.termCount = termCount;
+            this.mask = hashes.length - 1;
+        }
+
+        static Base build(Collection<ManagedSynonymSet> sets) {
+            int termCount = 0;
+            for (var set : sets) {
+                termCount += set.size();
+            }
+            if (termCount == 0) return EMPTY;
+            int capacity = Integer.highestOneBit(Math.max(2, termCount) * 2 - 1) << 1;
+            var hashes = new int[capacity];
+            var ordinals = new int[capacity];
+            var setsByOrdinal = sets.toArray(new ManagedSynonymSet[0]);
+            var term = new BytesRef();
+            for (int ordinal = 0; ordinal < setsByOrdinal.length; ordinal++) {
+                var terms = setsByOrdinal[ordinal].terms();
+                for (int i = 0; i < terms.size(); i++) {
+                    int hash = terms.term(i, term).hashCode();
+                    int slot = hash & (capacity - 1);
+                    while (ordinals[slot] != 0) {
+                        slot = (slot + 1) & (capacity - 1);
+                    }
+                    hashes[slot] = hash;
+                    ordinals[slot] = ordinal + 1;
+                }
+            }
+            return new Base(hashes, ordinals, setsByOrdinal, termCount);
+        }
+
+        ManagedSynonymSet get(BytesRef term, Map<String, ManagedSynonymSet> liveSets) {
+            int hash = term.hashCode();
+            for (int slot = hash & mask; ordinals[slot] != 0; slot = (slot + 1) & mask) {
+                if (hashes[slot] != hash) continue;
+                var set = sets[ordinals[slot] - 1];
+                if (liveSets.get(set.getId()) == set && set.terms().indexOfTerm(term) >= 0) return set;
+            }
+            return null;
+        }
+
+        /**
+         * @return true if the term was indexed for exactly this set when the base was built
+         */
+        boolean holds(BytesRef term, ManagedSynonymSet set) {
+            int hash = term.hashCode();
+            for (int slot = hash & mask; ordinals[slot] != 0; slot = (slot + 1) & mask) {
+                if (hashes[slot] == hash && sets[ordinals[slot] - 1] == set) return true;
+            }
+            return false;
+        }
+    }
+}
@@ -8,8 +8,8 @@ import org.elasticsearch.client.Client;
 import org.elasticsearch.cluster.ClusterChangedEvent;
 import org.elasticsearch.cluster.ClusterStateListener;
 import org.elasticsearch.gateway.GatewayService;
+import org.elasticsearch.index.seqno.SequenceNumbers;
 
-import java.io.IOException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ManagedSynonymsInitializer implements ClusterStateListener {
@@ -17,7 +17,9 @@ public class ManagedSynonymsInitializer implements ClusterStateListener {
 
     private boolean isMaster = false;
     private final Client client;
-    private final AtomicBoolean isIndexCreationInProgress = new AtomicBoolean(false);
+    private final AtomicBoolean isSyncInProgress = new AtomicBoolean(false);
+    private volatile long lastSyncedSeqNo = SequenceNumbers.NO_OPS_PERFORMED;
+    private volatile boolean initialSyncDone = false;
 
     public ManagedSynonymsInitializer(Client client) {
         this.client = client;
@@ -49,27 +51,36 @@ public class ManagedSynonymsInitializer implements ClusterStateListener {
             return;
         }
 
-        // The atomic flag prevents multiple simultaneous attempts to create the
-        // index if there is a flurry of cluster state updates in quick succession
-        if (this.isMaster && isIndexCreationInProgress.compareAndSet(false, true)) {
-            try {
-                logger.info("Creating managed synonyms index");
-                ManagedSynonymStore.getInstance()
-                    .syncFromIndex(
-                        this.client,
-                        0,
-                        event.state(),
-                        MasterNodeRequest.DEFAULT_MASTER_NODE_TIMEOUT,
-                        ActionListener.wrap(r -> isIndexCreationInProgress.set(false), e -> {
-                            isIndexCreationInProgress.set(false);
-                            logger.error("Could not sync managed synonyms from index", e);
-                        })
-                    );
-            } catch (IOException e) {
-                // TODO Auto-generated catch block
-                logger.error("Could not sync managed synonyms from index", e);
-            }
+        // The atomic flag prevents multiple simultaneous syncs if there is a flurry of
+        // cluster state updates in quick succession
+        if (needsSync(event) && isSyncInProgress.compareAndSet(false, true)) {
+            logger.info("Syncing managed synonyms from index after seq_no [" + lastSyncedSeqNo + "]");
+            ManagedSynonymStore.getInstance()
+                .syncFromIndex(
+                    this.client,
+                    lastSyncedSeqNo,
+                    event.state(),
+                    MasterNodeRequest.DEFAULT_MASTER_NODE_TIMEOUT,
+                    this.isMaster,
+                    ActionListener.wrap(seqNo -> {
+                        lastSyncedSeqNo = seqNo;
+                        initialSyncDone = true;
+                        isSyncInProgress.set(false);
+                    }, e -> {
+                        isSyncInProgress.set(false);
+                        logger.error("Could not sync managed synonyms from index", e);
+                    })
+                );
         }
     }
 
+    /**
+     * Only the master creates the index, every node loads from it. After the first load only the changes
+     * since the last sync are read, when the index appears or the master changes.
+     */
+    private boolean needsSync(ClusterChangedEvent event) {
+        if (initialSyncDone == false) return true;
+        return event.indicesCreated().contains(ManagedSynonymStore.SYNONYM_INDEX) || event.nodesDelta().masterNodeChanged();
+    }
+
 }
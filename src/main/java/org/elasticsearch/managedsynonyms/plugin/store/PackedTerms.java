@@ -0,0 +1,88 @@
+package org.elasticsearch.managedsynonyms.plugin.store;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.UnicodeUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list of terms kept as one UTF-8 byte array and the end offset of every term, so a set costs two
+ * arrays however many terms it has, instead of a String and a byte array per term. Terms are only decoded into
+ * Strings when they are read through the {@link java.util.List} interface.
+ */
+final class PackedTerms extends AbstractList<String> implements RandomAccess {
+    static final PackedTerms EMPTY = new PackedTerms(new byte[0], new int[0]);
+
+    private final byte[] bytes;
+    private final int[] ends;
+
+    private PackedTerms(byte[] bytes, int[] ends) {
+        this.bytes = bytes;
+        this.ends = ends;
+    }
+
+    /**
+     * @param terms distinct, already normalized terms
+     */
+    static PackedTerms of(Collection<String> terms) {
+        if (terms.isEmpty()) return EMPTY;
+        int length = 0;
+        for (String term : terms) {
+            length += UnicodeUtil.calcUTF16toUTF8Length(term, 0, term.length());
+        }
+        var bytes = new byte[length];
+        var ends = new int[terms.size()];
+        int end = 0;
+        int i = 0;
+        for (String term : terms) {
+            end = UnicodeUtil.UTF16toUTF8(term, 0, term.length(), bytes, end);
+            ends[i++] = end;
+        }
+        return new PackedTerms(bytes, ends);
+    }
+
+    @Override
+    public String get(int index) {
+        int start = start(index);
+        return new String(bytes, start, ends[index] - start, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int size() {
+        return ends.length;
+    }
+
+    /**
+     * Points the given ref at the bytes of a term, without copying them. The ref must not be modified.
+     */
+    BytesRef term(int index, BytesRef ref) {
+        ref.bytes = bytes;
+        ref.offset = start(index);
+        ref.length = ends[index] - ref.offset;
+        return ref;
+    }
+
+    /**
+     * @return the position of the term, or -1 if it is not in the list
+     */
+    int indexOfTerm(BytesRef term) {
+        for (int i = 0; i < ends.length; i++) {
+            if (Arrays.equals(bytes, start(i), ends[i], term.bytes, term.offset, term.offset + term.length)) return i;
+        }
+        return -1;
+    }
+
+    long ramBytesUsed() {
+        if (this == EMPTY) return 0;
+        return RamUsageEstimator.sizeOf(bytes) + RamUsageEstimator.sizeOf(ends);
+    }
+
+    private int start(int index) {
+        return index == 0 ? 0 : ends[index - 1];
+    }
+}
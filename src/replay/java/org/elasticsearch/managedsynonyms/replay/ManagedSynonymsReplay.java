@@ -0,0 +1,407 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.managedsynonyms.replay;
+
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Re-issues requests recorded with {@code managed_synonyms.recording.path} against a node and reports the latency of
+ * every route and the errors. Requests keep their recorded spacing divided by the speed, or are sent back to back
+ * by all workers at {@code --speed max}.
+ *
+ * Sets created during the recording get new ids when they are created again. The recording keeps the responses of
+ * creates, so every recorded id is mapped to the id its replayed create returned, and requests referring to it wait
+ * for that create to finish. A response counts as a failure if it is a server or IO error, or a client error where
+ * the recorded request did not get one.
+ *
+ * <pre>
+ * ./gradlew replay -Preplay.args="--file recording.ndjson --host http://localhost:9200 --speed 10"
+ * </pre>
+ */
+public class ManagedSynonymsReplay {
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    private final String host;
+    private final Map<String, Route> routes = new ConcurrentHashMap<String, Route>();
+    private final AtomicLong failures = new AtomicLong();
+    // recorded set id to the id its replayed create returned
+    private final Map<String, CompletableFuture<String>> setIds = new ConcurrentHashMap<String, CompletableFuture<String>>();
+
+    ManagedSynonymsReplay(String host) {
+        this.host = host.endsWith("/") ? host.substring(0, host.length() - 1) : host;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String file = null;
+        String host = "http://localhost:9200";
+        String speed = "1";
+        int workers = 8;
+        String output = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--file":
+                    file = args[i + 1];
+                    break;
+                case "--host":
+                    host = args[i + 1];
+                    break;
+                case "--speed":
+                    speed = args[i + 1];
+                    break;
+                case "--workers":
+                    workers = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--output":
+                    output = args[i + 1];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument [" + args[i] + "]");
+            }
+        }
+        if (file == null) {
+            throw new IllegalArgumentException(
+                "Usage: --file <recording> [--host <url>] [--speed 1|10|max] [--workers n] [--output <json>]"
+            );
+        }
+
+        var requests = readRecording(Path.of(file));
+        double speedFactor = "max".equals(speed) ? 0 : Double.parseDouble(speed);
+        var replay = new ManagedSynonymsReplay(host);
+        long elapsedNanos = replay.run(requests, speedFactor, workers);
+
+        var report = replay.report(requests.size(), speed, elapsedNanos);
+        System.out.println(report);
+        if (output != null) {
+            Files.writeString(Path.of(output), report, StandardCharsets.UTF_8);
+        }
+        if (replay.failures.get() > 0) {
+            System.exit(1);
+        }
+    }
+
+    static List<RecordedRequest> readRecording(Path file) throws IOException {
+        var requests = new ArrayList<RecordedRequest>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) continue;
+            var map = parseJson(line);
+            if (map.containsKey("body_dropped_bytes")) {
+                // too large to record, usually an import, replaying it without its body would only measure an error
+                continue;
+            }
+            var responseBody = (String) map.get("response_body");
+            requests.add(
+                new RecordedRequest(
+                    ((Number) map.get("timestamp")).longValue(),
+                    (String) map.get("method"),
+                    (String) map.get("path"),
+                    (String) map.get("body"),
+                    (String) map.get("content_type"),
+                    map.get("status") instanceof Number ? ((Number) map.get("status")).intValue() : null,
+                    responseBody == null ? Collections.emptyList() : createdIds(responseBody)
+                )
+            );
+        }
+        requests.sort((a, b) -> Long.compare(a.timestamp, b.timestamp));
+        return requests;
+    }
+
+    private static Map<String, Object> parseJson(String json) throws IOException {
+        try (
+            var parser = XContentType.JSON.xContent()
+                .createParser(NamedXContentRegistry.EMPTY, DeprecationHandler.THROW_UNSUPPORTED_OPERATION, json)
+        ) {
+            return parser.map();
+        }
+    }
+
+    /**
+     * @return the ids of the sets a create or bulk response reports as created, in order. Bulk items that did not
+     * create anything are null, so the ids of a recorded and a replayed bulk line up by position.
+     */
+    @SuppressWarnings("unchecked")
+    static List<String> createdIds(String responseBody) throws IOException {
+        var response = parseJson(responseBody);
+        if (response.get("items") instanceof List == false) {
+            return response.get("id") instanceof String ? List.of((String) response.get("id")) : Collections.emptyList();
+        }
+        var ids = new ArrayList<String>();
+        for (var item : (List<Object>) response.get("items")) {
+            var created = item instanceof Map ? ((Map<String, Object>) item).get("create") : null;
+            if (created instanceof Map && "created".equals(((Map<String, Object>) created).get("result"))) {
+                ids.add((String) ((Map<String, Object>) created).get("id"));
+            } else {
+                ids.add(null);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * @return how long the replay took
+     */
+    long run(List<RecordedRequest> requests, double speed, int workers) throws InterruptedException {
+        if (requests.isEmpty()) return 0;
+        for (var request : requests) {
+            for (var setId : request.createdIds) {
+                if (setId != null) setIds.putIfAbsent(setId, new CompletableFuture<String>());
+            }
+        }
+        // workers take requests in order, so a request waiting for a create never blocks the create itself
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        long start = System.nanoTime();
+        long firstTimestamp = requests.get(0).timestamp;
+        try {
+            for (var request : requests) {
+                if (speed > 0) {
+                    long dueNanos = (long) (TimeUnit.MILLISECONDS.toNanos(request.timestamp - firstTimestamp) / speed);
+                    long waitNanos = dueNanos - (System.nanoTime() - start);
+                    if (waitNanos > 0) TimeUnit.NANOSECONDS.sleep(waitNanos);
+                }
+                executor.execute(() -> send(request));
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.HOURS);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private void send(RecordedRequest request) {
+        var route = routes.computeIfAbsent(request.method + " " + routeOf(request.path), k -> new Route());
+        int status = -1;
+        String responseBody = null;
+        try {
+            var builder = HttpRequest.newBuilder(URI.create(host + mapPath(request.path))).timeout(Duration.ofMinutes(1));
+            if (request.body != null) {
+                builder.header("Content-Type", request.contentType == null ? "application/json" : request.contentType);
+                builder.method(request.method, HttpRequest.BodyPublishers.ofString(mapBody(request)));
+            } else {
+                builder.method(request.method, HttpRequest.BodyPublishers.noBody());
+            }
+            long start = System.nanoTime();
+            try {
+                if (request.createdIds.isEmpty()) {
+                    status = http.send(builder.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+                } else {
+                    var response = http.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+                    status = response.statusCode();
+                    responseBody = response.body();
+                }
+            } finally {
+                route.record(System.nanoTime() - start, status);
+            }
+        } catch (IOException e) {
+            status = -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (isUnexpected(status, request.status)) failures.incrementAndGet();
+            completeCreatedIds(request, responseBody);
+        }
+    }
+
+    static boolean isUnexpected(int status, Integer recordedStatus) {
+        if (status < 0 || status >= 500) return true;
+        return status >= 400 && (recordedStatus == null || recordedStatus < 400);
+    }
+
+    /**
+     * Maps the recorded ids a request created to the replayed ones. Ids that could not be created again stay as
+     * recorded, requests for them fail the way they would have anyway.
+     */
+    private void completeCreatedIds(RecordedRequest request, String responseBody) {
+        List<String> replayedIds = Collections.emptyList();
+        try {
+            if (responseBody != null) replayedIds = createdIds(responseBody);
+        } catch (IOException | RuntimeException e) {
+            // not a response we understand, keep the recorded ids
+        }
+        for (int i = 0; i < request.createdIds.size(); i++) {
+            var recordedId = request.createdIds.get(i);
+            if (recordedId == null) continue;
+            var replayedId = i < replayedIds.size() ? replayedIds.get(i) : null;
+            setIds.get(recordedId).complete(replayedId == null ? recordedId : replayedId);
+        }
+    }
+
+    private String mapSetId(String setId) throws IOException {
+        var mapped = setIds.get(setId);
+        if (mapped == null) return setId;
+        try {
+            return mapped.get(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for set [" + setId + "] to be created", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IOException("set [" + setId + "] was not created in time", e);
+        }
+    }
+
+    /**
+     * Replaces a recorded set id in the path, in the same position {@link #routeOf} reports as {id}.
+     */
+    private String mapPath(String path) throws IOException {
+        int query = path.indexOf('?');
+        var segments = (query >= 0 ? path.substring(0, query) : path).split("/", -1);
+        if (segments.length < 4 || segments[3].startsWith("_")) return path;
+        segments[3] = mapSetId(segments[3]);
+        return String.join("/", segments) + (query >= 0 ? path.substring(query) : "");
+    }
+
+    /**
+     * Replaces recorded set ids in the action lines of a bulk body.
+     */
+    @SuppressWarnings("unchecked")
+    private String mapBody(RecordedRequest request) throws IOException {
+        if (request.path.contains("/_bulk") == false) return request.body;
+        var lines = request.body.split("\n", -1);
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i].isBlank()) continue;
+            var line = parseJson(lines[i]);
+            if (line.size() != 1) continue;
+            var action = line.values().iterator().next();
+            if (action instanceof Map == false || ((Map<String, Object>) action).get("id") instanceof String == false) continue;
+
+            var recordedId = (String) ((Map<String, Object>) action).get("id");
+            var mappedId = mapSetId(recordedId);
+            if (mappedId.equals(recordedId)) continue;
+            ((Map<String, Object>) action).put("id", mappedId);
+            lines[i] = Strings.toString(XContentFactory.jsonBuilder().map(line));
+        }
+        return String.join("\n", lines);
+    }
+
+    /**
+     * Collapses filter names and set ids so requests group by route, e.g. {@code /_synonyms/{filter}/{id}}.
+     */
+    static String routeOf(String path) {
+        int query = path.indexOf('?');
+        var segments = (query >= 0 ? path.substring(0, query) : path).split("/");
+        var route = new StringBuilder();
+        for (int i = 1; i < segments.length; i++) {
+            route.append('/');
+            if (i == 1 || segments[i].startsWith("_")) {
+                route.append(segments[i]);
+            } else {
+                route.append(i == 2 ? "{filter}" : "{id}");
+            }
+        }
+        return route.toString();
+    }
+
+    String report(int requests, String speed, long elapsedNanos) throws IOException {
+        XContentBuilder builder = XContentFactory.jsonBuilder().prettyPrint();
+        builder.startObject();
+        builder.field("requests", requests);
+        builder.field("speed", speed);
+        builder.field("elapsed_ms", TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        builder.field("throughput_per_sec", elapsedNanos == 0 ? 0 : requests / (elapsedNanos / 1e9));
+        builder.field("failures", failures.get());
+        builder.startObject("routes");
+        for (var entry : new TreeMap<String, Route>(routes).entrySet()) {
+            builder.field(entry.getKey());
+            entry.getValue().toXContent(builder);
+        }
+        builder.endObject();
+        builder.endObject();
+        return Strings.toString(builder);
+    }
+
+    static class RecordedRequest {
+        final long timestamp;
+        final String method;
+        final String path;
+        final String body;
+        final String contentType;
+        // null for recordings made before statuses were recorded
+        final Integer status;
+        final List<String> createdIds;
+
+        RecordedRequest(
+            long timestamp,
+            String method,
+            String path,
+            String body,
+            String contentType,
+            Integer status,
+            List<String> createdIds
+        ) {
+            this.timestamp = timestamp;
+            this.method = method;
+            this.path = path;
+            this.body = body;
+            this.contentType = contentType;
+            this.status = status;
+            this.createdIds = createdIds;
+        }
+    }
+
+    private static class Route {
+        private final List<Long> latencies = new ArrayList<Long>();
+        private final Map<Integer, Long> statuses = new TreeMap<Integer, Long>();
+
+        synchronized void record(long nanos, int status) {
+            latencies.add(nanos);
+            statuses.merge(status, 1L, Long::sum);
+        }
+
+        synchronized void toXContent(XContentBuilder builder) throws IOException {
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+            builder.startObject();
+            builder.field("count", sorted.length);
+            builder.field("p50_ms", percentile(sorted, 50));
+            builder.field("p90_ms", percentile(sorted, 90));
+            builder.field("p99_ms", percentile(sorted, 99));
+            builder.field("p999_ms", percentile(sorted, 99.9));
+            builder.field("max_ms", sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6);
+            builder.startObject("statuses");
+            for (var status : statuses.entrySet()) {
+                builder.field(status.getKey() < 0 ? "io_error" : String.format(Locale.ROOT, "%d", status.getKey()), status.getValue());
+            }
+            builder.endObject();
+            builder.endObject();
+        }
+
+        private static double percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) return 0;
+            int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+        }
+    }
+}
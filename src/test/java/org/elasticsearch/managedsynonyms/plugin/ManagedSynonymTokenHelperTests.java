@@ -0,0 +1,66 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.managedsynonyms.plugin;
+
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.Locale;
+
+public class ManagedSynonymTokenHelperTests extends ESTestCase {
+
+    // ASCII, the characters normalize strips or trims, and Unicode with special or multi-char case mappings
+    private static final String[] PIECES = {
+        "a", "Z", "q", "7", " ", "\t", "\n", "\r", ",", "-", "\u00c9", "\u00e9", "e\u0301", "\u00df", "\u0130", "\u0131",
+        "\u03a3", "\u03c2", "\u01c5", "\u2126", "\ufb01", "\u00a0", "\u3000", "\u6771\u4eac", "\ud801\udc00", "\ud801\udc28" };
+
+    /** the regex based implementation normalize replaced, with the root locale the plugin always used */
+    private static String oldNormalize(String term) {
+        return term.replaceAll("[\n\r,]", "").toLowerCase(Locale.ROOT).trim();
+    }
+
+    private static String randomTerm() {
+        var term = new StringBuilder();
+        int pieces = randomIntBetween(0, 12);
+        for (int i = 0; i < pieces; i++) {
+            term.append(randomFrom(PIECES));
+        }
+        return term.toString();
+    }
+
+    public void testMatchesOldImplementation() {
+        for (int i = 0; i < 10_000; i++) {
+            var term = randomBoolean() ? randomTerm() : randomRealisticUnicodeOfLengthBetween(0, 20);
+            assertEquals("normalizing [" + term + "]", oldNormalize(term), ManagedSynonymTokenHelper.normalize(term));
+        }
+    }
+
+    public void testReturnsNormalizedTermsAsTheyAre() {
+        for (int i = 0; i < 1_000; i++) {
+            var normalized = ManagedSynonymTokenHelper.normalize(randomTerm());
+            assertSame(normalized, ManagedSynonymTokenHelper.normalize(normalized));
+        }
+        var unicode = "stra\u00dfe caf\u00e9 \u6771\u4eac";
+        assertSame(unicode, ManagedSynonymTokenHelper.normalize(unicode));
+        assertEquals(unicode, ManagedSynonymTokenHelper.normalize(" Stra\u00dfe\n, Caf\u00e9 \u6771\u4eac "));
+    }
+
+    public void testNormalizers() {
+        assertEquals("strasse", ManagedSynonymNormalizer.CASE_FOLD.normalize("Stra\u00dfe"));
+        assertEquals("cafe", ManagedSynonymNormalizer.ASCII_FOLDING.normalize("Caf\u00e9"));
+        assertEquals("cafe", ManagedSynonymNormalizer.ASCII_FOLDING.normalize("Cafe\u0301"));
+
+        var folded = "strasse caf\u00e9";
+        assertSame(folded, ManagedSynonymNormalizer.CASE_FOLD.normalize(folded));
+        var stripped = "stra\u00dfe \u6771\u4eac";
+        assertSame(stripped, ManagedSynonymNormalizer.ASCII_FOLDING.normalize(stripped));
+        for (var normalizer : ManagedSynonymNormalizer.values()) {
+            assertSame("ascii terms", "new york", normalizer.normalize("new york"));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.managedsynonyms.plugin;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymBulkOperation;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymBulkOperation.OpType;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymBulkOperation.Result;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymFile;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymSet;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.util.List;
+
+public class ManagedSynonymsBulkActionTests extends ESTestCase {
+
+    public void testParse() throws Exception {
+        var operations = parse(
+            "{ \"create\": { } }",
+            "{ \"synonyms\": [ \"tv\", \"television\" ] }",
+            "{ \"update\": { \"id\": \"a\" } }",
+            "{ \"synonyms\": [ \"laptop\", \"notebook\" ], \"mode\": \"contract\" }",
+            "",
+            "{ \"create\": { \"id\": \"b\" } }",
+            "{ \"synonyms\": [ \"ipod\", \"i-pod\" ], \"mode\": \"explicit\", \"targets\": [ \"ipod\" ] }",
+            "{ \"delete\": { \"id\": \"c\" } }"
+        );
+        assertEquals(4, operations.size());
+        for (var operation : operations) {
+            assertFalse(operation.isFailed());
+        }
+        assertEquals(OpType.CREATE, operations.get(0).getOpType());
+        assertEquals(List.of("tv", "television"), operations.get(0).getSynonyms());
+        assertEquals(OpType.UPDATE, operations.get(1).getOpType());
+        assertEquals("a", operations.get(1).getSetId());
+        assertEquals(ManagedSynonymSet.Mode.CONTRACT, operations.get(1).getMode());
+        assertEquals("b", operations.get(2).getSetId());
+        assertEquals(List.of("ipod"), operations.get(2).getTargets());
+        assertEquals(OpType.DELETE, operations.get(3).getOpType());
+        assertEquals("c", operations.get(3).getSetId());
+    }
+
+    public void testInvalidSourceOnlyFailsItsItem() throws Exception {
+        var operations = parse(
+            "{ \"create\": { } }",
+            "{ \"synonyms\": [ \"tv\", \"television\" ], \"mode\": \"sideways\" }",
+            "{ \"create\": { } }",
+            "{ \"synonyms\": [ \"laptop\" ], \"mode\": \"explicit\", \"targets\": \"notebook\" }",
+            "{ \"update\": { \"id\": \"a\" } }",
+            "{ \"synonyms\": [ \"truncated\" ",
+            "{ \"create\": { } }",
+            "{ \"mode\": \"contract\" }",
+            "{ \"create\": { } }",
+            "{ \"synonyms\": [ { \"nested\": true } ] }",
+            "{ \"delete\": { \"id\": \"c\" } }"
+        );
+        assertEquals(6, operations.size());
+        for (int i = 0; i < 5; i++) {
+            assertTrue("item " + i, operations.get(i).isFailed());
+            assertEquals("item " + i, Result.INVALID, operations.get(i).getResult());
+        }
+        assertEquals("a", operations.get(2).getSetId());
+        assertFalse(operations.get(5).isFailed());
+    }
+
+    public void testUnframeableBodyIsRejected() {
+        expectThrows(ManagedSynonymException.class, () -> parse("{ \"upsert\": { } }", "{ \"synonyms\": [ \"a\" ] }"));
+        expectThrows(ManagedSynonymException.class, () -> parse("[ \"create\" ]", "{ \"synonyms\": [ \"a\" ] }"));
+        expectThrows(ManagedSynonymException.class, () -> parse("{ \"create\": { } }"));
+    }
+
+    public void testMixedSuccessAndFailure() throws Exception {
+        var file = new ManagedSynonymFile("bulk_test");
+        var existing = file.createSynonymSet(List.of("tv", "television"));
+        var operations = parse(
+            "{ \"create\": { } }",
+            "{ \"synonyms\": [ \"laptop\", \"notebook\" ] }",
+            "{ \"create\": { } }",
+            "{ \"synonyms\": [ \"car\" ], \"mode\": \"sideways\" }",
+            "{ \"create\": { } }",
+            "{ \"synonyms\": [ \"tv\", \"telly\" ] }",
+            "{ \"update\": { \"id\": \"" + existing.getId() + "\" } }",
+            "{ \"synonyms\": [ \"tv\", \"television\", \"telly\" ] }",
+            "{ \"delete\": { \"id\": \"missing\" } }"
+        );
+        file.bulk(operations);
+
+        assertEquals(Result.CREATED, operations.get(0).getResult());
+        assertEquals(Result.INVALID, operations.get(1).getResult());
+        assertEquals(Result.CONFLICT, operations.get(2).getResult());
+        assertEquals(Result.UPDATED, operations.get(3).getResult());
+        assertEquals(Result.NOT_FOUND, operations.get(4).getResult());
+        assertEquals(2, file.getCount());
+        assertEquals(3, file.getSet(existing.getId()).size());
+        assertEquals(1, file.getCount("notebook"));
+        assertEquals(0, file.getCount("car"));
+    }
+
+    private static List<ManagedSynonymBulkOperation> parse(String... lines) throws IOException, ManagedSynonymException {
+        return ManagedSynonymsBulkAction.parseOperations(new BytesArray(String.join("\n", lines) + "\n"), JsonXContent.jsonXContent);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.managedsynonyms.plugin.analyzer;
+
+import org.apache.lucene.analysis.MockTokenizer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.synonym.SynonymMap;
+import org.apache.lucene.util.CharsRefBuilder;
+import org.elasticsearch.test.ESTokenStreamTestCase;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+public class ManagedSynonymFilterTests extends ESTokenStreamTestCase {
+
+    public void testDeltaDoesNotExpandBaseSynonyms() throws IOException {
+        // the base was built with "nyc, new york"; "york, yorkshire" was created afterwards and sits in the delta
+        var base = buildMap(new String[] { "nyc" }, new String[] { "new", "york" });
+        var delta = buildMap(new String[] { "york" }, new String[] { "yorkshire" });
+        var layers = new ManagedSynonymMapHolder.Layers(
+            2,
+            1,
+            new ManagedSynonymMapHolder.BuiltMap(base, null),
+            false,
+            new ManagedSynonymMapHolder.BuiltMap(delta, null),
+            1
+        );
+
+        assertTokenStreamContents(stream("nyc", layers), new String[] { "nyc", "new", "york" });
+        assertTokenStreamContents(stream("york", layers), new String[] { "york", "yorkshire" });
+    }
+
+    public void testBaseOnly() throws IOException {
+        var base = buildMap(new String[] { "nyc" }, new String[] { "new", "york" });
+        var layers = new ManagedSynonymMapHolder.Layers(1, 1, new ManagedSynonymMapHolder.BuiltMap(base, null), false, null, 0);
+
+        assertTokenStreamContents(stream("nyc", layers), new String[] { "nyc", "new", "york" });
+    }
+
+    private static TokenStream stream(String text, ManagedSynonymMapHolder.Layers layers) {
+        Tokenizer tokenizer = new MockTokenizer(MockTokenizer.WHITESPACE, false);
+        tokenizer.setReader(new StringReader(text));
+        return ManagedSynonymFilter.wrap(tokenizer, layers);
+    }
+
+    private static SynonymMap buildMap(String[] input, String[] output) throws IOException {
+        var builder = new SynonymMap.Builder(true);
+        builder.add(
+            SynonymMap.Builder.join(input, new CharsRefBuilder()),
+            SynonymMap.Builder.join(output, new CharsRefBuilder()),
+            true
+        );
+        return builder.build();
+    }
+}
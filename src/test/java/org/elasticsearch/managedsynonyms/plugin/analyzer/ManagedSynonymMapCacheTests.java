@@ -0,0 +1,52 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.managedsynonyms.plugin.analyzer;
+
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymFile;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ManagedSynonymMapCacheTests extends ESTestCase {
+
+    public void testRebuildsWithTheChainOfAnIndexStillUsingTheMap() throws Exception {
+        var cache = ManagedSynonymMapCache.getInstance();
+        var key = "cache_test|" + randomAlphaOfLength(8);
+        var file = new ManagedSynonymFile("cache_test");
+        var builtBy = new ArrayList<String>();
+        var cacheSize = new ByteSizeValue(1, ByteSizeUnit.MB);
+
+        var first = cache.acquire(key, "first", file, cacheSize, builder("first", builtBy));
+        var second = cache.acquire(key, "second", file, cacheSize, builder("second", builtBy));
+        assertSame(first, second);
+        assertEquals(List.of("first"), builtBy);
+
+        cache.release("first");
+        file.createSynonymSet(List.of("tv", "television"));
+        // the build executor runs on the calling thread without a thread pool
+        first.getLayers();
+        assertEquals(List.of("first", "second"), builtBy);
+        assertEquals(file.getVersion(), first.getVersion());
+
+        int entries = cache.size();
+        cache.release("second");
+        assertEquals(entries - 1, cache.size());
+    }
+
+    private static ManagedSynonymMapCache.MapBuilder builder(String indexUuid, List<String> builtBy) {
+        return (analyzedTerms, sets) -> {
+            assertNotNull(analyzedTerms);
+            builtBy.add(indexUuid);
+            return new ManagedSynonymMapHolder.BuiltMap(null, null);
+        };
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.managedsynonyms.plugin.analyzer;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.analysis.MockTokenizer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.synonym.SolrSynonymParser;
+import org.apache.lucene.analysis.synonym.SynonymFilter;
+import org.apache.lucene.analysis.synonym.SynonymMap;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.elasticsearch.test.ESTokenStreamTestCase;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+public class ManagedSynonymParserTests extends ESTokenStreamTestCase {
+
+    private static final String RULES = String.join(
+        "\n",
+        "# equivalent sets",
+        "quick, fast, speedy",
+        "tv, television",
+        "new york, nyc, big apple",
+        "# explicit mappings",
+        "colour, color => hue",
+        "laptop => notebook, portable computer",
+        "# contraction",
+        "couch, sofa, settee => couch"
+    );
+
+    private static final String[] QUERIES = {
+        "quick",
+        "the fast car",
+        "speedy tv",
+        "television in new york",
+        "nyc big apple",
+        "colour of the laptop",
+        "color hue",
+        "sofa settee couch",
+        "nothing matches here" };
+
+    public void testMatchesSolrParserWithExpand() throws Exception {
+        assertSameAsSolr(true);
+    }
+
+    public void testMatchesSolrParserWithoutExpand() throws Exception {
+        assertSameAsSolr(false);
+    }
+
+    public void testExpansionLimitKeepsOriginal() throws Exception {
+        Analyzer analyzer = new MockAnalyzer(random(), MockTokenizer.WHITESPACE, true);
+        var parser = new ManagedSynonymParser(true, true, 2, analyzer, null);
+        parser.parse(new StringReader("a, b, c"));
+        var synonymMap = parser.build();
+
+        assertEquals(1, parser.getTruncatedSets());
+        assertEquals(List.of(Set.of("a", "b")), tokensByPosition("a", synonymMap));
+        assertEquals(List.of(Set.of("a", "b")), tokensByPosition("b", synonymMap));
+        assertEquals(List.of(Set.of("a", "c")), tokensByPosition("c", synonymMap));
+    }
+
+    private void assertSameAsSolr(boolean expand) throws Exception {
+        Analyzer analyzer = new MockAnalyzer(random(), MockTokenizer.WHITESPACE, true);
+
+        var solrParser = new SolrSynonymParser(true, expand, analyzer);
+        solrParser.parse(new StringReader(RULES));
+        var solrMap = solrParser.build();
+
+        var managedParser = new ManagedSynonymParser(true, expand, Integer.MAX_VALUE, analyzer, null);
+        managedParser.parse(new StringReader(RULES));
+        var managedMap = managedParser.build();
+
+        for (String query : QUERIES) {
+            assertEquals(
+                "tokens of [" + query + "], expand [" + expand + "]",
+                tokensByPosition(query, solrMap),
+                tokensByPosition(query, managedMap)
+            );
+        }
+    }
+
+    /**
+     * The terms at each position. Terms at the same position are sorted, their order is not meaningful.
+     */
+    private static List<Set<String>> tokensByPosition(String text, SynonymMap synonymMap) throws Exception {
+        Tokenizer tokenizer = new MockTokenizer(MockTokenizer.WHITESPACE, true);
+        tokenizer.setReader(new StringReader(text));
+        var ret = new ArrayList<Set<String>>();
+        try (TokenStream stream = new SynonymFilter(tokenizer, synonymMap, false)) {
+            var termAtt = stream.addAttribute(CharTermAttribute.class);
+            var posIncAtt = stream.addAttribute(PositionIncrementAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                for (int i = 0; i < posIncAtt.getPositionIncrement(); i++) {
+                    ret.add(new TreeSet<String>());
+                }
+                ret.get(ret.size() - 1).add(termAtt.toString());
+            }
+            stream.end();
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.managedsynonyms.plugin.store;
+
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class ManagedSynonymFileSyncTests extends ESTestCase {
+
+    public void testTombstonesDeleteSetsUpdatedBeforeThem() {
+        var file = new ManagedSynonymFile("tombstones");
+        var kept = new ManagedSynonymSet("kept", List.of("car", "automobile"), 10, 30);
+        file.syncItems(List.of(kept, new ManagedSynonymSet("deleted", List.of("tv", "television"), 10, 20)), true);
+        long version = file.getVersion();
+
+        // the local edit of "kept" happened after it was deleted elsewhere, it stays until its own write lands
+        file.syncItems(Collections.emptyList(), Map.of("deleted", 25L, "kept", 25L, "unknown", 25L));
+        assertNull(file.getSet("deleted"));
+        assertNotNull(file.getSet("kept"));
+        assertEquals(0, file.getCount("tv"));
+        assertEquals(2, file.getTermCount());
+
+        var changes = file.getChangesSince(version, 10);
+        assertEquals(1, changes.getEntries().size());
+        var entry = changes.getEntries().get(0);
+        assertEquals(ManagedSynonymJournal.Operation.DELETE, entry.getOperation());
+        assertEquals(ManagedSynonymJournal.Origin.SYNC, entry.getOrigin());
+        assertEquals("deleted", entry.getSetId());
+        assertEquals(0, file.getLocalChangesSince(version));
+    }
+
+    public void testIncrementalSyncSkipsOlderCopies() {
+        var file = new ManagedSynonymFile("incremental");
+        file.syncItems(List.of(new ManagedSynonymSet("set", List.of("tv", "television"), 10, 20)), true);
+        long version = file.getVersion();
+
+        file.syncItems(List.of(new ManagedSynonymSet("set", List.of("tv"), 10, 20)), Collections.emptyMap());
+        file.syncItems(List.of(new ManagedSynonymSet("set", List.of("tv"), 10, 15)), Collections.emptyMap());
+        assertEquals(version, file.getVersion());
+        assertEquals(List.of("tv", "television"), file.getSet("set").getItems());
+
+        file.syncItems(List.of(new ManagedSynonymSet("set", List.of("tv", "telly"), 10, 21)), Collections.emptyMap());
+        assertEquals(List.of("tv", "telly"), file.getSet("set").getItems());
+        assertEquals(0, file.getCount("television"));
+        assertEquals(1, file.getCount("telly"));
+    }
+
+    public void testTermsOfDeletedSetCanBeSyncedIntoAnotherSet() {
+        var file = new ManagedSynonymFile("incremental");
+        file.syncItems(List.of(new ManagedSynonymSet("old", List.of("tv", "television"), 10, 10)), true);
+
+        // another node deleted the old set and put its terms in a new one
+        var moved = new ManagedSynonymSet("new", List.of("tv", "television", "telly"), 25, 25);
+        file.syncItems(List.of(moved), Map.of("old", 20L));
+        assertNull(file.getSet("old"));
+        assertEquals(List.of("tv", "television", "telly"), file.getSet("new").getItems());
+        assertEquals(3, file.getTermCount());
+        assertEquals("new", file.listSets(1, 10, "tv").get(0).getId());
+    }
+
+    public void testNewerSyncedSetTakesConflictingTerms() {
+        var file = new ManagedSynonymFile("conflicts");
+        file.syncItems(List.of(new ManagedSynonymSet("local", List.of("tv", "television", "telly"), 10, 10)), true);
+
+        file.syncItems(List.of(new ManagedSynonymSet("remote", List.of("telly", "tele"), 20, 20)), Collections.emptyMap());
+
+        assertEquals(List.of("tv", "television"), file.getSet("local").getItems());
+        assertEquals(10, file.getSet("local").getUpdatedTimestamp());
+        assertEquals(List.of("telly", "tele"), file.getSet("remote").getItems());
+        assertEquals("remote", file.listSets(1, 10, "telly").get(0).getId());
+        assertEquals("local", file.listSets(1, 10, "tv").get(0).getId());
+        assertEquals(4, file.getTermCount());
+        assertEquals(List.of("remote", "local"), ids(file.listSets(1, 10, null)));
+    }
+
+    public void testOlderSyncedSetLosesConflictingTerms() {
+        var file = new ManagedSynonymFile("conflicts");
+        file.syncItems(List.of(new ManagedSynonymSet("newer", List.of("tv", "television"), 20, 20)), true);
+
+        var older = new ManagedSynonymSet("older", List.of("tv", "telly"), 10, 10);
+        var gone = new ManagedSynonymSet("gone", List.of("television"), 5, 5);
+        file.syncItems(List.of(older, gone), Collections.emptyMap());
+
+        assertEquals(List.of("tv", "television"), file.getSet("newer").getItems());
+        assertEquals(List.of("telly"), file.getSet("older").getItems());
+        assertNull("a set left without terms is dropped", file.getSet("gone"));
+        assertEquals(2, file.getCount());
+    }
+
+    public void testSetLosingAllTermsIsDropped() {
+        var file = new ManagedSynonymFile("conflicts");
+        file.syncItems(List.of(new ManagedSynonymSet("old", List.of("tv", "telly"), 10, 10)), true);
+
+        file.syncItems(List.of(new ManagedSynonymSet("new", List.of("tv", "telly", "television"), 20, 20)), Collections.emptyMap());
+
+        assertNull(file.getSet("old"));
+        assertEquals(1, file.getCount());
+        assertEquals("new", file.listSets(1, 10, "tv").get(0).getId());
+    }
+
+    /**
+     * Whatever order the conflicting sets arrive in, every term ends up in the most recently updated set holding it.
+     */
+    public void testResolutionDoesNotDependOnOrder() {
+        var sets = new ArrayList<ManagedSynonymSet>();
+        for (int i = 0; i < 20; i++) {
+            var terms = new ArrayList<String>();
+            for (int t = 0; t < 4; t++) {
+                terms.add("term " + randomIntBetween(0, 30));
+            }
+            sets.add(new ManagedSynonymSet("set-" + i, terms, i, randomIntBetween(0, 10)));
+        }
+
+        var expected = new ManagedSynonymFile("in order");
+        expected.syncItems(sets, true);
+        for (int i = 0; i < 5; i++) {
+            Collections.shuffle(sets, random());
+            var file = new ManagedSynonymFile("shuffled");
+            file.syncItems(sets.subList(0, 10), true);
+            file.syncItems(sets.subList(10, sets.size()), Collections.emptyMap());
+            assertEquals(expected.getCount(), file.getCount());
+            for (var set : expected.getAll()) {
+                assertEquals(set.getItems(), file.getSet(set.getId()).getItems());
+            }
+        }
+    }
+
+    private static List<String> ids(List<ManagedSynonymSet> sets) {
+        var ids = new ArrayList<String>();
+        for (var set : sets) {
+            ids.add(set.getId());
+        }
+        return ids;
+    }
+}
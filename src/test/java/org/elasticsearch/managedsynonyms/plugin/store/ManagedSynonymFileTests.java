@@ -0,0 +1,355 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.managedsynonyms.plugin.store;
+
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.breaker.NoopCircuitBreaker;
+import org.elasticsearch.managedsynonyms.plugin.ManagedSynonymException;
+import org.elasticsearch.managedsynonyms.plugin.ManagedSynonymNormalizer;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ManagedSynonymFileTests extends ESTestCase {
+
+    public void testNormalizerChangeRekeysSets() throws Exception {
+        var file = new ManagedSynonymFile("normalizer");
+        var set = file.createSynonymSet(List.of("Stra\u00dfe", "road"));
+        assertEquals(0, file.getCount("strasse"));
+
+        long version = file.getVersion();
+        file.setNormalizer("index-a", ManagedSynonymNormalizer.CASE_FOLD);
+        assertTrue(file.getVersion() > version);
+        assertEquals(List.of("strasse", "road"), file.getSet(set.getId()).getItems());
+        assertEquals(1, file.getCount("Strasse"));
+        assertEquals(1, file.getCount("stra\u00dfe"));
+        assertEquals(2, file.getTermCount());
+    }
+
+    public void testNormalizerCanChangeOnceReleased() throws Exception {
+        var file = new ManagedSynonymFile("normalizer");
+        file.setNormalizer("index-a", ManagedSynonymNormalizer.CASE_FOLD);
+        file.setNormalizer("index-b", ManagedSynonymNormalizer.CASE_FOLD);
+        expectThrows(IllegalArgumentException.class, () -> file.setNormalizer("index-c", ManagedSynonymNormalizer.ASCII_FOLDING));
+
+        file.releaseIndex("index-a");
+        expectThrows(IllegalArgumentException.class, () -> file.setNormalizer("index-c", ManagedSynonymNormalizer.ASCII_FOLDING));
+        file.releaseIndex("index-b");
+        file.setNormalizer("index-c", ManagedSynonymNormalizer.ASCII_FOLDING);
+        assertSame(ManagedSynonymNormalizer.ASCII_FOLDING, file.getNormalizer());
+    }
+
+    public void testTermsThatNormalizeTheSameGoToTheLastUpdatedSet() {
+        var file = new ManagedSynonymFile("normalizer");
+        file.syncItems(
+            List.of(
+                new ManagedSynonymSet("accented", List.of("caf\u00e9", "coffee shop"), 10, 10),
+                new ManagedSynonymSet("plain", List.of("cafe", "bistro"), 20, 20)
+            ),
+            true
+        );
+        assertEquals(4, file.getTermCount());
+
+        file.setNormalizer("index-a", ManagedSynonymNormalizer.ASCII_FOLDING);
+        assertEquals(List.of("coffee shop"), file.getSet("accented").getItems());
+        assertEquals(List.of("cafe", "bistro"), file.getSet("plain").getItems());
+        assertEquals("plain", file.listSets(1, 10, "caf\u00e9").get(0).getId());
+        assertEquals(3, file.getTermCount());
+    }
+
+    public void testMaxExpansionsFollowsRegisteredIndices() throws Exception {
+        var file = new ManagedSynonymFile("limits");
+        file.limitMaxExpansions("index-a", 2);
+        file.limitMaxExpansions("index-b", 5);
+        assertEquals(2, file.getMaxExpansions());
+        expectThrows(ManagedSynonymException.class, () -> file.createSynonymSet(List.of("a", "b", "c")));
+
+        file.releaseIndex("index-a");
+        assertEquals(5, file.getMaxExpansions());
+        file.createSynonymSet(List.of("a", "b", "c"));
+
+        file.releaseIndex("index-b");
+        assertEquals(Integer.MAX_VALUE, file.getMaxExpansions());
+    }
+
+    public void testMaxRamBytesFollowsRegisteredIndices() throws Exception {
+        var file = new ManagedSynonymFile("limits");
+        file.limitMaxRamBytes("index-a", 1);
+        file.limitMaxRamBytes("index-b", 1024 * 1024);
+        var e = expectThrows(ManagedSynonymException.class, () -> file.createSynonymSet(List.of("tv", "television")));
+        assertEquals(RestStatus.TOO_MANY_REQUESTS, e.getStatus());
+        assertEquals(1, file.getMemoryRejections());
+
+        file.releaseIndex("index-a");
+        assertEquals(1024 * 1024, file.getMaxRamBytes());
+        file.createSynonymSet(List.of("tv", "television"));
+
+        file.releaseIndex("index-b");
+        assertEquals(Long.MAX_VALUE, file.getMaxRamBytes());
+        file.releaseMemory();
+    }
+
+    /**
+     * Writers replace and drop sets while readers page through the file. Every page must come out in order without
+     * duplicates, and once the writers are done the ordering index must hold exactly the sets of the last snapshot.
+     */
+    public void testListingStaysConsistentUnderConcurrentWrites() throws Exception {
+        var file = new ManagedSynonymFile("concurrent");
+        int writers = 4;
+        int setsPerWriter = 50;
+        var start = new CountDownLatch(1);
+        var done = new AtomicBoolean();
+        var failures = new CopyOnWriteArrayList<Throwable>();
+        var threads = new ArrayList<Thread>();
+
+        for (int w = 0; w < writers; w++) {
+            var prefix = "writer" + w;
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    var ids = new ArrayList<String>();
+                    for (int i = 0; i < setsPerWriter; i++) {
+                        ids.add(file.createSynonymSet(List.of(prefix + " a" + i, prefix + " b" + i)).getId());
+                    }
+                    for (int round = 0; round < 5; round++) {
+                        for (int i = 0; i < setsPerWriter; i++) {
+                            var terms = List.of(prefix + " a" + i, prefix + " b" + i, prefix + " r" + round + " " + i);
+                            file.updateSynonymSet(new ManagedSynonymSet(ids.get(i), terms));
+                        }
+                    }
+                    // drop every other set so removals race with the readers as well
+                    for (int i = 0; i < setsPerWriter; i += 2) {
+                        assertTrue(file.deleteSynonymSet(ids.get(i)));
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            }));
+        }
+        for (int r = 0; r < 2; r++) {
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    while (done.get() == false) {
+                        assertOrdered(file.listSets(1, 1000, null));
+                        var firstPage = file.listSets(1, 10, null);
+                        if (firstPage.isEmpty() == false) {
+                            var cursor = firstPage.get(firstPage.size() - 1).getSortCursor();
+                            assertOrdered(file.listSetsAfter(cursor, 1000, null));
+                        }
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            }));
+        }
+
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (int w = 0; w < writers; w++) {
+            threads.get(w).join();
+        }
+        done.set(true);
+        for (var thread : threads) {
+            thread.join();
+        }
+        assertEquals(Collections.emptyList(), failures);
+
+        var expected = file.getAll();
+        Collections.sort(expected);
+        assertEquals(writers * setsPerWriter / 2, expected.size());
+        assertEquals(expected, file.listSets(1, 1000, null));
+        assertEquals(expected.size(), file.listPage(1, 1000, null, ManagedSynonymFile.QueryMode.TERM).getTotalCount());
+        assertEquals(writers * setsPerWriter / 2 * 3, file.getTermCount());
+    }
+
+    public void testReplacementThatSortsTheSameKeepsItsPlace() {
+        var file = new ManagedSynonymFile("ordering");
+        var older = new ManagedSynonymSet("older", List.of("car", "automobile"), 10, 10);
+        file.syncItems(List.of(older, new ManagedSynonymSet("set", List.of("tv"), 20, 20)), false);
+        // reloading the set from the index replaces it with a copy that sorts the same
+        file.syncItems(List.of(new ManagedSynonymSet("set", List.of("tv", "television"), 20, 20)), false);
+
+        var sets = file.listSets(1, 10, null);
+        assertEquals(2, sets.size());
+        assertEquals("set", sets.get(0).getId());
+        assertEquals(List.of("tv", "television"), sets.get(0).getItems());
+        assertEquals("older", sets.get(1).getId());
+
+        file.deleteSynonymSet("set");
+        assertEquals(List.of("older"), ids(file.listSets(1, 10, null)));
+    }
+
+    public void testSearchAfterCursorSurvivesUpdates() throws Exception {
+        var file = new ManagedSynonymFile("cursor");
+        var sets = new ArrayList<ManagedSynonymSet>();
+        for (int i = 0; i < 10; i++) {
+            sets.add(new ManagedSynonymSet("s" + i, List.of("term " + i), 100 + i, 100 + i));
+        }
+        file.syncItems(sets, false);
+
+        var page = file.listSets(1, 3, null);
+        assertEquals(List.of("s9", "s8", "s7"), ids(page));
+        var cursor = page.get(2).getSortCursor();
+
+        // a set moving to the front and a deleted set do not shift the next page
+        file.syncItems(List.of(new ManagedSynonymSet("s8", List.of("term 8", "other"), 108, 200)), Collections.emptyMap());
+        assertTrue(file.deleteSynonymSet("s5"));
+        page = file.listSetsAfter(cursor, 3, null);
+        assertEquals(List.of("s6", "s4", "s3"), ids(page));
+
+        page = file.listSetsAfter(page.get(2).getSortCursor(), 3, null);
+        assertEquals(List.of("s2", "s1", "s0"), ids(page));
+        assertEquals(List.of(), ids(file.listSetsAfter(page.get(2).getSortCursor(), 3, null)));
+        assertEquals("s8", file.listSets(1, 1, null).get(0).getId());
+
+        // the cursor of a set that is gone still points at the same place
+        assertEquals(List.of("s4"), ids(file.listSetsAfter("105:s5", 1, null)));
+        assertEquals(List.of("s3"), ids(file.listSetsAfter("104:s4", 1, "term 3")));
+        assertEquals(List.of(), ids(file.listSetsAfter("103:s3", 1, "term 3")));
+    }
+
+    public void testSearchAfterBreaksTiesById() throws Exception {
+        var file = new ManagedSynonymFile("cursor");
+        var b = new ManagedSynonymSet("b", List.of("bus"), 50, 50);
+        file.syncItems(List.of(b, new ManagedSynonymSet("a", List.of("car"), 50, 50)), false);
+        assertEquals(List.of("a", "b"), ids(file.listSets(1, 10, null)));
+        assertEquals(List.of("b"), ids(file.listSetsAfter("50:a", 10, null)));
+    }
+
+    public void testInvalidSearchAfterCursor() {
+        var file = new ManagedSynonymFile("cursor");
+        for (var cursor : List.of("", "100", ":s1", "100:", "abc:s1")) {
+            var e = expectThrows(ManagedSynonymException.class, () -> file.listSetsAfter(cursor, 10, null));
+            assertEquals(RestStatus.BAD_REQUEST, e.getStatus());
+        }
+    }
+
+    public void testBreakerReservationsBalance() throws Exception {
+        var breaker = new CountingBreaker(Long.MAX_VALUE);
+        ManagedSynonymStore.getInstance().setBreaker(breaker);
+        try {
+            var file = new ManagedSynonymFile("breaker");
+            var tv = file.createSynonymSet(List.of("tv", "television"));
+            var car = file.createSynonymSet(List.of("car", "automobile"));
+            assertTrue(breaker.getUsed() > 0);
+            assertEquals(file.ramBytesUsed(), breaker.getUsed());
+
+            file.updateSynonymSet(new ManagedSynonymSet(tv.getId(), List.of("tv", "television", "telly", "tele")));
+            assertEquals(file.ramBytesUsed(), breaker.getUsed());
+            file.updateSynonymSet(new ManagedSynonymSet(tv.getId(), List.of("tv")));
+            assertEquals(file.ramBytesUsed(), breaker.getUsed());
+
+            file.syncItems(List.of(new ManagedSynonymSet("synced", List.of("bus", "coach"), 10, 10)), Collections.emptyMap());
+            assertEquals(file.ramBytesUsed(), breaker.getUsed());
+            file.syncItems(List.of(new ManagedSynonymSet("reloaded", List.of("bike")), new ManagedSynonymSet(car)), true);
+            assertEquals(file.ramBytesUsed(), breaker.getUsed());
+
+            file.deleteSynonymSet("reloaded");
+            file.deleteSynonymSet(car.getId());
+            assertEquals(0, file.getCount());
+            assertEquals(file.ramBytesUsed(), breaker.getUsed());
+
+            file.releaseMemory();
+            assertEquals(0, breaker.getUsed());
+        } finally {
+            ManagedSynonymStore.getInstance().setBreaker(null);
+        }
+    }
+
+    public void testTrippedBreakerRejectsGrowingWrites() throws Exception {
+        var breaker = new CountingBreaker(Long.MAX_VALUE);
+        ManagedSynonymStore.getInstance().setBreaker(breaker);
+        try {
+            var file = new ManagedSynonymFile("breaker");
+            var tv = file.createSynonymSet(List.of("tv", "television"));
+            long used = breaker.getUsed();
+            breaker.limit = used;
+
+            var e = expectThrows(ManagedSynonymException.class, () -> file.createSynonymSet(List.of("car", "automobile")));
+            assertEquals(RestStatus.TOO_MANY_REQUESTS, e.getStatus());
+            assertEquals(1, file.getMemoryRejections());
+            assertEquals(used, breaker.getUsed());
+            assertEquals(1, file.getCount());
+
+            // shrinking is always allowed and gives the memory back
+            file.updateSynonymSet(new ManagedSynonymSet(tv.getId(), List.of("tv")));
+            assertTrue(breaker.getUsed() < used);
+            assertTrue(file.deleteSynonymSet(tv.getId()));
+            assertEquals(file.ramBytesUsed(), breaker.getUsed());
+            file.releaseMemory();
+            assertEquals(0, breaker.getUsed());
+        } finally {
+            ManagedSynonymStore.getInstance().setBreaker(null);
+        }
+    }
+
+    private static void assertOrdered(List<ManagedSynonymSet> sets) {
+        var seen = new HashSet<String>();
+        for (int i = 0; i < sets.size(); i++) {
+            assertTrue("duplicate set " + sets.get(i).getId(), seen.add(sets.get(i).getId()));
+            if (i > 0) assertTrue(sets.get(i - 1).compareTo(sets.get(i)) < 0);
+        }
+    }
+
+    private static List<String> ids(List<ManagedSynonymSet> sets) {
+        var ret = new ArrayList<String>();
+        for (var set : sets) {
+            ret.add(set.getId());
+        }
+        return ret;
+    }
+
+    /**
+     * Keeps track of the bytes reserved on it and breaks above its limit.
+     */
+    private static class CountingBreaker extends NoopCircuitBreaker {
+        private final AtomicLong used = new AtomicLong();
+        volatile long limit;
+
+        CountingBreaker(long limit) {
+            super(CircuitBreaker.IN_FLIGHT_REQUESTS);
+            this.limit = limit;
+        }
+
+        @Override
+        public double addEstimateBytesAndMaybeBreak(long bytes, String label) throws CircuitBreakingException {
+            long newUsed = used.addAndGet(bytes);
+            if (bytes > 0 && newUsed > limit) {
+                used.addAndGet(-bytes);
+                throw new CircuitBreakingException("[" + label + "] would use " + newUsed, newUsed, limit, Durability.TRANSIENT);
+            }
+            return newUsed;
+        }
+
+        @Override
+        public long addWithoutBreaking(long bytes) {
+            return used.addAndGet(bytes);
+        }
+
+        @Override
+        public long getUsed() {
+            return used.get();
+        }
+
+        @Override
+        public long getLimit() {
+            return limit;
+        }
+    }
+}
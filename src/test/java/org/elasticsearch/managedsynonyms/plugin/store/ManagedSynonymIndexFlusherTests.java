@@ -0,0 +1,265 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.managedsynonyms.plugin.store;
+
+import org.apache.lucene.search.TotalHits;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.ActionType;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.ShardSearchFailure;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.internal.InternalSearchResponse;
+import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.test.client.NoOpClient;
+import org.junit.After;
+import org.junit.Before;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class ManagedSynonymIndexFlusherTests extends ESTestCase {
+    private CapturingClient client;
+
+    @Before
+    public void setUpClient() {
+        ManagedSynonymStore.getInstance().clear();
+        client = new CapturingClient(getTestName());
+    }
+
+    @After
+    public void closeClient() {
+        client.close();
+        ManagedSynonymStore.getInstance().clear();
+    }
+
+    private static ManagedSynonymIndexFlusher newFlusher(int maxPendingChanges) {
+        var settings = Settings.builder().put(ManagedSynonymIndexFlusher.MAX_PENDING_CHANGES_SETTING.getKey(), maxPendingChanges).build();
+        return new ManagedSynonymIndexFlusher(null, null, settings);
+    }
+
+    private static List<ManagedSynonymSet> newSets(String prefix, int count) {
+        var sets = new ArrayList<ManagedSynonymSet>(count);
+        for (int i = 0; i < count; i++) {
+            sets.add(new ManagedSynonymSet(prefix + "-" + i, List.of(prefix + " " + i, prefix + " alias " + i)));
+        }
+        return sets;
+    }
+
+    public void testSyncedChangesAreNotPending() throws Exception {
+        var flusher = newFlusher(100);
+        var file = new ManagedSynonymFile("synced");
+        file.syncItems(newSets("synced", 250), false);
+        assertEquals(250, file.getVersion());
+        assertEquals(0, flusher.getPendingChanges(file));
+        assertFalse(flusher.isBackpressured(file));
+
+        // a write is still accepted after the sync, and it is the only pending change
+        file.createSynonymSet(List.of("tv", "television"));
+        assertEquals(1, flusher.getPendingChanges(file));
+        assertFalse(flusher.isBackpressured(file));
+    }
+
+    public void testBackpressureIsPerFile() throws Exception {
+        var flusher = newFlusher(100);
+        var busy = new ManagedSynonymFile("busy");
+        var quiet = new ManagedSynonymFile("quiet");
+        for (int i = 0; i < 100; i++) {
+            busy.createSynonymSet(List.of("busy " + i, "busy alias " + i));
+            if (i % 10 == 0) busy.syncItems(newSets("synced " + i, 5), false);
+        }
+        assertEquals(100, flusher.getPendingChanges(busy));
+        assertFalse(flusher.isBackpressured(busy));
+
+        busy.createSynonymSet(List.of("one", "too many"));
+        assertTrue(flusher.isBackpressured(busy));
+        assertFalse(flusher.isBackpressured(quiet));
+        quiet.createSynonymSet(List.of("tv", "television"));
+        assertEquals(1, flusher.getPendingChanges(quiet));
+    }
+
+    public void testLocalChangesSinceAfterWraparound() {
+        var journal = new ManagedSynonymJournal(10);
+        for (int i = 0; i < 25; i++) {
+            var origin = i % 2 == 0 ? ManagedSynonymJournal.Origin.LOCAL : ManagedSynonymJournal.Origin.SYNC;
+            journal.append(ManagedSynonymJournal.Operation.CREATE, origin, "set-" + i);
+        }
+        // seqNo n was appended by iteration n - 1, so odd sequence numbers are local
+        assertEquals(0, journal.localChangesSince(25));
+        assertEquals(1, journal.localChangesSince(24));
+        assertEquals(1, journal.localChangesSince(23));
+        assertEquals(5, journal.localChangesSince(16));
+        // only the retained entries 16 to 25 are counted once older ones were dropped
+        assertEquals(5, journal.localChangesSince(0));
+    }
+
+    public void testFlushCoalescesChangesAndWritesTombstones() throws Exception {
+        var flusher = new ManagedSynonymIndexFlusher(client, client.threadPool(), Settings.EMPTY);
+        var file = ManagedSynonymStore.getInstance().getOrCreateSynonymFile("coalesce");
+        var tv = file.createSynonymSet(List.of("tv", "television"));
+        for (int i = 0; i < 3; i++) {
+            file.updateSynonymSet(new ManagedSynonymSet(tv.getId(), List.of("tv", "television", "telly " + i)));
+        }
+        var gone = file.createSynonymSet(List.of("laptop", "notebook"));
+        file.deleteSynonymSet(gone.getId());
+        var car = file.createSynonymSet(List.of("car", "automobile"));
+        file.syncItems(List.of(new ManagedSynonymSet("remote", List.of("bike", "bicycle"))), Collections.emptyMap());
+        assertEquals(7, flusher.getPendingChanges(file));
+
+        assertTrue(flush(flusher));
+        assertEquals(1, client.bulks.size());
+        var requests = client.bulks.get(0).requests();
+        assertEquals(3, requests.size());
+        assertEquals(List.of("tv", "television", "telly 2"), source(requests.get(0)).get("synonyms"));
+        assertEquals(ManagedSynonymIndexFlusher.documentId("coalesce", gone.getId()), requests.get(1).id());
+        assertEquals(true, source(requests.get(1)).get("deleted"));
+        assertEquals(car.getId(), source(requests.get(2)).get("setId"));
+        assertEquals(0, flusher.getPendingChanges(file));
+
+        // synced changes alone send nothing
+        file.syncItems(List.of(new ManagedSynonymSet("remote 2", List.of("bus", "coach"))), Collections.emptyMap());
+        assertTrue(flush(flusher));
+        assertEquals(1, client.bulks.size());
+    }
+
+    public void testFailedItemsAreSentAgain() throws Exception {
+        var flusher = new ManagedSynonymIndexFlusher(client, client.threadPool(), Settings.EMPTY);
+        var file = ManagedSynonymStore.getInstance().getOrCreateSynonymFile("retry");
+        file.createSynonymSet(List.of("tv", "television"));
+
+        client.failBulks = true;
+        assertTrue(flush(flusher));
+        assertEquals(1, flusher.getPendingChanges(file));
+
+        client.failBulks = false;
+        assertTrue(flush(flusher));
+        assertEquals(2, client.bulks.size());
+        assertEquals(client.bulks.get(0).requests().get(0).id(), client.bulks.get(1).requests().get(0).id());
+        assertEquals(0, flusher.getPendingChanges(file));
+    }
+
+    /**
+     * Once unflushed local changes drop out of the journal, the file is compared with the index: stale documents
+     * are written again, documents of sets deleted here get tombstones, and documents this node never saw are kept.
+     */
+    public void testResyncAfterJournalDroppedLocalChanges() throws Exception {
+        var flusher = new ManagedSynonymIndexFlusher(client, client.threadPool(), Settings.EMPTY);
+        var file = ManagedSynonymStore.getInstance().getOrCreateSynonymFile("resync");
+        var kept = file.createSynonymSet(List.of("tv", "television"));
+        var deleted = file.createSynonymSet(List.of("laptop", "notebook"));
+        assertTrue(flush(flusher));
+        var writer = (String) source(client.bulks.get(0).requests().get(0)).get("writer");
+
+        file.deleteSynonymSet(deleted.getId());
+        for (int i = 0; i <= ManagedSynonymJournal.DEFAULT_CAPACITY; i++) {
+            file.updateSynonymSet(new ManagedSynonymSet(kept.getId(), List.of("tv", "television", "telly " + i)));
+        }
+        client.indexedDocs = new SearchHit[] {
+            indexedDoc(kept.getId(), kept.getUpdatedTimestamp() - 1, writer, 1),
+            indexedDoc(deleted.getId(), deleted.getUpdatedTimestamp(), writer, 2),
+            indexedDoc("written elsewhere", 0, "another node", 100) };
+
+        assertTrue(flush(flusher));
+        assertBusy(() -> assertEquals(2, client.bulks.size()));
+        var requests = client.bulks.get(1).requests();
+        assertEquals(2, requests.size());
+        assertEquals(kept.getId(), source(requests.get(0)).get("setId"));
+        assertEquals(file.getSet(kept.getId()).getItems(), source(requests.get(0)).get("synonyms"));
+        assertEquals(deleted.getId(), source(requests.get(1)).get("setId"));
+        assertEquals(true, source(requests.get(1)).get("deleted"));
+        assertBusy(() -> assertEquals(0, flusher.getPendingChanges(file)));
+    }
+
+    private static boolean flush(ManagedSynonymIndexFlusher flusher) {
+        var future = new PlainActionFuture<Boolean>();
+        flusher.flush(future);
+        return future.actionGet();
+    }
+
+    private static Map<String, Object> source(DocWriteRequest<?> request) {
+        return ((IndexRequest) request).sourceAsMap();
+    }
+
+    private static SearchHit indexedDoc(String setId, long updatedTimestamp, String writer, long seqNo) throws IOException {
+        var hit = new SearchHit(0, setId, new Text("_doc"), Collections.emptyMap(), Collections.emptyMap());
+        var source = XContentFactory.jsonBuilder()
+            .map(Map.of("setId", setId, "updatedTimestamp", updatedTimestamp, "writer", writer));
+        hit.sourceRef(BytesReference.bytes(source));
+        hit.setSeqNo(seqNo);
+        return hit;
+    }
+
+    /**
+     * Answers bulk requests with a success or failure for every item, and searches with the given documents.
+     */
+    private static class CapturingClient extends NoOpClient {
+        final List<BulkRequest> bulks = new CopyOnWriteArrayList<BulkRequest>();
+        volatile boolean failBulks = false;
+        volatile SearchHit[] indexedDocs = new SearchHit[0];
+
+        CapturingClient(String testName) {
+            super(testName);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected <Request extends ActionRequest, Response extends ActionResponse> void doExecute(
+            ActionType<Response> action,
+            Request request,
+            ActionListener<Response> listener
+        ) {
+            if (request instanceof BulkRequest) {
+                bulks.add((BulkRequest) request);
+                listener.onResponse((Response) bulkResponse((BulkRequest) request));
+            } else if (request instanceof SearchRequest) {
+                var hits = new SearchHits(indexedDocs, new TotalHits(indexedDocs.length, TotalHits.Relation.EQUAL_TO), 1f);
+                var internal = new InternalSearchResponse(hits, null, null, null, false, null, 1);
+                var failures = ShardSearchFailure.EMPTY_ARRAY;
+                listener.onResponse((Response) new SearchResponse(internal, null, 1, 1, 0, 1, failures, SearchResponse.Clusters.EMPTY));
+            } else {
+                super.doExecute(action, request, listener);
+            }
+        }
+
+        private BulkResponse bulkResponse(BulkRequest request) {
+            var items = new BulkItemResponse[request.numberOfActions()];
+            var shardId = new ShardId(ManagedSynonymStore.SYNONYM_INDEX, "_na_", 0);
+            for (int i = 0; i < items.length; i++) {
+                var id = request.requests().get(i).id();
+                items[i] = failBulks
+                    ? new BulkItemResponse(
+                        i,
+                        DocWriteRequest.OpType.INDEX,
+                        new BulkItemResponse.Failure(ManagedSynonymStore.SYNONYM_INDEX, "_doc", id, new IllegalStateException("test"))
+                    )
+                    : new BulkItemResponse(i, DocWriteRequest.OpType.INDEX, new IndexResponse(shardId, "_doc", id, i, 1, 1, true));
+            }
+            return new BulkResponse(items, 1);
+        }
+    }
+}
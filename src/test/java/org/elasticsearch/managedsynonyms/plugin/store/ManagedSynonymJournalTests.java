@@ -0,0 +1,108 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.managedsynonyms.plugin.store;
+
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymJournal.Operation;
+import org.elasticsearch.managedsynonyms.plugin.store.ManagedSynonymJournal.Origin;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ManagedSynonymJournalTests extends ESTestCase {
+
+    public void testChangesSinceReturnsEntriesInOrder() {
+        var journal = new ManagedSynonymJournal(10);
+        for (int i = 1; i <= 5; i++) {
+            assertEquals(i, journal.append(Operation.CREATE, Origin.LOCAL, "set-" + i));
+        }
+
+        var changes = journal.changesSince(2, 10);
+        assertFalse(changes.isTruncated());
+        assertFalse(changes.isLocalChangesLost());
+        assertEquals(5, changes.getLastSeqNo());
+        assertEquals(List.of(3L, 4L, 5L), seqNos(changes));
+        assertEquals("set-3", changes.getEntries().get(0).getSetId());
+
+        assertEquals(List.of(3L, 4L), seqNos(journal.changesSince(2, 2)));
+        assertEquals(List.of(), seqNos(journal.changesSince(5, 10)));
+    }
+
+    public void testChangesSinceStopsAtTheGivenSeqNo() {
+        var journal = new ManagedSynonymJournal(10);
+        for (int i = 0; i < 5; i++) {
+            journal.append(Operation.UPDATE, Origin.LOCAL, "set");
+        }
+        var changes = journal.changesSince(0, 10, 3);
+        assertEquals(List.of(1L, 2L, 3L), seqNos(changes));
+        assertEquals(3, changes.getLastSeqNo());
+    }
+
+    public void testWraparoundKeepsTheLatestEntries() {
+        var journal = new ManagedSynonymJournal(10);
+        for (int i = 0; i < 25; i++) {
+            journal.append(Operation.UPDATE, Origin.SYNC, "set-" + i);
+        }
+        assertEquals(25, journal.getLastSeqNo());
+        assertEquals(16, journal.getFirstSeqNo());
+
+        // entries past the array end wrap around to its start and still come back oldest first
+        var changes = journal.changesSince(17, 10);
+        assertFalse(changes.isTruncated());
+        assertEquals(List.of(18L, 19L, 20L, 21L, 22L, 23L, 24L, 25L), seqNos(changes));
+        assertEquals("set-24", changes.getEntries().get(7).getSetId());
+
+        var truncated = journal.changesSince(3, 100);
+        assertTrue(truncated.isTruncated());
+        assertEquals(16L, (long) seqNos(truncated).get(0));
+        assertEquals(10, truncated.getEntries().size());
+    }
+
+    public void testLocalChangesLostOnlyWhenLocalEntriesWereDropped() {
+        var journal = new ManagedSynonymJournal(10);
+        journal.append(Operation.CREATE, Origin.SYNC, "synced");
+        journal.append(Operation.CREATE, Origin.LOCAL, "local");
+        for (int i = 0; i < 10; i++) {
+            journal.append(Operation.UPDATE, Origin.SYNC, "synced");
+        }
+        // seqNos 1 and 2 were dropped, 2 was local
+        assertEquals(3, journal.getFirstSeqNo());
+
+        var fromStart = journal.changesSince(0, 100);
+        assertTrue(fromStart.isTruncated());
+        assertTrue(fromStart.isLocalChangesLost());
+
+        // the local change was already seen, only the synced one before it is missing
+        var afterLocal = journal.changesSince(2, 100);
+        assertFalse(afterLocal.isTruncated());
+        assertFalse(afterLocal.isLocalChangesLost());
+
+        journal.append(Operation.UPDATE, Origin.SYNC, "synced");
+        var afterSynced = journal.changesSince(2, 100);
+        assertTrue(afterSynced.isTruncated());
+        assertFalse(afterSynced.isLocalChangesLost());
+    }
+
+    public void testEmptyJournal() {
+        var journal = new ManagedSynonymJournal(10);
+        var changes = journal.changesSince(0, 10);
+        assertFalse(changes.isTruncated());
+        assertEquals(0, changes.getEntries().size());
+        assertEquals(0, journal.localChangesSince(0));
+        expectThrows(IllegalArgumentException.class, () -> new ManagedSynonymJournal(0));
+    }
+
+    private static List<Long> seqNos(ManagedSynonymJournal.Changes changes) {
+        var ret = new ArrayList<Long>();
+        for (var entry : changes.getEntries()) {
+            ret.add(entry.getSeqNo());
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License
+ * 2.0 and the Server Side Public License, v 1; you may not use this file except
+ * in compliance with, at your election, the Elastic License 2.0 or the Server
+ * Side Public License, v 1.
+ */
+
+package org.elasticsearch.managedsynonyms.plugin.store;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.collect.CopyOnWriteHashMap;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ManagedSynonymTermIndexTests extends ESTestCase {
+
+    public void testPackedTerms() {
+        var terms = List.of("new york", "stra\u00dfe", "\u6771\u4eac", "", "\ud801\udc28");
+        var packed = PackedTerms.of(terms);
+        assertEquals(terms, packed);
+        for (int i = 0; i < terms.size(); i++) {
+            assertEquals(new BytesRef(terms.get(i)), packed.term(i, new BytesRef()));
+            assertEquals(i, packed.indexOfTerm(new BytesRef(terms.get(i))));
+        }
+        assertEquals(-1, packed.indexOfTerm(new BytesRef("york")));
+        assertEquals(0, PackedTerms.EMPTY.size());
+    }
+
+    /**
+     * Runs random creates, updates and deletes through enough terms to rebuild the base and checks
+     * every lookup against a plain map.
+     */
+    public void testMatchesModel() {
+        var index = ManagedSynonymTermIndex.EMPTY;
+        var live = new CopyOnWriteHashMap<String, ManagedSynonymSet>();
+        var model = new HashMap<String, String>();
+        var ids = new ArrayList<String>();
+        int nextTerm = 0;
+        for (int op = 0; op < 5_000; op++) {
+            if (ids.isEmpty() || randomIntBetween(0, 9) < 6) {
+                var set = new ManagedSynonymSet("set-" + op, newTerms(nextTerm, randomIntBetween(1, 4)));
+                nextTerm += set.size();
+                live = live.copyAndPut(set.getId(), set);
+                index = index.withSet(set, live);
+                set.getItems().forEach(term -> model.put(term, set.getId()));
+                ids.add(set.getId());
+            } else if (randomBoolean()) {
+                var old = live.get(randomFrom(ids));
+                // keep one term, drop the others and add new ones
+                var terms = new ArrayList<String>(newTerms(nextTerm, randomIntBetween(0, 3)));
+                nextTerm += terms.size();
+                terms.add(old.getItems().get(0));
+                var set = new ManagedSynonymSet(old.getId(), terms);
+                index = index.withoutSet(old);
+                live = live.copyAndRemove(old.getId());
+                old.getItems().forEach(model::remove);
+                live = live.copyAndPut(set.getId(), set);
+                index = index.withSet(set, live);
+                set.getItems().forEach(term -> model.put(term, set.getId()));
+            } else {
+                var old = live.get(ids.remove(randomIntBetween(0, ids.size() - 1)));
+                live = live.copyAndRemove(old.getId());
+                index = index.withoutSet(old);
+                old.getItems().forEach(model::remove);
+            }
+            assertEquals(model.size(), index.size());
+        }
+
+        for (int term = 0; term < nextTerm; term++) {
+            var found = index.get(new BytesRef(term(term)), live);
+            assertEquals(term(term), model.get(term(term)), found == null ? null : found.getId());
+        }
+    }
+
+    public void testTermTakenOverByAnotherSetStaysMapped() {
+        var first = new ManagedSynonymSet("first", List.of("a", "b"));
+        var second = new ManagedSynonymSet("second", List.of("b", "c"));
+        Map<String, ManagedSynonymSet> live = new CopyOnWriteHashMap<String, ManagedSynonymSet>().copyAndPut("first", first)
+            .copyAndPut("second", second);
+        var index = ManagedSynonymTermIndex.EMPTY.withSet(first, live).withSet(second, live);
+
+        index = index.withoutSet(first);
+        live = Map.of("second", second);
+        assertNull(index.get(new BytesRef("a"), live));
+        assertSame(second, index.get(new BytesRef("b"), live));
+        assertSame(second, index.get(new BytesRef("c"), live));
+    }
+
+    private static List<String> newTerms(int from, int count) {
+        var terms = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            terms.add(term(from + i));
+        }
+        return terms;
+    }
+
+    private static String term(int n) {
+        return (n % 7 == 0 ? "caf\u00e9 " : "term ") + n;
+    }
+}